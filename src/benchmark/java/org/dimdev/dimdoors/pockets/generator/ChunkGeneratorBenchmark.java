@@ -0,0 +1,65 @@
+package org.dimdev.dimdoors.pockets.generator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.gen.noise.NoiseConfig;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+
+import org.dimdev.dimdoors.world.ModDimensions;
+
+/**
+ * Times generating the overworld terrain of 3x3 and 9x9 chunk pockets, with biomes and noise on the worker threads
+ * against every stage on the server thread.
+ */
+public class ChunkGeneratorBenchmark implements FabricGameTest {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int RUNS = 5;
+
+	private int nextOrigin = 0;
+
+	@GameTest(templateName = EMPTY_STRUCTURE, tickLimit = 20 * 60 * 10)
+	public void generateChunkPockets(TestContext context) {
+		ServerWorld world = context.getWorld().getServer().getWorld(ModDimensions.PUBLIC);
+		ServerWorld genWorld = context.getWorld().getServer().getWorld(World.OVERWORLD);
+		NoiseConfig config = ChunkGenerator.createNoiseConfig(world);
+
+		for (int size : new int[]{3, 9}) {
+			// Run both once before measuring, so neither is measured before being compiled
+			this.run(world, genWorld, config, size, Runnable::run);
+			this.run(world, genWorld, config, size, Util.getMainWorkerExecutor());
+			long serverThread = this.median(world, genWorld, config, size, Runnable::run);
+			long workers = this.median(world, genWorld, config, size, Util.getMainWorkerExecutor());
+			LOGGER.info(String.format("Generating %dx%d chunks, median of %d: %.1f ms on the server thread, %.1f ms with biomes and noise on the workers", size, size, RUNS, serverThread / 1_000_000.0, workers / 1_000_000.0));
+		}
+		context.complete();
+	}
+
+	private long median(ServerWorld world, ServerWorld genWorld, NoiseConfig config, int size, Executor executor) {
+		long[] nanos = new long[RUNS];
+		for (int i = 0; i < RUNS; i++) nanos[i] = this.run(world, genWorld, config, size, executor);
+		Arrays.sort(nanos);
+		return nanos[RUNS / 2];
+	}
+
+	private long run(ServerWorld world, ServerWorld genWorld, NoiseConfig config, int size, Executor executor) {
+		// Different source chunks every run, far from anything generated by the world itself
+		BlockPos origin = new BlockPos(1_000_000 + this.nextOrigin++ * 16 * 16, 0, 1_000_000);
+		List<Chunk> chunks = ChunkGenerator.createProtoChunks(world, genWorld, origin, size, size);
+		long start = System.nanoTime();
+		ChunkGenerator.generate(genWorld, config, chunks, ChunkGenerator.createRegion(genWorld, chunks), executor);
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,116 @@
+package org.dimdev.dimdoors.pockets.modifier;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3i;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+
+import org.dimdev.dimdoors.pockets.PocketGenerationContext;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Times drawing 1, 3 and 8 stone layers around a 64x64x64 pocket, writing into the chunk sections against setting
+ * every block of the shell through the world.
+ */
+public class ShellModifierBenchmark implements FabricGameTest {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int POCKET_SIZE = 64;
+	private static final int RUNS = 5;
+
+	@GameTest(templateName = EMPTY_STRUCTURE, tickLimit = 20 * 60 * 10)
+	public void drawShells(TestContext context) {
+		ServerWorld world = context.getWorld().getServer().getWorld(ModDimensions.PUBLIC);
+
+		for (int layers : new int[]{1, 3, 8}) {
+			ShellModifier modifier = createModifier(layers);
+			// Run both once before measuring, so neither is measured before being compiled
+			runWorld(world, layers);
+			runSections(world, modifier, layers);
+			long[] worldNanos = new long[RUNS];
+			long[] sectionNanos = new long[RUNS];
+			for (int i = 0; i < RUNS; i++) {
+				worldNanos[i] = runWorld(world, layers);
+				sectionNanos[i] = runSections(world, modifier, layers);
+			}
+			LOGGER.info(String.format("Drawing %d layers, median of %d: %.1f ms through the world, %.1f ms into the sections", layers, RUNS, median(worldNanos) / 1_000_000.0, median(sectionNanos) / 1_000_000.0));
+		}
+		context.complete();
+	}
+
+	private static long runSections(ServerWorld world, ShellModifier modifier, int layers) {
+		Pocket pocket = createPocket(world, layers);
+		long start = System.nanoTime();
+		modifier.apply(new PocketGenerationContext(world, pocket.getVirtualLocation(), null, null), new RiftManager(pocket, true));
+		return System.nanoTime() - start;
+	}
+
+	// The way the layers were drawn before they were written into the sections
+	private static long runWorld(ServerWorld world, int layers) {
+		Pocket pocket = createPocket(world, layers);
+		BlockState stone = Blocks.STONE.getDefaultState();
+		long start = System.nanoTime();
+		BlockBox inner = pocket.getBox();
+		for (int i = 0; i < layers; i++) {
+			BlockBox outer = grow(inner, 1);
+			for (BlockPos pos : BlockPos.iterate(outer.getMinX(), outer.getMinY(), outer.getMinZ(), outer.getMaxX(), outer.getMaxY(), outer.getMaxZ())) {
+				if (!inner.contains(pos)) world.setBlockState(pos, stone);
+			}
+			inner = outer;
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static Pocket createPocket(ServerWorld world, int layers) {
+		Pocket pocket = DimensionalRegistry.getPocketDirectory(ModDimensions.PUBLIC).newPocket(Pocket.builder().expand(new Vec3i(POCKET_SIZE, POCKET_SIZE, POCKET_SIZE)));
+		// Keep the outermost layer above the bottom of the world
+		pocket.offsetOrigin(0, 64, 0);
+		pocket.setVirtualLocation(new VirtualLocation(ModDimensions.PUBLIC, 0, 0, 1));
+
+		// Chunks are loaded before timing, neither path is measured generating them
+		BlockBox outer = grow(pocket.getBox(), layers);
+		for (int chunkX = outer.getMinX() >> 4; chunkX <= outer.getMaxX() >> 4; chunkX++) {
+			for (int chunkZ = outer.getMinZ() >> 4; chunkZ <= outer.getMaxZ() >> 4; chunkZ++) {
+				world.getChunk(chunkX, chunkZ);
+			}
+		}
+		return pocket;
+	}
+
+	private static ShellModifier createModifier(int layers) {
+		NbtList layersNbt = new NbtList();
+		for (int i = 0; i < layers; i++) {
+			NbtCompound layer = new NbtCompound();
+			layer.putString("block_state", "minecraft:stone");
+			layer.putString("thickness", "1");
+			layersNbt.add(layer);
+		}
+		NbtCompound nbt = new NbtCompound();
+		nbt.put("layers", layersNbt);
+		return (ShellModifier) new ShellModifier().fromNbt(nbt, null);
+	}
+
+	private static BlockBox grow(BlockBox box, int amount) {
+		return new BlockBox(box.getMinX() - amount, box.getMinY() - amount, box.getMinZ() - amount, box.getMaxX() + amount, box.getMaxY() + amount, box.getMaxZ() + amount);
+	}
+
+	private static long median(long[] nanos) {
+		Arrays.sort(nanos);
+		return nanos[nanos.length / 2];
+	}
+}
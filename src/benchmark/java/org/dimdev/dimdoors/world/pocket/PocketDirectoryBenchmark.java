@@ -0,0 +1,83 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3i;
+
+import net.fabricmc.fabric.api.event.player.AttackBlockCallback;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Compares {@link PocketDirectory#getAddonsAt}, which the pocket listeners call on every block interaction, with
+ * looking the pocket up by its grid position and filtering its addons every time.
+ */
+public class PocketDirectoryBenchmark implements FabricGameTest {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int GRID_SIZE = 8;
+	private static final int POCKETS = 1000;
+	private static final int LOOKUPS = 5_000_000;
+
+	@GameTest(templateName = EMPTY_STRUCTURE)
+	public void addonLookup(TestContext context) {
+		PocketDirectory directory = new PocketDirectory(ModDimensions.PUBLIC, GRID_SIZE);
+		for (int i = 0; i < POCKETS; i++) directory.newPocket(Pocket.builder().expand(new Vec3i(GRID_SIZE * 16, 64, GRID_SIZE * 16)));
+
+		// Players interact with the few chunks around them, so the positions are spread over a handful of pockets
+		Random random = new Random(42);
+		BlockPos[] positions = new BlockPos[1024];
+		for (int i = 0; i < positions.length; i++) {
+			BlockPos origin = directory.idToPos(random.nextInt(16));
+			positions[i] = origin.add(random.nextInt(GRID_SIZE * 16), random.nextInt(64), random.nextInt(GRID_SIZE * 16));
+		}
+
+		Lookup cached = pos -> directory.getAddonsAt(pos, AttackBlockCallback.class);
+		Lookup uncached = pos -> {
+			Pocket pocket = directory.getPocketAt(pos);
+			return pocket != null && pocket.isInBounds(pos) ? pocket.getAddonsInstanceOf(AttackBlockCallback.class) : Collections.emptyList();
+		};
+
+		// Run both once before measuring, so neither is measured before being compiled
+		run(uncached, positions);
+		run(cached, positions);
+		Result uncachedResult = run(uncached, positions);
+		Result cachedResult = run(cached, positions);
+
+		LOGGER.info("Addon lookups, " + LOOKUPS + " over " + positions.length + " positions: by grid position " + uncachedResult + ", cached per chunk " + cachedResult);
+		context.complete();
+	}
+
+	private static Result run(Lookup lookup, BlockPos[] positions) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long found = 0;
+		for (int i = 0; i < LOOKUPS; i++) found += lookup.addonsAt(positions[i & (positions.length - 1)]).size();
+		long nanos = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+		return new Result((double) nanos / LOOKUPS, (double) allocated / LOOKUPS, found);
+	}
+
+	private interface Lookup {
+		List<?> addonsAt(BlockPos pos);
+	}
+
+	private record Result(double nanosPerLookup, double bytesPerLookup, long found) {
+		@Override
+		public String toString() {
+			return String.format("%.1f ns and %.1f bytes per lookup", this.nanosPerLookup, this.bytesPerLookup);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.util.Collections;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3i;
+import net.minecraft.world.storage.EntityChunkDataAccess;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+public class PocketGarbageCollectorTest implements FabricGameTest {
+	@GameTest(templateName = EMPTY_STRUCTURE, tickLimit = 200)
+	public void reclaimedIdStartsWithoutEntities(TestContext context) {
+		ServerWorld world = context.getWorld().getServer().getWorld(ModDimensions.PUBLIC);
+		PocketDirectory directory = DimensionalRegistry.getPocketDirectory(ModDimensions.PUBLIC);
+		Pocket pocket = directory.newPocket(Pocket.builder().expand(new Vec3i(16, 16, 16)));
+		BlockPos origin = pocket.getOrigin();
+		ChunkPos chunk = new ChunkPos(origin);
+
+		// The pocket was never loaded, so its entities are saved the way those of an abandoned pocket are
+		Entity pig = EntityType.PIG.create(world);
+		pig.refreshPositionAndAngles(origin.getX() + 0.5, origin.getY() + 1, origin.getZ() + 0.5, 0, 0);
+		NbtCompound pigNbt = new NbtCompound();
+		pig.saveSelfNbt(pigNbt);
+		NbtList entities = new NbtList();
+		entities.add(pigNbt);
+		NbtCompound chunkNbt = NbtHelper.putDataVersion(new NbtCompound());
+		chunkNbt.putIntArray("Position", new int[]{chunk.x, chunk.z});
+		chunkNbt.put("Entities", entities);
+		((EntityChunkDataAccess) world.entityManager.dataAccess).dataLoadWorker.setResult(chunk, chunkNbt);
+
+		context.assertTrue(PocketGarbageCollector.reclaim(world, pocket, Collections.emptyList()), "The unloaded pocket was not reclaimed");
+		Pocket reused = directory.newPocket(Pocket.builder().expand(new Vec3i(16, 16, 16)));
+		context.assertTrue(reused.getId() == pocket.getId(), "The new pocket got id " + reused.getId() + " instead of the reclaimed " + pocket.getId());
+
+		world.setChunkForced(chunk.x, chunk.z, true);
+		context.addFinalTask(() -> {
+			if (!world.entityManager.isLoaded(chunk.toLong())) throw new GameTestException("The entities of the pocket are not loaded yet");
+			world.setChunkForced(chunk.x, chunk.z, false);
+			Box box = new Box(reused.getOrigin(), reused.getOrigin().add(16, 16, 16));
+			context.assertTrue(world.getEntitiesByClass(Entity.class, box, entity -> true).isEmpty(), "The pocket at the reclaimed id has entities of the old one");
+		});
+	}
+}
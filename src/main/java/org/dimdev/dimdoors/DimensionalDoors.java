@@ -56,12 +56,17 @@ import org.dimdev.dimdoors.listener.pocket.UseItemOnBlockCallbackListener;
 import org.dimdev.dimdoors.network.ExtendedServerPlayNetworkHandler;
 import org.dimdev.dimdoors.particle.ModParticleTypes;
 import org.dimdev.dimdoors.pockets.PocketLoader;
+import org.dimdev.dimdoors.pockets.SchematicPlacementQueue;
+import org.dimdev.dimdoors.pockets.generator.LazyGenerationScheduler;
 import org.dimdev.dimdoors.pockets.generator.PocketGenerator;
 import org.dimdev.dimdoors.pockets.modifier.Modifier;
 import org.dimdev.dimdoors.pockets.virtual.ImplementedVirtualPocket;
 import org.dimdev.dimdoors.recipe.ModRecipeSerializers;
 import org.dimdev.dimdoors.recipe.ModRecipeTypes;
 import org.dimdev.dimdoors.rift.registry.RegistryVertex;
+import org.dimdev.dimdoors.rift.registry.RiftUpdateQueue;
+import org.dimdev.dimdoors.rift.targets.DestinationPreloader;
+import org.dimdev.dimdoors.rift.targets.PendingTeleports;
 import org.dimdev.dimdoors.rift.targets.Targets;
 import org.dimdev.dimdoors.rift.targets.VirtualTarget;
 import org.dimdev.dimdoors.screen.ModScreenHandlerTypes;
@@ -73,6 +78,9 @@ import org.dimdev.dimdoors.world.decay.DecayPredicate;
 import org.dimdev.dimdoors.world.decay.DecayProcessor;
 import org.dimdev.dimdoors.world.decay.LimboDecay;
 import org.dimdev.dimdoors.world.feature.ModFeatures;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.PocketGarbageCollector;
+import org.dimdev.dimdoors.world.pocket.PocketPool;
 import org.dimdev.dimdoors.world.pocket.type.AbstractPocket;
 import org.dimdev.dimdoors.world.pocket.type.addon.PocketAddon;
 
@@ -186,6 +194,15 @@ public class DimensionalDoors implements ModInitializer {
 
 		ServerChunkEvents.CHUNK_LOAD.register(new ChunkLoadListener()); // lazy pocket gen
 
+		DimensionalRegistry.init(); // must run after the server field is set on SERVER_STARTING
+		PocketGarbageCollector.init();
+		PocketPool.init();
+		SchematicPlacementQueue.init();
+		LazyGenerationScheduler.init();
+		RiftUpdateQueue.init();
+		PendingTeleports.init();
+		DestinationPreloader.init();
+
 
 		AttackBlockCallback.EVENT.register(new AttackBlockCallbackListener());
 
@@ -99,12 +99,17 @@ public final class ModConfig implements ConfigData {
 		@Tooltip public int depthSpreadFactor = 20;
 		@Tooltip public double endermanSpawnChance = 0.00005;
 		@Tooltip public double endermanAggressiveChance = 0.5;
+		@RequiresRestart
+		@Tooltip public boolean riftJournal = true;
+		@Tooltip public int riftJournalCompactionSize = 4096;
 	}
 
 	public static class Doors {
 		@Tooltip public boolean closeDoorBehind = true;
 		@Tooltip @CollapsibleObject public DoorList doorList = new DoorList();
 		@Tooltip public boolean placeRiftsInCreativeMode = true;
+		@Tooltip public int destinationPreloadDistance = 8;
+		@Tooltip public int destinationPreloadBudget = 2;
 
 		public static class DoorList {
 			@Tooltip public Mode mode = Mode.DISABLE;
@@ -147,6 +152,15 @@ public final class ModConfig implements ConfigData {
 		@Tooltip @EnumHandler(option = BUTTON) public ExtendedResourcePackActivationType defaultPocketsResourcePackActivationType = ExtendedResourcePackActivationType.DEFAULT_ENABLED;
 		@Tooltip public boolean asyncWorldEditPocketLoading = true;
 		@Tooltip public boolean canUseRiftSignatureInPrivatePockets = true;
+		@Tooltip public boolean pocketGarbageCollection = false;
+		@Tooltip public int pocketGarbageCollectionIdleDays = 30;
+		@Tooltip public int pocketGarbageCollectionIntervalMinutes = 60;
+		@Tooltip public int pocketGarbageCollectionWorkPerTick = 1000;
+		@Tooltip public int pocketPoolSize = 2;
+		@Tooltip public int pocketPoolDepthBand = 5;
+		@Tooltip public int schematicPlacementMillisPerTick = 10;
+		@Tooltip public int lazyModificationChunkLoads = 2;
+		@Tooltip public int chunkPocketCacheSize = 16;
 	}
 
 	public static class World {
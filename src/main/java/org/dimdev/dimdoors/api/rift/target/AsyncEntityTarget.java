@@ -0,0 +1,29 @@
+package org.dimdev.dimdoors.api.rift.target;
+
+import java.util.concurrent.CompletableFuture;
+
+import net.minecraft.entity.Entity;
+
+/**
+ * An entity target whose destination takes a while to prepare, such as a pocket that still has to be generated or
+ * a chunk that still has to be loaded. Rifts keep the entity in their doorway until the future completes, and then
+ * hand it to the resolved target on the server thread.
+ */
+public interface AsyncEntityTarget extends Target {
+	CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity);
+
+	/**
+	 * Resolves the entity target of any target, so targets that only implement {@link EntityTarget} keep working.
+	 * Targets that are no entity target are followed through {@link Target#receiveOther} like {@link Target#as} does,
+	 * so an asynchronous target they forward to is still resolved asynchronously. Entity targets which forward to
+	 * another target when receiving the entity have to implement this interface themselves to do the same.
+	 */
+	static CompletableFuture<EntityTarget> resolve(Target target, Entity entity) {
+		if (target instanceof AsyncEntityTarget) return ((AsyncEntityTarget) target).resolveEntityTarget(entity);
+		if (!(target instanceof EntityTarget)) {
+			Target forwardTo = target.receiveOther();
+			return forwardTo != null ? resolve(forwardTo, entity) : CompletableFuture.completedFuture(DefaultTargets.getDefaultTarget(EntityTarget.class));
+		}
+		return CompletableFuture.completedFuture(target.as(EntityTarget.class));
+	}
+}
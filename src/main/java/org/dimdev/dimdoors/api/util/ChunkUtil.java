@@ -0,0 +1,20 @@
+package org.dimdev.dimdoors.api.util;
+
+import net.minecraft.network.packet.s2c.play.ChunkDataS2CPacket;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.chunk.WorldChunk;
+
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+
+public class ChunkUtil {
+	/**
+	 * Lights a chunk whose sections were written to directly and sends it to the players tracking it.
+	 */
+	public static void lightAndSend(ServerWorld world, WorldChunk chunk) {
+		// Lighting finishes on the light thread, the chunk is sent with its light once it is done
+		world.getChunkManager().getLightingProvider().light(chunk, false).thenRunAsync(() -> {
+			ChunkDataS2CPacket packet = new ChunkDataS2CPacket(chunk, world.getLightingProvider(), null, null, true);
+			PlayerLookup.tracking(world, chunk.getPos()).forEach(player -> player.networkHandler.sendPacket(packet));
+		}, world.getServer());
+	}
+}
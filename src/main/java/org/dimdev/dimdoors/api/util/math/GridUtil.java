@@ -1,8 +1,5 @@
 package org.dimdev.dimdoors.api.util.math;
 
-import java.util.Arrays;
-import java.util.Vector;
-
 import net.minecraft.util.math.BlockPos;
 
 public final class GridUtil {
@@ -52,20 +49,26 @@ public final class GridUtil {
 	 * @return The location on the grid
 	 */
 	public static GridPos idToGridPos(int id) {
-		if (id < 0) throw new UnsupportedOperationException("Cannot get GridPos of negative id.");
-		GridPos out = id > 8 ? idToGridPos(id / 9) : new GridPos(0, 0);
-		int x = out.x * 3;
-		int z = out.z * 3;
-
-		long minor = id % 9;
-		x += (minor + 1) % 3 - 1;
-		z += (minor / 3 + 1) % 3 - 1;
-
-		out.x = x;
-		out.z = z;
-		return out;
+		long packed = idToPackedGridPos(id);
+		return new GridPos(unpackX(packed), unpackZ(packed));
 	}
 
+	/**
+	 * Allocation free version of {@link #idToGridPos(int)}, see {@link #pack(int, int)}.
+	 * Every base 9 digit of the id, least significant first, places the element in one of the
+	 * 3x3 cells around the center of a block 3 times bigger than the one of the previous digit.
+	 */
+	public static long idToPackedGridPos(int id) {
+		if (id < 0) throw new UnsupportedOperationException("Cannot get GridPos of negative id.");
+		int x = 0;
+		int z = 0;
+		for (int scale = 1; id > 0; id /= 9, scale *= 3) {
+			int minor = id % 9;
+			x += ((minor + 1) % 3 - 1) * scale;
+			z += ((minor / 3 + 1) % 3 - 1) * scale;
+		}
+		return pack(x, z);
+	}
 
 	/**
 	 * Calculates the element id
@@ -74,22 +77,74 @@ public final class GridUtil {
 	 * @return The id of the location on the grid
 	 */
 	public static int gridPosToID(GridPos pos) {
-		return convToID(new Vector<>(Arrays.asList(pos.x, pos.z)));
+		return gridPosToID(pos.x, pos.z);
+	}
+
+	public static int gridPosToID(int x, int z) {
+		int id = 0;
+		for (int scale = 1; ; scale *= 9) {
+			id += (Math.floorMod(x, 3) + Math.floorMod(z, 3) * 3) * scale;
+			x = Math.floorDiv(x + 1, 3);
+			z = Math.floorDiv(z + 1, 3);
+			if (x == 0 && z == 0) return id;
+		}
+	}
+
+	public static int packedGridPosToID(long packed) {
+		return gridPosToID(unpackX(packed), unpackZ(packed));
+	}
+
+	public static long pack(int x, int z) {
+		return ((long) x << 32) | (z & 0xFFFFFFFFL);
 	}
 
-	private static int convToID(Vector<Integer> vector) {
-		int x = vector.get(0);
-		int z = vector.get(1);
+	public static int unpackX(long packed) {
+		return (int) (packed >> 32);
+	}
 
-		int id = Math.floorMod(x, 3) + (Math.floorMod(z, 3) * 3);
+	public static int unpackZ(long packed) {
+		return (int) packed;
+	}
+
+	/**
+	 * Calculates the grid cells covered by the ids in [firstId, firstId + range).
+	 * Pockets are aligned to their range, which is a power of 9, so their box is found without visiting every id.
+	 *
+	 * @return The smallest box containing every cell of the range
+	 */
+	public static GridBox idRangeToGridBox(int firstId, int range) {
+		if (range < 1) throw new IllegalArgumentException("Range must be positive.");
+		int digits = 0;
+		int side = 1;
+		for (int size = 1; size < range && size <= Integer.MAX_VALUE / 9; size *= 9, side *= 3) digits++;
+		int aligned = 1;
+		for (int i = 0; i < digits; i++) aligned *= 9;
+
+		if (aligned == range && firstId % range == 0) {
+			long center = idToPackedGridPos(firstId / range);
+			int radius = side / 2;
+			int x = unpackX(center) * side;
+			int z = unpackZ(center) * side;
+			return new GridBox(x - radius, z - radius, x + radius, z + radius);
+		}
+
+		int minX = Integer.MAX_VALUE;
+		int minZ = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxZ = Integer.MIN_VALUE;
+		for (int id = firstId; id - firstId < range; id++) {
+			long packed = idToPackedGridPos(id);
+			minX = Math.min(minX, unpackX(packed));
+			minZ = Math.min(minZ, unpackZ(packed));
+			maxX = Math.max(maxX, unpackX(packed));
+			maxZ = Math.max(maxZ, unpackZ(packed));
+		}
+		return new GridBox(minX, minZ, maxX, maxZ);
+	}
 
-		x = Math.floorDiv(x + 1, 3);
-		z = Math.floorDiv(z + 1, 3);
-		if (x != 0 || z != 0) {
-			vector.set(0, x);
-			vector.set(1, z);
-			id += 9 * convToID(vector);
+	public record GridBox(int minX, int minZ, int maxX, int maxZ) {
+		public boolean contains(int x, int z) {
+			return x >= this.minX && x <= this.maxX && z >= this.minZ && z <= this.maxZ;
 		}
-		return id;
 	}
 }
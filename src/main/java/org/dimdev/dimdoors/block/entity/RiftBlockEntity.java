@@ -1,6 +1,7 @@
 package org.dimdev.dimdoors.block.entity;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,6 +27,7 @@ import net.minecraft.world.World;
 
 import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
 
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
 import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.rift.target.Target;
 import org.dimdev.dimdoors.api.util.EntityUtils;
@@ -34,10 +36,12 @@ import org.dimdev.dimdoors.api.util.RGBA;
 import org.dimdev.dimdoors.api.util.math.TransformationMatrix3d;
 import org.dimdev.dimdoors.block.CoordinateTransformerBlock;
 import org.dimdev.dimdoors.criteria.ModCriteria;
+import org.dimdev.dimdoors.pockets.SchematicPlacementQueue;
 import org.dimdev.dimdoors.rift.registry.LinkProperties;
 import org.dimdev.dimdoors.rift.registry.Rift;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.rift.targets.MessageTarget;
-import org.dimdev.dimdoors.rift.targets.Targets;
+import org.dimdev.dimdoors.rift.targets.PendingTeleports;
 import org.dimdev.dimdoors.rift.targets.VirtualTarget;
 import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.VirtualLocation;
@@ -51,6 +55,10 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 
 	protected boolean riftStateChanged;
 
+	// The registered rift at this position, or null if there was none at the registry version below
+	private Rift rift;
+	private int riftVersion = -1;
+
 	public RiftBlockEntity(BlockEntityType<? extends RiftBlockEntity> type, BlockPos pos, BlockState state) {
 		super(type, pos, state);
 	}
@@ -127,7 +135,26 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 	}
 
 	public boolean isRegistered() { // TODO: do we need to implement this for v2?
-		return /*!PocketTemplate.isReplacingPlaceholders() &&*/ this.world != null && DimensionalRegistry.getRiftRegistry().isRiftAt(new Location((ServerWorld) this.world, this.pos));
+		return /*!PocketTemplate.isReplacingPlaceholders() &&*/ this.getRegisteredRift() != null;
+	}
+
+	/**
+	 * Only looks the rift up in the registry again once it was removed, or while there is none and rifts
+	 * were added or removed since the last lookup.
+	 *
+	 * @return the rift registered at this position, or null
+	 */
+	@Nullable
+	public Rift getRegisteredRift() {
+		if (this.world == null) return null;
+		if (this.rift != null && this.rift.isRegistered()) return this.rift;
+
+		RiftRegistry registry = DimensionalRegistry.getRiftRegistry();
+		if (this.rift == null && this.riftVersion == registry.getVersion()) return null;
+		Location location = new Location(this.world.getRegistryKey(), this.pos);
+		this.rift = registry.isRiftAt(location) ? registry.getRift(location) : null;
+		this.riftVersion = registry.getVersion();
+		return this.rift;
 	}
 
 	public void register() {
@@ -136,7 +163,7 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 		}
 
 		Location loc = new Location((ServerWorld) this.world, this.pos);
-		DimensionalRegistry.getRiftRegistry().addRift(loc);
+		this.rift = DimensionalRegistry.getRiftRegistry().addRift(loc);
 		if (this.data.getDestination() != VirtualTarget.NoneTarget.INSTANCE) this.data.getDestination().register();
 		this.updateProperties();
 		this.updateColor();
@@ -151,14 +178,13 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 	public void unregister() {
 		if (this.isRegistered()) {
 			DimensionalRegistry.getRiftRegistry().removeRift(new Location((ServerWorld) this.world, this.pos));
+			this.rift = null;
 		}
 	}
 
 	public void updateType() {
 		if (!this.isRegistered()) return;
-		Rift rift = DimensionalRegistry.getRiftRegistry().getRift(new Location((ServerWorld) this.world, this.pos));
-		rift.setDetached(this.isDetached());
-		rift.markDirty();
+		DimensionalRegistry.getRiftRegistry().setDetached(new Location((ServerWorld) this.world, this.pos), this.isDetached());
 	}
 
 	public void handleTargetGone(Location location) {
@@ -184,15 +210,22 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 		}
 	}
 
+	/**
+	 * Teleports the entity right away if the target is ready, otherwise holds it in place until it is,
+	 * see {@link AsyncEntityTarget}.
+	 *
+	 * @return whether the teleport happened or was started
+	 */
 	public boolean teleport(Entity entity) {
 		this.riftStateChanged = false;
+		if (PendingTeleports.isPending(entity)) return false;
 
 		// Attempt a teleport
 		try {
 			Vec3d relativePos = new Vec3d(0, 0, 0);
 			EulerAngle relativeAngle = new EulerAngle(entity.getPitch(), entity.getYaw(), 0);
 			Vec3d relativeVelocity = entity.getVelocity();
-			EntityTarget target = this.getTarget().as(Targets.ENTITY);
+			CompletableFuture<EntityTarget> target = AsyncEntityTarget.resolve(this.getTarget(), entity).thenCompose(SchematicPlacementQueue::whenPlaced);
 
 			BlockState state = this.getWorld().getBlockState(this.getPos());
 			Block block = state.getBlock();
@@ -205,6 +238,23 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 				relativeVelocity = transformer.rotateTo(rotatorBuilder, relativeVelocity);
 			}
 
+			if (target.isDone()) return commitTeleport(entity, target.join(), relativePos, relativeAngle, relativeVelocity);
+
+			Vec3d finalRelativePos = relativePos;
+			EulerAngle finalRelativeAngle = relativeAngle;
+			Vec3d finalRelativeVelocity = relativeVelocity;
+			PendingTeleports.hold(entity, target, resolved -> commitTeleport(entity, resolved, finalRelativePos, finalRelativeAngle, finalRelativeVelocity));
+			return true;
+		} catch (Exception e) {
+			EntityUtils.chat(entity, Text.of("Something went wrong while trying to teleport you, please report this bug."));
+			LOGGER.error("Teleporting failed with the following exception: ", e);
+		}
+
+		return false;
+	}
+
+	private static boolean commitTeleport(Entity entity, EntityTarget target, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
+		try {
 			if (target.receiveEntity(entity, relativePos, relativeAngle, relativeVelocity)) {
 				VirtualLocation vLoc = VirtualLocation.fromLocation(new Location((ServerWorld) entity.world, entity.getBlockPos()));
 				EntityUtils.chat(entity, Text.of("You are at x = " + vLoc.getX() + ", y = ?, z = " + vLoc.getZ() + ", w = " + vLoc.getDepth()));
@@ -280,6 +330,7 @@ public abstract class RiftBlockEntity extends BlockEntity implements Target, Ent
 	}
 
 	public Rift asRift() {
-		return DimensionalRegistry.getRiftRegistry().getRift(new Location(this.world.getRegistryKey(), this.pos));
+		Rift rift = this.getRegisteredRift();
+		return rift != null ? rift : DimensionalRegistry.getRiftRegistry().getRift(new Location(this.world.getRegistryKey(), this.pos));
 	}
 }
@@ -1,6 +1,7 @@
 package org.dimdev.dimdoors.command;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -24,7 +25,13 @@ import org.dimdev.dimdoors.command.arguments.BlockPlacementTypeArgumentType;
 import org.dimdev.dimdoors.command.arguments.PocketTemplateArgumentType;
 import org.dimdev.dimdoors.pockets.PocketLoader;
 import org.dimdev.dimdoors.pockets.PocketTemplate;
+import org.dimdev.dimdoors.pockets.SchematicPlacementQueue;
+import org.dimdev.dimdoors.rift.registry.RiftUpdateQueue;
+import org.dimdev.dimdoors.rift.targets.DestinationPreloader;
 import org.dimdev.dimdoors.util.schematic.SchematicPlacer;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.PocketGarbageCollector;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
@@ -100,9 +107,62 @@ public class PocketCommand {
 											return Command.SINGLE_SUCCESS;
 										})
 						)
+						.then(
+								literal("gc")
+										.requires(src -> src.hasPermissionLevel(4))
+										.then(literal("report").executes(ctx -> report(ctx.getSource())))
+										.then(literal("run").executes(ctx -> {
+											boolean started = PocketGarbageCollector.getInstance().start(System.currentTimeMillis());
+											ctx.getSource().sendFeedback(Text.translatable(started ? "commands.pocket.gc.started" : "commands.pocket.gc.running"), true);
+											return started ? Command.SINGLE_SUCCESS : 0;
+										}))
+										.then(literal("stats").executes(ctx -> stats(ctx.getSource())))
+						)
+						.then(
+								literal("rifts")
+										.requires(src -> src.hasPermissionLevel(4))
+										.then(literal("stats").executes(ctx -> {
+											RiftUpdateQueue queue = RiftUpdateQueue.getInstance();
+											ctx.getSource().sendFeedback(Text.translatable("commands.pocket.rifts.stats", queue.getHeldCount(), queue.getChunkLoadsAvoided()), false);
+											ctx.getSource().sendFeedback(Text.translatable("commands.pocket.rifts.preload", DestinationPreloader.getHits(), DestinationPreloader.getTraversals(), DestinationPreloader.getPreloadedCount(), DestinationPreloader.getChunksLoaded()), false);
+											return Command.SINGLE_SUCCESS;
+										}))
+						)
+						.then(
+								literal("placement")
+										.requires(src -> src.hasPermissionLevel(4))
+										.then(literal("stats").executes(ctx -> {
+											SchematicPlacementQueue placements = DimensionalRegistry.getSchematicPlacements();
+											ctx.getSource().sendFeedback(Text.translatable("commands.pocket.placement.stats", placements.getQueuedCount(), placements.getRemainingSections(), String.format("%.2f", placements.getLastTickNanos() / 1_000_000.0), String.format("%.2f", placements.getMaxTickNanos() / 1_000_000.0)), false);
+											return Command.SINGLE_SUCCESS;
+										}))
+						)
 		);
 	}
 
+	private static int report(ServerCommandSource source) {
+		PocketGarbageCollector.Cycle cycle = PocketGarbageCollector.dryRun(source.getServer());
+		PocketGarbageCollector.Stats stats = cycle.getReclaimable();
+		source.sendFeedback(Text.translatable("commands.pocket.gc.report", stats.pockets, stats.rifts, stats.ids, stats.chunks), false);
+
+		List<Pocket> pockets = cycle.getReclaimablePockets();
+		for (Pocket pocket : pockets.subList(0, Math.min(pockets.size(), 10))) {
+			long days = (cycle.getTime() - pocket.getLastVisited()) / (24 * 60 * 60 * 1000L);
+			source.sendFeedback(Text.translatable("commands.pocket.gc.report.pocket", pocket.getId(), pocket.getWorld().getValue().toString(), days), false);
+		}
+		if (pockets.size() > 10) source.sendFeedback(Text.translatable("commands.pocket.gc.report.more", pockets.size() - 10), false);
+		return stats.pockets;
+	}
+
+	private static int stats(ServerCommandSource source) {
+		PocketGarbageCollector collector = PocketGarbageCollector.getInstance();
+		PocketGarbageCollector.Stats total = collector.getTotal();
+		source.sendFeedback(Text.translatable("commands.pocket.gc.stats", total.pockets, total.rifts, total.ids, total.chunks), false);
+		PocketGarbageCollector.Stats last = collector.getLastCycle();
+		if (last != null) source.sendFeedback(Text.translatable("commands.pocket.gc.stats.last", last.pockets, last.nanos / 1_000_000, last.ticks), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
 	private static int load(ServerCommandSource source, PocketTemplate template) throws CommandSyntaxException {
 		try {
 			return WorldeditHelper.load(source, template);
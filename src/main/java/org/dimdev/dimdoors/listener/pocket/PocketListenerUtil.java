@@ -16,15 +16,12 @@ import org.dimdev.dimdoors.network.client.ClientPacketHandler;
 import org.dimdev.dimdoors.network.client.ExtendedClientPlayNetworkHandler;
 import org.dimdev.dimdoors.world.ModDimensions;
 import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
-import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
 public class PocketListenerUtil {
 	public static <T> List<T> applicableAddons(Class<T> clazz, World world, BlockPos pos) {
 		if (world.isClient) throw new UnsupportedOperationException("Cannot call this method on the Client.");
 		if (!ModDimensions.isPocketDimension(world)) return Collections.emptyList();
-		Pocket pocket = DimensionalRegistry.getPocketDirectory(world.getRegistryKey()).getPocketAt(pos);
-		if (pocket == null) return Collections.emptyList();;
-		return pocket.getAddonsInstanceOf(clazz);
+		return DimensionalRegistry.getPocketDirectory(world.getRegistryKey()).getAddonsAt(pos, clazz);
 	}
 
 	@Environment(EnvType.CLIENT)
@@ -33,7 +30,8 @@ public class PocketListenerUtil {
 
 		if (!world.getRegistryKey().equals(packetHandler.getPocketWorld())) return Collections.emptyList();
 
-		int pocketId = GridUtil.gridPosToID(new GridUtil.GridPos(pos, packetHandler.getGridSize()));
+		int gridSize = packetHandler.getGridSize() * 16;
+		int pocketId = GridUtil.gridPosToID(Math.floorDiv(pos.getX(), gridSize), Math.floorDiv(pos.getZ(), gridSize));
 		if (pocketId < packetHandler.getPocketId() || pocketId >= packetHandler.getPocketId() + packetHandler.getPocketRange()) {
 			return Collections.emptyList();
 		}
@@ -3,14 +3,17 @@ package org.dimdev.dimdoors.pockets;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
+import net.minecraft.world.World;
 
 import org.dimdev.dimdoors.DimensionalDoors;
 import org.dimdev.dimdoors.pockets.virtual.reference.PocketGeneratorReference;
 import org.dimdev.dimdoors.rift.registry.LinkProperties;
 import org.dimdev.dimdoors.rift.targets.VirtualTarget;
 import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
@@ -43,9 +46,18 @@ public final class PocketGenerator {
     }
 
     public static Pocket generatePublicPocketV2(VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
-        return generateFromPocketGroupV2(DimensionalDoors.getWorld(ModDimensions.PUBLIC), DimensionalDoors.id("public"), virtualLocation, linkTo, linkProperties);
+        return claimOrGenerateV2(ModDimensions.PUBLIC, DimensionalDoors.id("public"), virtualLocation, linkTo, linkProperties);
     }
 
+	/**
+	 * Claims a pocket of the group that was generated ahead of time, or generates one right away if none is ready.
+	 */
+	public static Pocket claimOrGenerateV2(RegistryKey<World> world, Identifier group, VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
+		Pocket pocket = DimensionalRegistry.getPocketPool().claim(world, group, virtualLocation, linkTo, linkProperties);
+		if (pocket != null) return pocket;
+		return generateFromPocketGroupV2(DimensionalDoors.getWorld(world), group, virtualLocation, linkTo, linkProperties);
+	}
+
     public static Pocket generateFromPocketGroupV2(ServerWorld world, Identifier group, VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
     	PocketGenerationContext context = new PocketGenerationContext(world, virtualLocation, linkTo, linkProperties);
     	return generatePocketV2(PocketLoader.getInstance().getGroup(group).getNextPocketGeneratorReference(context), context);
@@ -56,11 +68,11 @@ public final class PocketGenerator {
 	}
 
 	public static Pocket generateDungeonPocketV2(VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
-		return generateFromPocketGroupV2(DimensionalDoors.getWorld(ModDimensions.DUNGEON), DimensionalDoors.id("dungeon"), virtualLocation, linkTo, linkProperties);
+		return claimOrGenerateV2(ModDimensions.DUNGEON, DimensionalDoors.id("dungeon"), virtualLocation, linkTo, linkProperties);
 	}
 
 	public static Pocket generateDungeonPocketV2(VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties, Identifier group) {
-		return generateFromPocketGroupV2(DimensionalDoors.getWorld(ModDimensions.DUNGEON), group, virtualLocation, linkTo, linkProperties);
+		return claimOrGenerateV2(ModDimensions.DUNGEON, group, virtualLocation, linkTo, linkProperties);
 	}
 
 	/*
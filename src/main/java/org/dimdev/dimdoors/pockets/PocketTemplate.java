@@ -16,6 +16,7 @@ import org.dimdev.dimdoors.api.util.BlockPlacementType;
 import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
 import org.dimdev.dimdoors.util.schematic.Schematic;
 import org.dimdev.dimdoors.util.schematic.SchematicPlacer;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.type.LazyGenerationPocket;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
@@ -69,7 +70,7 @@ public class PocketTemplate {
         pocket.setSize(schematic.getWidth(), schematic.getHeight(), schematic.getLength());
         ServerWorld world = DimensionalDoors.getWorld(pocket.getWorld());
         BlockPos origin = pocket.getOrigin();
-		SchematicPlacer.place(this.schematic, world, origin, placementType);
+		DimensionalRegistry.getSchematicPlacements().submit(world, this, origin, placementType);
     }
 
 	public Map<BlockPos, RiftBlockEntity> getAbsoluteRifts(Pocket pocket) {
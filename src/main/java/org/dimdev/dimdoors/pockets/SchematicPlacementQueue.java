@@ -0,0 +1,212 @@
+package org.dimdev.dimdoors.pockets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.util.NbtType;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.api.rift.target.EntityTarget;
+import org.dimdev.dimdoors.api.util.BlockPlacementType;
+import org.dimdev.dimdoors.api.util.Path;
+import org.dimdev.dimdoors.util.schematic.Schematic;
+import org.dimdev.dimdoors.util.schematic.SchematicPlacer;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+
+/**
+ * Places pocket templates over several ticks instead of all at once. The blocks with block entities are placed right
+ * away, so the rifts of the pocket can be set up and registered as usual. The remaining blocks are placed a chunk
+ * section at a time, as many sections per tick as fit in the configured budget, and the entities once every section
+ * is done. Light is updated by the world as the blocks are set. Teleports into a pocket wait until it is placed.
+ * <p>
+ * Unfinished placements are saved with the dimensional registry and resume after a restart.
+ */
+public class SchematicPlacementQueue {
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private final Deque<Job> jobs = new ArrayDeque<>();
+	private boolean dirty = false;
+	private long lastTickNanos = 0;
+	private long maxTickNanos = 0;
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(server -> DimensionalRegistry.getSchematicPlacements().tick(server));
+	}
+
+	/**
+	 * @return the target, once the pocket it is in has been placed completely
+	 */
+	public static CompletableFuture<EntityTarget> whenPlaced(EntityTarget target) {
+		if (!(target instanceof BlockEntity blockEntity) || blockEntity.getWorld() == null) return CompletableFuture.completedFuture(target);
+		RegistryKey<World> world = blockEntity.getWorld().getRegistryKey();
+		for (Job job : DimensionalRegistry.getSchematicPlacements().jobs) {
+			if (job.world.equals(world) && job.box.contains(blockEntity.getPos())) return job.placed.thenApply(placed -> target);
+		}
+		return CompletableFuture.completedFuture(target);
+	}
+
+	public void submit(ServerWorld world, PocketTemplate template, BlockPos origin, BlockPlacementType placementType) {
+		SchematicPlacer.placeBlockEntities(template.getSchematic(), world, origin, placementType);
+		this.jobs.add(new Job(world.getRegistryKey(), template.getId(), template.getSchematic(), origin, placementType, 0));
+		this.dirty = true;
+	}
+
+	public int getQueuedCount() {
+		return this.jobs.size();
+	}
+
+	/**
+	 * @return how many chunk sections are left to place, over all queued placements
+	 */
+	public long getRemainingSections() {
+		long sections = 0;
+		for (Job job : this.jobs) sections += job.getSectionCount() - job.nextSection;
+		return sections;
+	}
+
+	public long getLastTickNanos() {
+		return this.lastTickNanos;
+	}
+
+	public long getMaxTickNanos() {
+		return this.maxTickNanos;
+	}
+
+	private void tick(MinecraftServer server) {
+		if (this.jobs.isEmpty()) {
+			this.lastTickNanos = 0;
+			return;
+		}
+
+		long start = System.nanoTime();
+		long budget = Math.max(DimensionalDoors.getConfig().getPocketsConfig().schematicPlacementMillisPerTick, 1) * 1_000_000L;
+		// At least one section is placed every tick, so placements finish even on an overloaded server
+		do {
+			Job job = this.jobs.peek();
+			ServerWorld world = server.getWorld(job.world);
+			if (world == null) {
+				LOGGER.error("Dropping the placement of " + job.template + " at " + job.origin + ", " + job.world.getValue() + " does not exist");
+				this.jobs.poll();
+			} else if (job.nextSection < job.getSectionCount()) {
+				SchematicPlacer.placeSection(job.schematic, world, job.origin, job.getSection(job.nextSection++), job.placementType);
+			} else {
+				this.jobs.poll();
+				SchematicPlacer.placeEntities(job.schematic, world, job.origin);
+				job.placed.complete(null);
+			}
+			this.dirty = true;
+		} while (!this.jobs.isEmpty() && System.nanoTime() - start < budget);
+
+		this.lastTickNanos = System.nanoTime() - start;
+		this.maxTickNanos = Math.max(this.maxTickNanos, this.lastTickNanos);
+	}
+
+	public NbtCompound toNbt(NbtCompound nbt) {
+		NbtList jobsNbt = new NbtList();
+		for (Job job : this.jobs) {
+			NbtCompound jobNbt = new NbtCompound();
+			jobNbt.putString("world", job.world.getValue().toString());
+			jobNbt.putString("template", job.template.toString());
+			jobNbt.putLong("origin", job.origin.asLong());
+			jobNbt.putString("placement_type", job.placementType.getId());
+			jobNbt.putInt("next_section", job.nextSection);
+			jobsNbt.add(jobNbt);
+		}
+		nbt.put("jobs", jobsNbt);
+		return nbt;
+	}
+
+	public void fromNbt(NbtCompound nbt) {
+		this.jobs.clear();
+		for (NbtElement element : nbt.getList("jobs", NbtType.COMPOUND)) {
+			NbtCompound jobNbt = (NbtCompound) element;
+			Identifier id = new Identifier(jobNbt.getString("template"));
+			PocketTemplate template = PocketLoader.getInstance().getTemplates().get(Path.stringPath(id));
+			if (template == null) {
+				LOGGER.error("Could not resume placing pocket template " + id + ", it does not exist anymore");
+				continue;
+			}
+			this.jobs.add(new Job(
+					RegistryKey.of(RegistryKeys.WORLD, new Identifier(jobNbt.getString("world"))),
+					id,
+					template.getSchematic(),
+					BlockPos.fromLong(jobNbt.getLong("origin")),
+					Objects.requireNonNullElse(BlockPlacementType.getFromId(jobNbt.getString("placement_type")), BlockPlacementType.SECTION_NO_UPDATE),
+					jobNbt.getInt("next_section")
+			));
+		}
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
+
+	private static class Job {
+		private final RegistryKey<World> world;
+		private final Identifier template;
+		private final Schematic schematic;
+		private final BlockPos origin;
+		private final BlockPlacementType placementType;
+		private final BlockBox box;
+		private final CompletableFuture<Void> placed = new CompletableFuture<>();
+		private int nextSection;
+
+		private Job(RegistryKey<World> world, Identifier template, Schematic schematic, BlockPos origin, BlockPlacementType placementType, int nextSection) {
+			this.world = world;
+			this.template = template;
+			this.schematic = schematic;
+			this.origin = origin;
+			this.placementType = placementType;
+			this.box = BlockBox.create(origin, origin.add(schematic.getWidth() - 1, schematic.getHeight() - 1, schematic.getLength() - 1));
+			this.nextSection = nextSection;
+		}
+
+		private int getSectionCount() {
+			return this.getSectionsX() * this.getSectionsY() * this.getSectionsZ();
+		}
+
+		// Sections of a chunk follow each other, so a chunk is loaded once rather than once per section
+		private BlockBox getSection(int index) {
+			int y = (this.box.getMinY() >> 4) + index % this.getSectionsY();
+			index /= this.getSectionsY();
+			int z = (this.box.getMinZ() >> 4) + index % this.getSectionsZ();
+			int x = (this.box.getMinX() >> 4) + index / this.getSectionsZ();
+			return new BlockBox(x << 4, y << 4, z << 4, (x << 4) + 15, (y << 4) + 15, (z << 4) + 15);
+		}
+
+		private int getSectionsX() {
+			return (this.box.getMaxX() >> 4) - (this.box.getMinX() >> 4) + 1;
+		}
+
+		private int getSectionsY() {
+			return (this.box.getMaxY() >> 4) - (this.box.getMinY() >> 4) + 1;
+		}
+
+		private int getSectionsZ() {
+			return (this.box.getMaxZ() >> 4) - (this.box.getMinZ() >> 4) + 1;
+		}
+	}
+}
@@ -106,12 +106,13 @@ public class TemplateUtils {
             }
         }
 
-        for (RiftBlockEntity rift : rifts) {
-            VirtualTarget dest = rift.getDestination();
-            if (dest instanceof PocketExitMarker) {
-                if (linkProperties != null) rift.setProperties(linkProperties);
-                rift.setDestination(rift.getProperties() == null || !rift.getProperties().isOneWay() ? linkTo : null);
+        // Pockets generated ahead of time keep their exits until they are claimed, see PocketPool
+        if (linkTo instanceof PocketExitMarker marker) {
+            for (RiftBlockEntity rift : rifts) {
+                if (rift.getDestination() instanceof PocketExitMarker) marker.addExit(rift.getPos());
             }
+        } else {
+            linkExits(rifts, linkTo, linkProperties);
         }
 
         for (RiftBlockEntity rift : rifts) {
@@ -120,6 +121,16 @@ public class TemplateUtils {
         }
     }
 
+    public static void linkExits(List<? extends RiftBlockEntity> rifts, VirtualTarget linkTo, LinkProperties linkProperties) {
+        for (RiftBlockEntity rift : rifts) {
+            VirtualTarget dest = rift.getDestination();
+            if (dest instanceof PocketExitMarker) {
+                if (linkProperties != null) rift.setProperties(linkProperties);
+                rift.setDestination(rift.getProperties() == null || !rift.getProperties().isOneWay() ? linkTo : null);
+            }
+        }
+    }
+
     public static void replacePlaceholders(Schematic schematic, StructureWorldAccess world) {
         // Replace placeholders (some schematics will contain them)
         List<NbtCompound> blockEntities = new ArrayList<>();
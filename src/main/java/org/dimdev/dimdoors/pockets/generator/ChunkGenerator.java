@@ -2,7 +2,9 @@ package org.dimdev.dimdoors.pockets.generator;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -10,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.fluid.FluidState;
 import net.minecraft.fluid.Fluids;
 import net.minecraft.nbt.NbtCompound;
@@ -21,24 +24,30 @@ import net.minecraft.server.world.ServerLightingProvider;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.ChunkRegion;
 import net.minecraft.world.HeightLimitView;
 import net.minecraft.world.Heightmap;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.chunk.ChunkStatus;
 import net.minecraft.world.chunk.ProtoChunk;
 import net.minecraft.world.chunk.UpgradeData;
+import net.minecraft.world.chunk.WorldChunk;
 import net.minecraft.world.gen.GenerationStep;
 import net.minecraft.world.gen.chunk.Blender;
 import net.minecraft.world.gen.chunk.ChunkGeneratorSettings;
 import net.minecraft.world.gen.noise.NoiseConfig;
 
 import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.api.util.BlockBoxUtil;
+import org.dimdev.dimdoors.api.util.ChunkUtil;
 import org.dimdev.dimdoors.block.ModBlocks;
 import org.dimdev.dimdoors.block.entity.DetachedRiftBlockEntity;
 import org.dimdev.dimdoors.block.entity.ModBlockEntityTypes;
@@ -95,19 +104,95 @@ public class ChunkGenerator extends PocketGenerator {
 		LOGGER.info("Generating chunk pocket at location " + pocket.getOrigin());
 
 		ServerWorld genWorld = DimensionalDoors.getWorld(RegistryKey.of(RegistryKeys.WORLD, dimensionID));
-		net.minecraft.world.gen.chunk.ChunkGenerator genWorldChunkGenerator = genWorld.getChunkManager().getChunkGenerator();
 
-		NoiseConfig config = NoiseConfig.create(ChunkGeneratorSettings.createMissingSettings(), world.getRegistryManager().get(RegistryKeys.NOISE_PARAMETERS).getReadOnlyWrapper(), world.getSeed());
+		NoiseConfig config = createNoiseConfig(world);
+
+		List<Chunk> protoChunks = createProtoChunks(world, genWorld, pocket.getOrigin(), chunkSizeX, chunkSizeZ);
+		ChunkRegion protoRegion = createRegion(genWorld, protoChunks);//TODO Redo?
+		// The terrain only depends on the generator settings, the seed and where the chunks are
+		String generatorHash = ChunkPocketCache.isEnabled() ? ChunkPocketCache.getGeneratorHash(genWorld) : null;
+		String cacheKey = generatorHash == null ? null : ChunkPocketCache.getKey(this.dimensionID + ";" + generatorHash + ";" + chunkSizeX + "x" + chunkSizeZ, genWorld.getSeed(), protoChunks.get(0).getPos());
+		if (cacheKey != null && ChunkPocketCache.load(cacheKey, protoChunks)) {
+			LOGGER.debug("Copied the chunks for the pocket from the cache");
+		} else {
+			generate(genWorld, config, protoChunks, protoRegion, Util.getMainWorkerExecutor());
+			if (cacheKey != null) ChunkPocketCache.store(cacheKey, protoChunks);
+		}
+
+
+		BlockPos firstCorner = pocket.getOrigin();
+		BlockPos secondCorner = new BlockPos(firstCorner.getX() + size.getX() - 1, Math.min(firstCorner.getY() + size.getY() - 1, world.getHeight() - virtualYOffset - 1), firstCorner.getZ() + size.getZ() - 1); // subtracting 1 here since it should be 0 inclusive and size exclusive
+
+		BlockPos pocketOriginChunkOffset = new ChunkPos(pocket.getOrigin()).getStartPos().subtract(firstCorner);
+		BlockPos sourceOffset = pocketOriginChunkOffset.add(0, virtualYOffset, 0);
+		BlockBox realBlockBox = BlockBox.create(firstCorner, secondCorner);
+		List<WorldChunk> copiedChunks = new ArrayList<>();
+		for (int chunkX = firstCorner.getX() >> 4; chunkX <= secondCorner.getX() >> 4; chunkX++) {
+			for (int chunkZ = firstCorner.getZ() >> 4; chunkZ <= secondCorner.getZ() >> 4; chunkZ++) {
+				WorldChunk chunk = world.getChunk(chunkX, chunkZ);
+				copyChunk(world, protoRegion, chunk, realBlockBox, sourceOffset);
+				copiedChunks.add(chunk);
+			}
+		}
+		Box realBox = new Box(firstCorner, secondCorner);
+		for (Chunk protoChunk : protoChunks) {
+			for(BlockPos virtualBlockPos : protoChunk.getBlockEntityPositions()) {
+				BlockPos realBlockPos = virtualBlockPos.subtract(pocketOriginChunkOffset).add(0, -virtualYOffset, 0);
+				if (!realBox.contains(realBlockPos.getX(), realBlockPos.getY(), realBlockPos.getZ())) continue;
+				// The generated block entity knows only its virtual position, a new one is read from its data at the real one
+				NbtCompound blockEntityNbt = protoChunk.getPackedBlockEntityNbt(virtualBlockPos);
+				if (blockEntityNbt == null) continue;
+				WorldChunk chunk = world.getWorldChunk(realBlockPos);
+				BlockEntity blockEntity = BlockEntity.createFromNbt(realBlockPos, chunk.getBlockState(realBlockPos), blockEntityNbt);
+				if (blockEntity != null) chunk.addBlockEntity(blockEntity);
+			}
+		}
+		copiedChunks.forEach(chunk -> ChunkUtil.lightAndSend(world, chunk));
+		Box virtualBox = realBox.offset(pocketOriginChunkOffset.add(0, virtualYOffset, 0));
+		/*
+		for (Entity entity : protoRegion.getOtherEntities(null, virtualBox)) { // TODO: does this even work?
+			TeleportUtil.teleport(entity, world, entity.getPos().add(-pocketOriginChunkOffset.getX(), -pocketOriginChunkOffset.getY() - virtualYOffset, -pocketOriginChunkOffset.getZ()), entity.yaw);
+		} // TODO: Entities?/ Biomes/ Structure Data
+		*/
+		world.setBlockState(world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, pocket.getOrigin()), ModBlocks.DETACHED_RIFT.getDefaultState());
+
+		DetachedRiftBlockEntity rift = ModBlockEntityTypes.DETACHED_RIFT.instantiate(world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, pocket.getOrigin()), ModBlocks.DETACHED_RIFT.getDefaultState());
+		world.addBlockEntity(rift);
+
+		rift.setDestination(new PocketEntranceMarker());
+		pocket.virtualLocation = sourceVirtualLocation;
 
-		ArrayList<Chunk> protoChunks = new ArrayList<>();
+		return pocket;
+	}
+
+	static NoiseConfig createNoiseConfig(ServerWorld world) {
+		return NoiseConfig.create(ChunkGeneratorSettings.createMissingSettings(), world.getRegistryManager().get(RegistryKeys.NOISE_PARAMETERS).getReadOnlyWrapper(), world.getSeed());
+	}
+
+	static List<Chunk> createProtoChunks(ServerWorld world, ServerWorld genWorld, BlockPos origin, int chunkSizeX, int chunkSizeZ) {
+		List<Chunk> protoChunks = new ArrayList<>();
 		for (int z = 0; z < chunkSizeZ; z++) {
 			for (int x = 0; x < chunkSizeX; x++) {
-				ProtoChunk protoChunk = new ProtoChunk(new ChunkPos(pocket.getOrigin().add(x * 16, 0, z * 16)), UpgradeData.NO_UPGRADE_DATA, world, genWorld.getRegistryManager().get(RegistryKeys.BIOME), null);
+				ProtoChunk protoChunk = new ProtoChunk(new ChunkPos(origin.add(x * 16, 0, z * 16)), UpgradeData.NO_UPGRADE_DATA, world, genWorld.getRegistryManager().get(RegistryKeys.BIOME), null);
 				protoChunk.setLightingProvider(genWorld.getLightingProvider());
 				protoChunks.add(protoChunk);
 			}
 		}
-		ChunkRegion protoRegion = new ChunkRegionHack(genWorld, protoChunks);//TODO Redo?
+		return protoChunks;
+	}
+
+	static ChunkRegion createRegion(ServerWorld genWorld, List<Chunk> protoChunks) {
+		return new ChunkRegionHack(genWorld, protoChunks);
+	}
+
+	/**
+	 * Runs the vanilla generation on the chunks. Only biomes and noise, which read nothing but their own chunk, run on
+	 * the executor, each chunk getting its noise once its biomes are done. Every other stage reads or writes the
+	 * neighbors and runs on the calling thread, one chunk after the other, once the previous stage is done for all.
+	 */
+	static void generate(ServerWorld genWorld, NoiseConfig config, List<Chunk> protoChunks, ChunkRegion protoRegion, Executor executor) {
+		net.minecraft.world.gen.chunk.ChunkGenerator genWorldChunkGenerator = genWorld.getChunkManager().getChunkGenerator();
+
 		for (Chunk protoChunk : protoChunks) { // TODO: check wether structures are even activated
 			genWorldChunkGenerator.setStructureStarts(genWorld.getRegistryManager(), genWorld.getChunkManager().getStructurePlacementCalculator(), genWorld.getStructureAccessor(), protoChunk, genWorld.getStructureTemplateManager());
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.STRUCTURE_STARTS);
@@ -116,24 +201,20 @@ public class ChunkGenerator extends PocketGenerator {
 			genWorldChunkGenerator.addStructureReferences(protoRegion, genWorld.getStructureAccessor().forRegion(protoRegion), protoChunk);
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.STRUCTURE_REFERENCES);
 		}
-		for (Chunk protoChunk : protoChunks) {
-			genWorldChunkGenerator.populateBiomes(Util.getMainWorkerExecutor(), config, Blender.getNoBlending(), genWorld.getStructureAccessor(), protoChunk);
+
+		CompletableFuture.allOf(protoChunks.stream().map(protoChunk -> genWorldChunkGenerator.populateBiomes(executor, config, Blender.getNoBlending(), genWorld.getStructureAccessor(), protoChunk).thenCompose(biomes -> {
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.BIOMES);
-		}
-		for (Chunk protoChunk : protoChunks) {
-			try {
-				genWorldChunkGenerator.populateNoise(net.minecraft.util.Util.getMainWorkerExecutor(), Blender.getNoBlending(), config, genWorld.getStructureAccessor().forRegion(protoRegion), protoChunk).get();
-			} catch (InterruptedException | ExecutionException e) {
-				e.printStackTrace();
-			}
+			return genWorldChunkGenerator.populateNoise(executor, Blender.getNoBlending(), config, genWorld.getStructureAccessor().forRegion(protoRegion), protoChunk);
+		}).thenAccept(noised -> {
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.NOISE);
-		}
+		})).toArray(CompletableFuture[]::new)).join();
+
 		for (Chunk protoChunk : protoChunks) {
 			genWorldChunkGenerator.buildSurface(protoRegion, genWorld.getStructureAccessor(), config, protoChunk);
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.SURFACE);
 		}
-		for (GenerationStep.Carver carver : GenerationStep.Carver.values()) {
-			for (Chunk protoChunk : protoChunks) {
+		for (Chunk protoChunk : protoChunks) {
+			for (GenerationStep.Carver carver : GenerationStep.Carver.values()) {
 				genWorldChunkGenerator.carve(protoRegion, genWorld.getSeed(), config, genWorld.getBiomeAccess(), genWorld.getStructureAccessor(), protoChunk, carver);
 				ProtoChunk pChunk = ((ProtoChunk) protoChunk);
 				if (pChunk.getStatus() == ChunkStatus.SURFACE) pChunk.setStatus(ChunkStatus.CARVERS);
@@ -145,6 +226,7 @@ public class ChunkGenerator extends PocketGenerator {
 			genWorldChunkGenerator.generateFeatures(tempRegion, protoChunk, genWorld.getStructureAccessor().forRegion(tempRegion));
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.FEATURES);
 		}
+
 		for (Chunk protoChunk : protoChunks) { // likely only necessary for spawn step since we copy over anyways
 			((ServerLightingProvider) genWorld.getLightingProvider()).light(protoChunk, false);
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.LIGHT);
@@ -154,43 +236,44 @@ public class ChunkGenerator extends PocketGenerator {
 			genWorldChunkGenerator.populateEntities(tempRegion);
 			((ProtoChunk) protoChunk).setStatus(ChunkStatus.SPAWN);
 		}
+	}
 
-
-		BlockPos firstCorner = pocket.getOrigin();
-		BlockPos secondCorner = new BlockPos(firstCorner.getX() + size.getX() - 1, Math.min(firstCorner.getY() + size.getY() - 1, world.getHeight() - virtualYOffset - 1), firstCorner.getZ() + size.getZ() - 1); // subtracting 1 here since it should be 0 inclusive and size exclusive
-
-		BlockPos pocketOriginChunkOffset = new ChunkPos(pocket.getOrigin()).getStartPos().subtract(firstCorner);
-		for (BlockPos blockPos : BlockPos.iterate(firstCorner, secondCorner)) {
-			BlockPos sourcePos = blockPos.add(pocketOriginChunkOffset).add(0, virtualYOffset, 0);
-			BlockState blockState = protoRegion.getBlockState(sourcePos);
-			if (!blockState.isAir()) {
-				world.setBlockState(blockPos, protoRegion.getBlockState(blockPos.add(pocketOriginChunkOffset).add(0, virtualYOffset, 0)));
-			}
-		}
-		Box realBox = new Box(firstCorner, secondCorner);
-		for (Chunk protoChunk : protoChunks) {
-			for(BlockPos virtualBlockPos : protoChunk.getBlockEntityPositions()) {
-				BlockPos realBlockPos = virtualBlockPos.subtract(pocketOriginChunkOffset).add(0, -virtualYOffset, 0);
-				if (realBox.contains(realBlockPos.getX(), realBlockPos.getY(), realBlockPos.getZ())) {
-					world.addBlockEntity(protoChunk.getBlockEntity(virtualBlockPos)); // TODO: ensure this works, likely bugged
+	/**
+	 * Copies the blocks in the box from the generated chunks into the chunk of the pocket. Sections which are empty
+	 * and entirely in the box take the block palette of the generated section as is, others are copied block by block,
+	 * leaving out air. Points of interest are registered for every written section. Neither causes block updates,
+	 * light or packets, the caller handles those once per chunk.
+	 */
+	private static void copyChunk(ServerWorld world, ChunkRegion source, WorldChunk chunk, BlockBox box, BlockPos offset) {
+		BlockBox chunkBox = BlockBoxUtil.getBox(chunk);
+		if (!chunkBox.intersects(box)) return;
+		BlockBox intersection = BlockBoxUtil.intersect(chunkBox, box);
+		boolean sectionAligned = (offset.getX() & 15) == 0 && (offset.getY() & 15) == 0 && (offset.getZ() & 15) == 0;
+
+		ChunkSection[] sections = chunk.getSectionArray();
+		for (int index = chunk.getSectionIndex(intersection.getMinY()); index <= chunk.getSectionIndex(intersection.getMaxY()); index++) {
+			int sectionY = chunk.sectionIndexToCoord(index);
+			BlockBox sectionBox = new BlockBox(chunkBox.getMinX(), sectionY << 4, chunkBox.getMinZ(), chunkBox.getMaxX(), (sectionY << 4) + 15, chunkBox.getMaxZ());
+			ChunkSection section = sections[index];
+
+			if (sectionAligned && section.isEmpty() && box.contains(new BlockPos(sectionBox.getMinX(), sectionBox.getMinY(), sectionBox.getMinZ())) && box.contains(new BlockPos(sectionBox.getMaxX(), sectionBox.getMaxY(), sectionBox.getMaxZ()))) {
+				Chunk sourceChunk = source.getChunk((sectionBox.getMinX() + offset.getX()) >> 4, (sectionBox.getMinZ() + offset.getZ()) >> 4);
+				int sourceIndex = sourceChunk.getSectionIndex(sectionBox.getMinY() + offset.getY());
+				if (sourceIndex < 0 || sourceIndex >= sourceChunk.countVerticalSections()) continue; // void air, which is not copied
+				sections[index] = new ChunkSection(sectionY, sourceChunk.getSection(sourceIndex).getBlockStateContainer().copy(), section.getBiomeContainer());
+			} else {
+				for (BlockPos pos : BlockPos.iterate(sectionBox.getMinX(), Math.max(sectionBox.getMinY(), box.getMinY()), sectionBox.getMinZ(), sectionBox.getMaxX(), Math.min(sectionBox.getMaxY(), box.getMaxY()), sectionBox.getMaxZ())) {
+					if (!box.contains(pos)) continue;
+					BlockState state = source.getBlockState(pos.add(offset));
+					if (!state.isAir()) section.setBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15, state, false);
 				}
 			}
+			// Setting the blocks through the world would have registered the points of interest among them
+			world.getPointOfInterestStorage().initForPalette(ChunkSectionPos.from(chunk.getPos(), sectionY), sections[index]);
 		}
-		Box virtualBox = realBox.offset(pocketOriginChunkOffset.add(0, virtualYOffset, 0));
-		/*
-		for (Entity entity : protoRegion.getOtherEntities(null, virtualBox)) { // TODO: does this even work?
-			TeleportUtil.teleport(entity, world, entity.getPos().add(-pocketOriginChunkOffset.getX(), -pocketOriginChunkOffset.getY() - virtualYOffset, -pocketOriginChunkOffset.getZ()), entity.yaw);
-		} // TODO: Entities?/ Biomes/ Structure Data
-		*/
-		world.setBlockState(world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, pocket.getOrigin()), ModBlocks.DETACHED_RIFT.getDefaultState());
-
-		DetachedRiftBlockEntity rift = ModBlockEntityTypes.DETACHED_RIFT.instantiate(world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, pocket.getOrigin()), ModBlocks.DETACHED_RIFT.getDefaultState());
-		world.addBlockEntity(rift);
 
-		rift.setDestination(new PocketEntranceMarker());
-		pocket.virtualLocation = sourceVirtualLocation;
-
-		return pocket;
+		Heightmap.populateHeightmaps(chunk, chunk.getHeightmaps().stream().map(Map.Entry::getKey).collect(Collectors.toSet()));
+		chunk.setNeedsSaving(true);
 	}
 
 	@Override
@@ -0,0 +1,260 @@
+package org.dimdev.dimdoors.pockets.generator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+
+import net.fabricmc.fabric.api.util.NbtType;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.level.registry.RegistryStorage;
+
+/**
+ * Terrain generated for chunk pockets, kept in the world directory so generating a pocket from the same settings, seed
+ * and source chunks again copies the blocks from disk instead of running the vanilla generation. Since the ids of
+ * removed pockets are reused, the source chunks of a new pocket are often ones that were generated before.
+ * <p>
+ * Only the block palettes of the sections and the block entities are kept. The least recently used entries are
+ * deleted once there are more than the configured amount.
+ */
+public final class ChunkPocketCache {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int FORMAT_VERSION = 1; // Increment this number every time the format or the generation changes
+	private static final Codec<PalettedContainer<BlockState>> BLOCK_STATE_CODEC = PalettedContainer.createPalettedContainerCodec(Block.STATE_IDS, BlockState.CODEC, PalettedContainer.PaletteProvider.BLOCK_STATE, Blocks.AIR.getDefaultState());
+	// Worlds are created again for every server start, so the hashes are dropped with them
+	private static final Map<ServerWorld, Optional<String>> GENERATOR_HASHES = new WeakHashMap<>();
+
+	private ChunkPocketCache() {
+	}
+
+	public static boolean isEnabled() {
+		return getMaxEntries() > 0;
+	}
+
+	/**
+	 * Hashes the chunk generator of the world along with the biomes it places, including everything they refer to
+	 * such as noise settings, density functions and features. Data packs changing any of them change the hash.
+	 *
+	 * @return null if the generator can not be encoded, nothing should be cached for the world then
+	 */
+	public static String getGeneratorHash(ServerWorld world) {
+		return GENERATOR_HASHES.computeIfAbsent(world, ChunkPocketCache::hashGenerator).orElse(null);
+	}
+
+	private static Optional<String> hashGenerator(ServerWorld world) {
+		net.minecraft.world.gen.chunk.ChunkGenerator generator = world.getChunkManager().getChunkGenerator();
+		// Without registry ops, registry entries are encoded with their contents instead of their ids
+		Optional<JsonElement> generatorJson = net.minecraft.world.gen.chunk.ChunkGenerator.CODEC.encodeStart(JsonOps.INSTANCE, generator).result();
+		if (generatorJson.isEmpty()) {
+			LOGGER.warn("Could not encode the chunk generator of " + world.getRegistryKey().getValue() + ", its chunk pockets are not cached");
+			return Optional.empty();
+		}
+
+		StringBuilder settings = new StringBuilder(generatorJson.get().toString());
+		List<RegistryEntry<Biome>> biomes = new ArrayList<>(generator.getBiomeSource().getBiomes());
+		biomes.sort(Comparator.comparing(biome -> biome.getKey().map(key -> key.getValue().toString()).orElse("")));
+		for (RegistryEntry<Biome> biome : biomes) {
+			Optional<JsonElement> biomeJson = Biome.CODEC.encodeStart(JsonOps.INSTANCE, biome.value()).result();
+			if (biomeJson.isEmpty()) {
+				LOGGER.warn("Could not encode the biome " + biome.getKey().map(key -> key.getValue().toString()).orElse("?") + " of " + world.getRegistryKey().getValue() + ", its chunk pockets are not cached");
+				return Optional.empty();
+			}
+			settings.append(';').append(biomeJson.get());
+		}
+		return Optional.of(hash(settings.toString()));
+	}
+
+	/**
+	 * @param settings everything about the generator which changes the generated blocks, see {@link #getGeneratorHash}
+	 */
+	public static String getKey(String settings, long seed, ChunkPos source) {
+		return settings + ";" + seed + ";" + source.x + "," + source.z + ";" + SharedConstants.getGameVersion().getSaveVersion().getId() + ";" + FORMAT_VERSION;
+	}
+
+	/**
+	 * Fills the freshly created chunks with the blocks cached for the key. The entry is read on the calling thread,
+	 * since the pocket is placed right after. It is a single compressed file of a few chunks, much like the chunk
+	 * loads the server does on its own thread, and far cheaper than the generation it replaces.
+	 *
+	 * @return false if nothing is cached for the key, the chunks are left untouched then
+	 */
+	public static boolean load(String key, List<Chunk> chunks) {
+		RegistryStorage storage = DimensionalRegistry.getStorage();
+		Path file = storage.getChunkPocketCacheFile(hash(key));
+		if (!Files.exists(file)) return false;
+
+		NbtCompound nbt;
+		try {
+			nbt = storage.read(file);
+		} catch (IOException e) {
+			LOGGER.warn("Could not read the cached chunk pocket " + file, e);
+			return false;
+		}
+		if (!nbt.getString("key").equals(key)) return false;
+
+		Long2ObjectMap<NbtCompound> chunksNbt = new Long2ObjectOpenHashMap<>();
+		for (NbtElement element : nbt.getList("chunks", NbtType.COMPOUND)) {
+			chunksNbt.put(((NbtCompound) element).getLong("pos"), (NbtCompound) element);
+		}
+		if (chunks.stream().anyMatch(chunk -> !chunksNbt.containsKey(chunk.getPos().toLong()))) return false;
+
+		try {
+			// Decode everything first, so a broken entry does not leave half filled chunks behind
+			List<ChunkSection[]> decoded = new ArrayList<>();
+			for (Chunk chunk : chunks) decoded.add(readSections(chunksNbt.get(chunk.getPos().toLong()), chunk));
+			for (int i = 0; i < chunks.size(); i++) {
+				Chunk chunk = chunks.get(i);
+				ChunkSection[] sections = decoded.get(i);
+				System.arraycopy(sections, 0, chunk.getSectionArray(), 0, sections.length);
+				readBlockEntities(chunksNbt.get(chunk.getPos().toLong()), chunk);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not read the cached chunk pocket " + file, e);
+			return false;
+		}
+
+		storage.getWriter().execute(() -> {
+			try {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (IOException ignored) { // Deleted since, or the entry is just evicted a bit earlier
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Caches the blocks of the generated chunks for the key. The chunks are encoded right away, and written to disk
+	 * on the writer thread of the registry storage.
+	 */
+	public static void store(String key, List<Chunk> chunks) {
+		NbtList chunksNbt = new NbtList();
+		for (Chunk chunk : chunks) chunksNbt.add(writeChunk(chunk));
+		NbtCompound nbt = new NbtCompound();
+		nbt.putString("key", key);
+		nbt.put("chunks", chunksNbt);
+
+		RegistryStorage storage = DimensionalRegistry.getStorage();
+		Path file = storage.getChunkPocketCacheFile(hash(key));
+		int maxEntries = getMaxEntries();
+		CompletableFuture.runAsync(() -> {
+			try {
+				storage.write(file, nbt);
+				evict(storage.getChunkPocketCacheFolder(), maxEntries);
+			} catch (IOException e) {
+				LOGGER.warn("Could not cache the chunk pocket in " + file, e);
+			}
+		}, storage.getWriter());
+	}
+
+	private static NbtCompound writeChunk(Chunk chunk) {
+		NbtCompound nbt = new NbtCompound();
+		nbt.putLong("pos", chunk.getPos().toLong());
+
+		NbtList sectionsNbt = new NbtList();
+		ChunkSection[] sections = chunk.getSectionArray();
+		for (int index = 0; index < sections.length; index++) {
+			if (sections[index].isEmpty()) continue;
+			NbtCompound sectionNbt = new NbtCompound();
+			sectionNbt.putInt("index", index);
+			sectionNbt.put("block_states", BLOCK_STATE_CODEC.encodeStart(NbtOps.INSTANCE, sections[index].getBlockStateContainer()).getOrThrow(false, LOGGER::error));
+			sectionsNbt.add(sectionNbt);
+		}
+		nbt.put("sections", sectionsNbt);
+
+		NbtList blockEntitiesNbt = new NbtList();
+		for (BlockPos pos : chunk.getBlockEntityPositions()) {
+			NbtCompound blockEntityNbt = chunk.getPackedBlockEntityNbt(pos);
+			if (blockEntityNbt != null) blockEntitiesNbt.add(blockEntityNbt);
+		}
+		nbt.put("block_entities", blockEntitiesNbt);
+		return nbt;
+	}
+
+	private static ChunkSection[] readSections(NbtCompound nbt, Chunk chunk) {
+		ChunkSection[] sections = chunk.getSectionArray().clone();
+		for (NbtElement element : nbt.getList("sections", NbtType.COMPOUND)) {
+			NbtCompound sectionNbt = (NbtCompound) element;
+			int index = sectionNbt.getInt("index");
+			if (index < 0 || index >= sections.length) throw new IllegalStateException("Section " + index + " is outside of the world");
+			PalettedContainer<BlockState> blockStates = BLOCK_STATE_CODEC.parse(NbtOps.INSTANCE, sectionNbt.get("block_states")).getOrThrow(false, LOGGER::error);
+			sections[index] = new ChunkSection(chunk.sectionIndexToCoord(index), blockStates, sections[index].getBiomeContainer());
+		}
+		return sections;
+	}
+
+	private static void readBlockEntities(NbtCompound nbt, Chunk chunk) {
+		for (NbtElement element : nbt.getList("block_entities", NbtType.COMPOUND)) {
+			NbtCompound blockEntityNbt = (NbtCompound) element;
+			BlockPos pos = BlockEntity.posFromNbt(blockEntityNbt);
+			BlockEntity blockEntity = BlockEntity.createFromNbt(pos, chunk.getBlockState(pos), blockEntityNbt);
+			if (blockEntity != null) chunk.setBlockEntity(blockEntity);
+		}
+	}
+
+	private static void evict(Path folder, int maxEntries) throws IOException {
+		List<Path> entries;
+		try (Stream<Path> files = Files.list(folder)) {
+			entries = files.filter(file -> file.getFileName().toString().endsWith(".dat"))
+					.sorted(Comparator.comparing(ChunkPocketCache::getLastModified).reversed())
+					.collect(Collectors.toList());
+		}
+		for (Path file : entries.subList(Math.min(Math.max(maxEntries, 0), entries.size()), entries.size())) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static FileTime getLastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static String hash(String key) {
+		return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+
+	private static int getMaxEntries() {
+		return DimensionalDoors.getConfig().getPocketsConfig().chunkPocketCacheSize;
+	}
+}
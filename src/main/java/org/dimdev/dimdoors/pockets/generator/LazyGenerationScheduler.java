@@ -0,0 +1,148 @@
+package org.dimdev.dimdoors.pockets.generator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.PocketDirectory;
+import org.dimdev.dimdoors.world.pocket.type.LazyGenerationPocket;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Runs the lazy generation of the pockets of one world as their chunks load. While a pocket is being generated, the
+ * loads of its chunks are ignored, and once it is done only the chunks of its box that are loaded by then are
+ * generated, so the cost does not depend on how many chunks the server has loaded.
+ * <p>
+ * The blocks modifiers queued in chunks that are not loaded once the pocket is done are placed when the chunk
+ * loads. Until then, a few of those chunks at a time are loaded in the background, so the blocks also end up in
+ * chunks nobody visits.
+ * <p>
+ * Like the world itself, a scheduler is only used from the server thread.
+ */
+public final class LazyGenerationScheduler {
+	private static final ChunkTicketType<ChunkPos> TICKET = ChunkTicketType.create("dimdoors_lazy_modifications", Comparator.comparingLong(ChunkPos::toLong));
+	private static final Map<RegistryKey<World>, LazyGenerationScheduler> schedulers = new HashMap<>();
+
+	private final IntSet generating = new IntOpenHashSet(); // Ids of the pockets being set up
+	private final Deque<Drain> draining = new ArrayDeque<>(); // Chunks with queued blocks, waiting for a load
+	private final List<Drain> loading = new ArrayList<>();
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(server -> schedulers.forEach((key, scheduler) -> {
+			ServerWorld world = server.getWorld(key);
+			if (world != null) scheduler.tick(world);
+		}));
+		ServerLifecycleEvents.SERVER_STARTED.register(LazyGenerationScheduler::resume);
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> schedulers.clear());
+	}
+
+	public static LazyGenerationScheduler get(RegistryKey<World> world) {
+		return schedulers.computeIfAbsent(world, key -> new LazyGenerationScheduler());
+	}
+
+	/**
+	 * Holds back the generation of the chunks of the pocket until {@link #finish} is called.
+	 */
+	public void begin(Pocket pocket) {
+		this.generating.add(pocket.getId());
+	}
+
+	/**
+	 * Generates the already loaded chunks of the pocket, and queues the chunks that still have blocks to place.
+	 */
+	public void finish(ServerWorld world, LazyGenerationPocket pocket) {
+		this.generating.remove(pocket.getId());
+		DimensionalRegistry.getPocketDirectory(pocket.getWorld()).trackLazyPocket(pocket);
+
+		BlockBox box = pocket.getBox();
+		for (int x = box.getMinX() >> 4; x <= box.getMaxX() >> 4; x++) {
+			for (int z = box.getMinZ() >> 4; z <= box.getMaxZ() >> 4; z++) {
+				if (world.getChunkManager().isChunkLoaded(x, z)) this.chunkLoaded(pocket, world.getChunk(x, z));
+			}
+		}
+
+		this.drain(world, pocket);
+	}
+
+	/**
+	 * Drops whatever is pending for the pocket, if its generation failed.
+	 */
+	public void cancel(Pocket pocket) {
+		this.generating.remove(pocket.getId());
+	}
+
+	public void chunkLoaded(LazyGenerationPocket pocket, Chunk chunk) {
+		if (this.generating.contains(pocket.getId())) return;
+		pocket.chunkLoaded(chunk);
+		if (pocket.isDoneGenerating()) DimensionalRegistry.getPocketDirectory(pocket.getWorld()).untrackLazyPocket(pocket);
+	}
+
+	private void drain(ServerWorld world, LazyGenerationPocket pocket) {
+		for (long chunk : pocket.getModifiedChunks()) {
+			ChunkPos pos = new ChunkPos(chunk);
+			// The blocks may be outside of the grid space of the pocket, where loads do not reach it
+			if (world.getChunkManager().isChunkLoaded(pos.x, pos.z)) {
+				this.chunkLoaded(pocket, world.getChunk(pos.x, pos.z));
+			} else {
+				this.draining.add(new Drain(pocket, pos));
+			}
+		}
+	}
+
+	private void tick(ServerWorld world) {
+		if (this.loading.isEmpty() && this.draining.isEmpty()) return;
+
+		this.loading.removeIf(drain -> {
+			if (!world.getChunkManager().isChunkLoaded(drain.chunk.x, drain.chunk.z)) return false;
+			this.chunkLoaded(drain.pocket, world.getChunk(drain.chunk.x, drain.chunk.z));
+			world.getChunkManager().removeTicket(TICKET, drain.chunk, 0, drain.chunk);
+			return true;
+		});
+
+		PocketDirectory directory = DimensionalRegistry.getPocketDirectory(world.getRegistryKey());
+		int budget = DimensionalDoors.getConfig().getPocketsConfig().lazyModificationChunkLoads;
+		while (this.loading.size() < budget && !this.draining.isEmpty()) {
+			Drain drain = this.draining.poll();
+			// Skip chunks which loaded on their own, and pockets removed in the meantime
+			if (!drain.pocket.hasModifications(drain.chunk.toLong()) || directory.getPocket(drain.pocket.getId()) != drain.pocket) continue;
+			world.getChunkManager().addTicket(TICKET, drain.chunk, 0, drain.chunk);
+			this.loading.add(drain);
+		}
+	}
+
+	// Blocks queued before a restart are saved with their pocket
+	private static void resume(MinecraftServer server) {
+		for (ServerWorld world : server.getWorlds()) {
+			if (!ModDimensions.isPocketDimension(world)) continue;
+			LazyGenerationScheduler scheduler = get(world.getRegistryKey());
+			for (LazyGenerationPocket pocket : DimensionalRegistry.getPocketDirectory(world.getRegistryKey()).getLazyPockets()) {
+				scheduler.drain(world, pocket);
+			}
+		}
+	}
+
+	private record Drain(LazyGenerationPocket pocket, ChunkPos chunk) {
+	}
+}
@@ -2,9 +2,7 @@ package org.dimdev.dimdoors.pockets.generator;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -36,10 +34,6 @@ import org.dimdev.dimdoors.world.pocket.type.Pocket;
 public abstract class LazyPocketGenerator extends PocketGenerator {
 	private static final Logger LOGGER = LogManager.getLogger();
 
-	public static boolean currentlyGenerating = false;
-	public static Queue<Chunk> generationQueue = new LinkedList<>();
-
-
 	protected List<LazyModifier> lazyModifierList = new ArrayList<>();
 
 	public void generateChunk(LazyGenerationPocket pocket, Chunk chunk) {
@@ -0,0 +1,74 @@
+package org.dimdev.dimdoors.pockets.modifier;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+
+import net.fabricmc.fabric.api.util.NbtType;
+
+/**
+ * A block queued by a {@link LazyCompatibleModifier}, placed in a lazy pocket once the chunk containing it loads.
+ * The block entity is kept as it is until the pocket is saved, since rifts are still set up after being queued.
+ */
+public final class ChunkModification {
+	private final BlockPos pos;
+	private final BlockState state;
+	private final BlockEntity blockEntity;
+	private final NbtCompound blockEntityNbt;
+
+	public ChunkModification(BlockPos pos, BlockState state, @Nullable BlockEntity blockEntity) {
+		this(pos, state, blockEntity, null);
+	}
+
+	private ChunkModification(BlockPos pos, BlockState state, BlockEntity blockEntity, NbtCompound blockEntityNbt) {
+		this.pos = pos;
+		this.state = state;
+		this.blockEntity = blockEntity;
+		this.blockEntityNbt = blockEntityNbt;
+	}
+
+	public BlockPos getPos() {
+		return this.pos;
+	}
+
+	public long getChunk() {
+		return ChunkPos.toLong(this.pos.getX() >> 4, this.pos.getZ() >> 4);
+	}
+
+	public void apply(Chunk chunk) {
+		chunk.setBlockState(this.pos, this.state, false);
+		if (this.blockEntity != null) {
+			chunk.setBlockEntity(this.blockEntity);
+		} else if (this.blockEntityNbt != null) {
+			BlockEntity blockEntity = BlockEntity.createFromNbt(this.pos, this.state, this.blockEntityNbt);
+			if (blockEntity != null) chunk.setBlockEntity(blockEntity);
+		}
+	}
+
+	public NbtCompound toNbt(NbtCompound nbt) {
+		nbt.putLong("pos", this.pos.asLong());
+		nbt.put("state", NbtHelper.fromBlockState(this.state));
+		if (this.blockEntity != null) {
+			nbt.put("block_entity", this.blockEntity.createNbtWithIdentifyingData());
+		} else if (this.blockEntityNbt != null) {
+			nbt.put("block_entity", this.blockEntityNbt);
+		}
+		return nbt;
+	}
+
+	public static ChunkModification fromNbt(NbtCompound nbt) {
+		return new ChunkModification(
+				BlockPos.fromLong(nbt.getLong("pos")),
+				NbtHelper.toBlockState(Registries.BLOCK.getReadOnlyWrapper(), nbt.getCompound("state")),
+				null,
+				nbt.contains("block_entity", NbtType.COMPOUND) ? nbt.getCompound("block_entity") : null
+		);
+	}
+}
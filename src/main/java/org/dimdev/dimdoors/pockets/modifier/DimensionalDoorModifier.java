@@ -16,7 +16,6 @@ import net.minecraft.resource.ResourceManager;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Direction;
 
 import net.fabricmc.fabric.api.util.NbtType;
@@ -149,16 +148,10 @@ public class DimensionalDoorModifier extends AbstractLazyCompatibleModifier {
 
 		manager.add(rift);
 
-		if (manager.getPocket() instanceof LazyGenerationPocket) {
-
-			// queue two separate tasks, Cubic Chunks may cause the positions to be in different chunks.
-			queueChunkModificationTask(new ChunkPos(pos), chunk -> {
-				chunk.setBlockState(pos, lower, false);
-				chunk.setBlockEntity(rift);
-			});
-			queueChunkModificationTask(new ChunkPos(pos.up()), chunk -> {
-				chunk.setBlockState(pos.up(), upper, false);
-			});
+		if (manager.getPocket() instanceof LazyGenerationPocket lazyPocket) {
+			// queued separately, Cubic Chunks may cause the positions to be in different chunks.
+			queueChunkModification(lazyPocket, new ChunkModification(pos, lower, rift));
+			queueChunkModification(lazyPocket, new ChunkModification(pos.up(), upper, null));
 		} else {
 			ServerWorld world = parameters.world();
 
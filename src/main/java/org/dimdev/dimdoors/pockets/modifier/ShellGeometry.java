@@ -0,0 +1,50 @@
+package org.dimdev.dimdoors.pockets.modifier;
+
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+
+import org.dimdev.dimdoors.api.util.BlockBoxUtil;
+
+/**
+ * Decides which blocks of a chunk section a {@link ShellModifier} layer fills: those inside of the outer box but not
+ * inside of the inner one.
+ */
+final class ShellGeometry {
+	enum SectionFill {
+		NONE, // The section is outside of the layer, or entirely inside of the inner box
+		PALETTE, // The section can be replaced with one holding nothing but the block state
+		BLOCKS // The section has to be written block by block
+	}
+
+	private ShellGeometry() {
+	}
+
+	/**
+	 * A section is only replaced as a whole if the layer covers every block of it and no block in it is kept, which
+	 * is the case when the layer replaces blocks or the section holds nothing but air.
+	 *
+	 * @param sectionEmpty whether the section holds nothing but air
+	 * @param replace whether blocks other than air are replaced
+	 */
+	static SectionFill getSectionFill(BlockBox section, BlockBox inner, BlockBox outer, boolean sectionEmpty, boolean replace) {
+		if (!section.intersects(outer)) return SectionFill.NONE;
+		BlockBox fill = BlockBoxUtil.intersect(section, outer);
+		if (contains(inner, fill)) return SectionFill.NONE;
+
+		boolean covered = contains(fill, section) && !section.intersects(inner);
+		return covered && (replace || sectionEmpty) ? SectionFill.PALETTE : SectionFill.BLOCKS;
+	}
+
+	/**
+	 * @param air whether the block at the position is air
+	 * @param replace whether blocks other than air are replaced
+	 */
+	static boolean shouldFill(BlockPos pos, BlockBox inner, BlockBox outer, boolean air, boolean replace) {
+		return outer.contains(pos) && !inner.contains(pos) && (replace || air);
+	}
+
+	static boolean contains(BlockBox box, BlockBox other) {
+		return box.getMinX() <= other.getMinX() && box.getMinY() <= other.getMinY() && box.getMinZ() <= other.getMinZ()
+				&& box.getMaxX() >= other.getMaxX() && box.getMaxY() >= other.getMaxY() && box.getMaxZ() >= other.getMaxZ();
+	}
+}
@@ -4,13 +4,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import com.google.common.base.MoreObjects;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import net.minecraft.block.AirBlock;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
@@ -19,12 +20,18 @@ import net.minecraft.resource.ResourceManager;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3i;
+import net.minecraft.world.Heightmap;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
 
 import net.fabricmc.fabric.api.util.NbtType;
 
 import org.dimdev.dimdoors.api.util.BlockBoxUtil;
+import org.dimdev.dimdoors.api.util.ChunkUtil;
 import org.dimdev.dimdoors.api.util.math.Equation;
 import org.dimdev.dimdoors.pockets.PocketGenerationContext;
 import org.dimdev.dimdoors.util.schematic.SchematicBlockPalette;
@@ -56,74 +63,16 @@ public class ShellModifier extends AbstractLazyModifier {
 
 	@Override
 	public void applyToChunk(LazyGenerationPocket pocket, Chunk chunk) {
-
+		Map<String, Double> variableMap = pocket.toVariableMap(new HashMap<>());
+		boolean changed = false;
 		int boxExpansion = 0;
 		for (Layer layer : layers) {
-			int thickness = layer.getThickness(pocket.toVariableMap(new HashMap<>()));
-			final BlockState blockState = layer.getBlockState();
-
-			BlockBox chunkBox = BlockBoxUtil.getBox(chunk);
-
-			BlockBox temp;
-
-
-			// x-planes
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMaxX() + 1 + boxExpansion, boxToDrawAround.getMinY() - thickness - boxExpansion, boxToDrawAround.getMinZ() - thickness - boxExpansion), new Vec3i(boxToDrawAround.getMaxX() + thickness + boxExpansion, boxToDrawAround.getMaxY() + thickness + boxExpansion, boxToDrawAround.getMaxZ() + thickness + boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).isAir()) chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMinX() - 1 - boxExpansion, boxToDrawAround.getMinY() - thickness - boxExpansion, boxToDrawAround.getMinZ() - thickness - boxExpansion), new Vec3i(boxToDrawAround.getMinX() - thickness - boxExpansion, boxToDrawAround.getMaxY() + thickness + boxExpansion, boxToDrawAround.getMaxZ() + thickness + boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).isAir()) chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-
-			// y-planes
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMinX() - boxExpansion, boxToDrawAround.getMaxY() + 1 + boxExpansion, boxToDrawAround.getMinZ() - thickness - boxExpansion), new Vec3i(boxToDrawAround.getMaxX() + boxExpansion, boxToDrawAround.getMaxY() + thickness + boxExpansion, boxToDrawAround.getMaxZ() + thickness + boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).getBlock() instanceof AirBlock)
-								chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMinX() - boxExpansion, boxToDrawAround.getMinY() - 1 - boxExpansion, boxToDrawAround.getMinZ() - thickness - boxExpansion), new Vec3i(boxToDrawAround.getMaxX() + boxExpansion, boxToDrawAround.getMinY() - thickness - boxExpansion, boxToDrawAround.getMaxZ() + thickness + boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).isAir()) chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-
-			// z-planes
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMinX() - boxExpansion, boxToDrawAround.getMinY() - boxExpansion, boxToDrawAround.getMinZ() - 1 - boxExpansion), new Vec3i(boxToDrawAround.getMaxX() + boxExpansion, boxToDrawAround.getMaxY() + boxExpansion, boxToDrawAround.getMinZ() - thickness - boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).isAir()) chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-			temp = BlockBox.create(new Vec3i(boxToDrawAround.getMinX() - boxExpansion, boxToDrawAround.getMinY() - boxExpansion, boxToDrawAround.getMaxZ() + 1 + boxExpansion), new Vec3i(boxToDrawAround.getMaxX() + boxExpansion, boxToDrawAround.getMaxY() + boxExpansion, boxToDrawAround.getMaxZ() + thickness + boxExpansion));
-			if (temp.intersects(chunkBox)) {
-				temp = BlockBoxUtil.intersect(temp, chunkBox);
-				BlockPos.stream(temp)
-						.forEach(blockPos -> {
-							if (chunk.getBlockState(blockPos).isAir()) chunk.setBlockState(blockPos, blockState, false);
-						});
-			}
-
+			int thickness = layer.getThickness(variableMap);
+			BlockBox inner = grow(boxToDrawAround, boxExpansion);
+			changed |= fillShell(chunk, inner, grow(inner, thickness), layer.getBlockState(), false);
 			boxExpansion += thickness;
 		}
+		if (changed) finishChunk(chunk);
 	}
 
 	@Override
@@ -165,7 +114,7 @@ public class ShellModifier extends AbstractLazyModifier {
 			boxToDrawAround = BlockBox.create(new Vec3i(pocketBox.getMinX(), pocketBox.getMinY(), pocketBox.getMinZ()), new Vec3i(pocketBox.getMaxX(), pocketBox.getMaxY(), pocketBox.getMaxZ()));
 			layers.forEach(layer -> pocket.expand(layer.getThickness(variableMap)));
 		} else {
-			layers.forEach(layer -> drawLayer(layer, manager.getPocket(), parameters.world()));
+			drawLayers(pocket, parameters.world());
 		}
 	}
 
@@ -179,30 +128,92 @@ public class ShellModifier extends AbstractLazyModifier {
 		}
 	}
 
-	private void drawLayer(Layer layer, Pocket pocket, ServerWorld world) {
-		int thickness = layer.getThickness(pocket.toVariableMap(new HashMap<>()));
-		final BlockState blockState = layer.getBlockState();
-		BlockBox pocketBox = pocket.getBox();
-
-		// x-planes
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMaxX() + 1, pocketBox.getMinY() - thickness, pocketBox.getMinZ() - thickness), new Vec3i(pocketBox.getMaxX() + thickness, pocketBox.getMaxY() + thickness, pocketBox.getMaxZ() + thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMinX() - 1, pocketBox.getMinY() - thickness, pocketBox.getMinZ() - thickness), new Vec3i(pocketBox.getMinX() - thickness, pocketBox.getMaxY() + thickness, pocketBox.getMaxZ() + thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-
-		// y-planes
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMinX(), pocketBox.getMaxY() + 1, pocketBox.getMinZ() - thickness), new Vec3i(pocketBox.getMaxX(), pocketBox.getMaxY() + thickness, pocketBox.getMaxZ() + thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMinX(), pocketBox.getMinY() - 1, pocketBox.getMinZ() - thickness), new Vec3i(pocketBox.getMaxX(), pocketBox.getMinY() - thickness, pocketBox.getMaxZ() + thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-
-		// z-planes
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMinX(), pocketBox.getMinY(), pocketBox.getMinZ() - 1), new Vec3i(pocketBox.getMaxX(), pocketBox.getMaxY(), pocketBox.getMinZ() - thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-		BlockPos.stream(BlockBox.create(new Vec3i(pocketBox.getMinX(), pocketBox.getMinY(), pocketBox.getMaxZ() + 1), new Vec3i(pocketBox.getMaxX(), pocketBox.getMaxY(), pocketBox.getMaxZ() + thickness)))
-				.forEach(blockPos -> world.setBlockState(blockPos, blockState));
-
-		pocket.expand(thickness);
+	private void drawLayers(Pocket pocket, ServerWorld world) {
+		List<BlockBox> innerBoxes = new ArrayList<>();
+		BlockBox inner = grow(pocket.getBox(), 0);
+		for (Layer layer : layers) {
+			int thickness = layer.getThickness(pocket.toVariableMap(new HashMap<>()));
+			innerBoxes.add(inner);
+			inner = grow(inner, thickness);
+			pocket.expand(thickness);
+		}
+		BlockBox outer = inner;
+
+		for (int chunkX = outer.getMinX() >> 4; chunkX <= outer.getMaxX() >> 4; chunkX++) {
+			for (int chunkZ = outer.getMinZ() >> 4; chunkZ <= outer.getMaxZ() >> 4; chunkZ++) {
+				WorldChunk chunk = world.getChunk(chunkX, chunkZ);
+				boolean changed = false;
+				for (int i = 0; i < layers.size(); i++) {
+					BlockBox layerOuter = i + 1 < innerBoxes.size() ? innerBoxes.get(i + 1) : outer;
+					changed |= fillShell(chunk, innerBoxes.get(i), layerOuter, layers.get(i).getBlockState(), true);
+				}
+				if (!changed) continue;
+
+				finishChunk(chunk);
+				ChunkUtil.lightAndSend(world, chunk);
+			}
+		}
+	}
+
+	/**
+	 * Fills the blocks of the chunk inside of outer but not inside of inner, writing into the sections directly.
+	 * Sections the shell covers entirely get a palette holding just the block state, others are written block by
+	 * block, see {@link ShellGeometry}. Only whether sections are empty is passed on to the lighting provider,
+	 * heightmaps and light are left to the caller, once per chunk.
+	 *
+	 * @param replace whether blocks other than air are replaced
+	 * @return whether any section was written to
+	 */
+	private static boolean fillShell(Chunk chunk, BlockBox inner, BlockBox outer, BlockState blockState, boolean replace) {
+		BlockBox chunkBox = BlockBoxUtil.getBox(chunk);
+		if (!chunkBox.intersects(outer)) return false;
+		BlockBox fill = BlockBoxUtil.intersect(chunkBox, outer);
+		if (replace) removeBlockEntities(chunk, fill, inner);
+
+		ChunkSection[] sections = chunk.getSectionArray();
+		boolean changed = false;
+		for (int index = chunk.getSectionIndex(fill.getMinY()); index <= chunk.getSectionIndex(fill.getMaxY()); index++) {
+			int sectionY = chunk.sectionIndexToCoord(index);
+			BlockBox sectionBox = new BlockBox(chunkBox.getMinX(), sectionY << 4, chunkBox.getMinZ(), chunkBox.getMaxX(), (sectionY << 4) + 15, chunkBox.getMaxZ());
+			ChunkSection section = sections[index];
+			boolean wasEmpty = section.isEmpty();
+
+			switch (ShellGeometry.getSectionFill(sectionBox, inner, outer, wasEmpty, replace)) {
+				case NONE -> {
+					continue;
+				}
+				case PALETTE -> sections[index] = new ChunkSection(sectionY, new PalettedContainer<>(Block.STATE_IDS, blockState, PalettedContainer.PaletteProvider.BLOCK_STATE), section.getBiomeContainer());
+				case BLOCKS -> {
+					BlockBox sectionFill = BlockBoxUtil.intersect(sectionBox, outer);
+					for (BlockPos pos : BlockPos.iterate(sectionFill.getMinX(), sectionFill.getMinY(), sectionFill.getMinZ(), sectionFill.getMaxX(), sectionFill.getMaxY(), sectionFill.getMaxZ())) {
+						boolean air = section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15).isAir();
+						if (ShellGeometry.shouldFill(pos, inner, outer, air, replace)) section.setBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15, blockState, false);
+					}
+				}
+			}
+			changed = true;
+
+			if (chunk instanceof WorldChunk worldChunk && wasEmpty != sections[index].isEmpty()) {
+				worldChunk.getWorld().getChunkManager().getLightingProvider().setSectionStatus(ChunkSectionPos.from(chunk.getPos(), sectionY), sections[index].isEmpty());
+			}
+		}
+		return changed;
+	}
+
+	// Setting the blocks through the world used to drop the block entities in the way
+	private static void removeBlockEntities(Chunk chunk, BlockBox fill, BlockBox inner) {
+		for (BlockPos pos : new ArrayList<>(chunk.getBlockEntityPositions())) {
+			if (fill.contains(pos) && !inner.contains(pos)) chunk.removeBlockEntity(pos);
+		}
+	}
+
+	private static void finishChunk(Chunk chunk) {
+		Heightmap.populateHeightmaps(chunk, chunk.getHeightmaps().stream().map(Map.Entry::getKey).collect(Collectors.toSet()));
+		chunk.setNeedsSaving(true);
+	}
+
+	private static BlockBox grow(BlockBox box, int amount) {
+		return new BlockBox(box.getMinX() - amount, box.getMinY() - amount, box.getMinZ() - amount, box.getMaxX() + amount, box.getMaxY() + amount, box.getMaxZ() + amount);
 	}
 
 	@Override
@@ -2,10 +2,7 @@ package org.dimdev.dimdoors.pockets.virtual.reference;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -16,11 +13,7 @@ import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.resource.ResourceManager;
-import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.ServerTask;
-import net.minecraft.server.world.ChunkHolder;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.chunk.Chunk;
 
 import net.fabricmc.fabric.api.util.NbtType;
 
@@ -28,9 +21,9 @@ import org.dimdev.dimdoors.DimensionalDoors;
 import org.dimdev.dimdoors.api.util.math.Equation;
 import org.dimdev.dimdoors.api.util.math.Equation.EquationParseException;
 import org.dimdev.dimdoors.pockets.PocketGenerationContext;
+import org.dimdev.dimdoors.pockets.generator.LazyGenerationScheduler;
 import org.dimdev.dimdoors.pockets.generator.LazyPocketGenerator;
 import org.dimdev.dimdoors.pockets.generator.PocketGenerator;
-import org.dimdev.dimdoors.pockets.modifier.LazyCompatibleModifier;
 import org.dimdev.dimdoors.pockets.modifier.LazyModifier;
 import org.dimdev.dimdoors.pockets.modifier.Modifier;
 import org.dimdev.dimdoors.pockets.modifier.RiftManager;
@@ -153,45 +146,32 @@ public abstract class PocketGeneratorReference extends AbstractVirtualPocket {
 		generator.applyModifiers(parameters, builder);
 		this.applyModifiers(parameters, builder);
 
-		LazyPocketGenerator.currentlyGenerating = true;
-		// ensure we aren't missing any chunks that were already loaded previously
-		// for lazy gen
-		Set<Chunk> alreadyLoadedChunks = StreamSupport.stream(parameters.world().getChunkManager().threadedAnvilChunkStorage.entryIterator().spliterator(), false).map(ChunkHolder::getWorldChunk).filter(Objects::nonNull).collect(Collectors.toSet());
-
 		Pocket pocket = generator.prepareAndPlacePocket(parameters, builder);
 		BlockPos originalOrigin = pocket.getOrigin();
 
-		RiftManager manager = generator.getRiftManager(pocket);
-
-		generator.applyModifiers(parameters, manager);
-
-		this.applyModifiers(parameters, manager);
+		// Chunks of a lazy pocket loading while it is set up are generated once it is done
+		LazyGenerationScheduler scheduler = LazyGenerationScheduler.get(pocket.getWorld());
+		if (pocket instanceof LazyGenerationPocket) scheduler.begin(pocket);
 
-		if (pocket instanceof LazyGenerationPocket) {
-			if (!(generator instanceof LazyPocketGenerator)) throw new RuntimeException("pocket was instance of LazyGenerationPocket but generator was not instance of LazyPocketGenerator");
-			LazyGenerationPocket lazyPocket = (LazyGenerationPocket) pocket;
-			LazyPocketGenerator clonedGenerator = ((LazyPocketGenerator) generator).cloneWithLazyModifiers(originalOrigin);
-			if (setupLoot != null) clonedGenerator.setSetupLoot(setupLoot);
-
-			attachLazyModifiers(clonedGenerator);
-			clonedGenerator.attachToPocket(lazyPocket);
-			lazyPocket.init();
+		RiftManager manager = generator.getRiftManager(pocket);
+		try {
+			generator.applyModifiers(parameters, manager);
 
-			alreadyLoadedChunks.forEach(lazyPocket::chunkLoaded);
+			this.applyModifiers(parameters, manager);
 
-			LazyPocketGenerator.currentlyGenerating = false;
+			if (pocket instanceof LazyGenerationPocket lazyPocket) {
+				if (!(generator instanceof LazyPocketGenerator)) throw new RuntimeException("pocket was instance of LazyGenerationPocket but generator was not instance of LazyPocketGenerator");
+				LazyPocketGenerator clonedGenerator = ((LazyPocketGenerator) generator).cloneWithLazyModifiers(originalOrigin);
+				if (setupLoot != null) clonedGenerator.setSetupLoot(setupLoot);
 
-			while (!LazyPocketGenerator.generationQueue.isEmpty()) {
-				Chunk chunk = LazyPocketGenerator.generationQueue.remove();
+				attachLazyModifiers(clonedGenerator);
+				clonedGenerator.attachToPocket(lazyPocket);
+				lazyPocket.init();
 
-				LazyCompatibleModifier.runQueuedModifications(chunk);
-				MinecraftServer server = DimensionalDoors.getServer();
-				DimensionalDoors.getServer().send(new ServerTask(server.getTicks(), () -> (lazyPocket).chunkLoaded(chunk)));
+				scheduler.finish(parameters.world(), lazyPocket);
 			}
-			LazyCompatibleModifier.runLeftoverModifications(DimensionalDoors.getWorld(lazyPocket.getWorld()));
-		} else {
-			LazyPocketGenerator.currentlyGenerating = false;
-			LazyPocketGenerator.generationQueue.clear();
+		} finally {
+			scheduler.cancel(pocket); // only left over if the generation failed
 		}
 
 		generator.setup(pocket, manager, parameters, setupLoot != null ? setupLoot : generator.isSetupLoot());
@@ -0,0 +1,318 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+/**
+ * Rifts a random link can lead to, bucketed by their exact set of groups and then kept in a quadtree over
+ * their virtual x and z. Every node knows the total weight and the depth range of the rifts below it.
+ * <p>
+ * Sampling proposes nodes in proportion to an upper bound of the link weight of their rifts, then a rift in
+ * proportion to its own weight, and accepts it with the ratio of its real link weight to that bound. This picks
+ * exactly as if every candidate had been weighted, but only opens nodes which are close compared to their size.
+ */
+public class RandomTargetIndex<T> {
+	private static final int CELL_BITS = 6; // leaves are 64 by 64 blocks
+	private static final int ROOT_LEVEL = 32 - CELL_BITS; // cells of the roots cover half of the int range
+	private static final double OPENING_ANGLE = 0.5; // nodes closer than twice their size are opened
+	private static final int MAX_ATTEMPTS = 256;
+
+	private final Map<Set<Integer>, Long2ObjectMap<Node<T>>> trees = new HashMap<>();
+	private final Map<T, Entry<T>> entries = new Reference2ObjectOpenHashMap<>();
+
+	/**
+	 * The rift a random link starts from and the shape of its weight function.
+	 */
+	public record Query(int x, int z, int depth, Set<Integer> acceptedGroups, double weightMaximum, double coordFactor, double positiveDepthFactor, double negativeDepthFactor) {
+		private double distance(double coordDistance, double depthDifference) {
+			double depthFactor = depthDifference > 0 ? this.positiveDepthFactor : this.negativeDepthFactor;
+			return Math.sqrt(sq(this.coordFactor * coordDistance) + sq(depthFactor * depthDifference));
+		}
+
+		/**
+		 * Calculates the weight as 4m/pi w/(m^2/d + d)^2. This is similar to how gravitational/electromagnetic attraction
+		 * works in physics (G m1 m2/d^2 and k_e m1 m2/d^2). Even though we add a depth dimension to the world, we keep
+		 * the weight inversly proportionally to the area of a sphere (the square of the distance) rather than a
+		 * hypersphere (the cube of the area) because the y coordinate does not matter for now. We use m^2/d + d
+		 * rather than d such that the probability near 0 tends to 0 rather than infinity. f(m^2/d) is a special case
+		 * of f((m^(a+1)/a)/d^a). m is the location of f's maximum. The constant 4m/pi makes it such that a newRiftWeight
+		 * of 1 is equivalent to having a total link weight of 1 distributed equally across all layers.
+		 * TODO: We might want an a larger than 1 to make the function closer to 1/d^2
+		 */
+		public double weight(double weight, double distance) {
+			if (distance <= 0) return 0;
+			return 4 * this.weightMaximum / Math.PI * weight / sq(sq(this.weightMaximum) / distance + distance);
+		}
+
+		// The largest weight per unit of rift weight at any distance in [minDistance, maxDistance], the weight peaks at m
+		private double maxWeight(double minDistance, double maxDistance) {
+			if (maxDistance <= this.weightMaximum) return this.weight(1, maxDistance);
+			if (minDistance >= this.weightMaximum) return this.weight(1, minDistance);
+			return this.weight(1, this.weightMaximum);
+		}
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	public boolean contains(T key) {
+		return this.entries.containsKey(key);
+	}
+
+	/**
+	 * Adds a candidate, or moves it if it was already part of the index.
+	 *
+	 * @param weight the floating or entrance weight of the rift, must be positive
+	 */
+	public void put(T key, Set<Integer> groups, int x, int z, int depth, double weight) {
+		this.remove(key);
+
+		Entry<T> entry = new Entry<>(key, x, z, depth, weight);
+		int cellX = x >> CELL_BITS;
+		int cellZ = z >> CELL_BITS;
+		Long2ObjectMap<Node<T>> roots = this.trees.computeIfAbsent(Set.copyOf(groups), g -> new Long2ObjectOpenHashMap<>());
+		long rootKey = pack(cellX >> ROOT_LEVEL, cellZ >> ROOT_LEVEL);
+		Node<T> node = roots.computeIfAbsent(rootKey, k -> new Node<>(null, roots, ROOT_LEVEL, cellX >> ROOT_LEVEL, cellZ >> ROOT_LEVEL));
+		while (true) {
+			node.add(weight, depth);
+			if (node.level == 0) break;
+			int childX = cellX >> (node.level - 1);
+			int childZ = cellZ >> (node.level - 1);
+			int index = (childX & 1) | (childZ & 1) << 1;
+			if (node.children[index] == null) node.children[index] = new Node<>(node, null, node.level - 1, childX, childZ);
+			node = node.children[index];
+		}
+
+		entry.leaf = node;
+		entry.index = node.entries.size();
+		node.entries.add(entry);
+		this.entries.put(key, entry);
+	}
+
+	public void remove(T key) {
+		Entry<T> entry = this.entries.remove(key);
+		if (entry == null) return;
+
+		Node<T> leaf = entry.leaf;
+		Entry<T> last = leaf.entries.remove(leaf.entries.size() - 1);
+		if (last != entry) {
+			leaf.entries.set(entry.index, last);
+			last.index = entry.index;
+		}
+
+		for (Node<T> node = leaf; node != null; node = node.parent) {
+			node.weight -= entry.weight;
+			if (--node.count > 0) continue;
+			if (node.parent != null) {
+				Node<T>[] siblings = node.parent.children;
+				for (int i = 0; i < 4; i++) {
+					if (siblings[i] == node) siblings[i] = null;
+				}
+			} else {
+				node.roots.remove(pack(node.x, node.z));
+			}
+		}
+	}
+
+	/**
+	 * Picks a candidate in one of the accepted groups, or a new rift, with probabilities proportional to their weights.
+	 *
+	 * @param newRiftWeight the weight of creating a new rift instead, 0 to only pick existing rifts
+	 * @return the picked candidate, or null if a new rift was picked or there is no candidate at all
+	 */
+	public T sample(Query query, double newRiftWeight, Random random) {
+		List<Node<T>> blocks = new ArrayList<>();
+		DoubleArrayList maxWeights = new DoubleArrayList(); // per unit of rift weight
+		DoubleArrayList bounds = new DoubleArrayList(); // cumulative, starting with the new rift
+		double total = Math.max(newRiftWeight, 0);
+		bounds.add(total);
+		for (Map.Entry<Set<Integer>, Long2ObjectMap<Node<T>>> tree : this.trees.entrySet()) {
+			if (Collections.disjoint(tree.getKey(), query.acceptedGroups())) continue;
+			for (Node<T> root : tree.getValue().values()) {
+				total = this.collect(root, query, blocks, maxWeights, bounds, total);
+			}
+		}
+		if (total <= 0) return null;
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			double r = random.nextDouble() * total;
+			if (r < bounds.getDouble(0)) return null;
+
+			int block = search(bounds, r) - 1;
+			Node<T> node = blocks.get(block);
+			Entry<T> entry = node.pick(random);
+			double bound = maxWeights.getDouble(block) * entry.weight;
+			if (random.nextDouble() * bound < query.weight(entry.weight, entry.distance(query))) return entry.key;
+		}
+
+		// Only happens when nearly all of the bounds belong to rifts much closer than the weight maximum
+		return this.sampleExactly(query, newRiftWeight, blocks, random);
+	}
+
+	private double collect(Node<T> node, Query query, List<Node<T>> blocks, DoubleArrayList maxWeights, DoubleArrayList bounds, double total) {
+		long size = 1L << (node.level + CELL_BITS);
+		long minX = (long) node.x * size, minZ = (long) node.z * size;
+		double nearX = Math.max(0, Math.max(minX - query.x(), query.x() - (minX + size - 1)));
+		double nearZ = Math.max(0, Math.max(minZ - query.z(), query.z() - (minZ + size - 1)));
+		double farX = Math.max(Math.abs(minX - query.x()), Math.abs(minX + size - 1 - query.x()));
+		double farZ = Math.max(Math.abs(minZ - query.z()), Math.abs(minZ + size - 1 - query.z()));
+		double coordDistance = Math.sqrt(nearX * nearX + nearZ * nearZ);
+
+		if (node.level > 0 && size > OPENING_ANGLE * coordDistance) {
+			for (Node<T> child : node.children) {
+				if (child != null) total = this.collect(child, query, blocks, maxWeights, bounds, total);
+			}
+			return total;
+		}
+
+		int minDepthDifference = node.minDepth - query.depth(), maxDepthDifference = node.maxDepth - query.depth();
+		double farCoordDistance = Math.sqrt(farX * farX + farZ * farZ);
+		double minDistance = query.distance(coordDistance, minDepthDifference > 0 ? minDepthDifference : Math.min(maxDepthDifference, 0));
+		double maxDistance = Math.max(query.distance(farCoordDistance, Math.max(maxDepthDifference, 0)), query.distance(farCoordDistance, Math.min(minDepthDifference, 0)));
+		double maxWeight = query.maxWeight(minDistance, maxDistance);
+		double bound = node.weight * maxWeight;
+		if (bound > 0) {
+			blocks.add(node);
+			maxWeights.add(maxWeight);
+			total += bound;
+			bounds.add(total);
+		}
+		return total;
+	}
+
+	private T sampleExactly(Query query, double newRiftWeight, List<Node<T>> blocks, Random random) {
+		List<Entry<T>> candidates = new ArrayList<>();
+		blocks.forEach(block -> block.collectEntries(candidates));
+		DoubleArrayList weights = new DoubleArrayList(candidates.size() + 1);
+		double total = Math.max(newRiftWeight, 0);
+		weights.add(total);
+		for (Entry<T> candidate : candidates) {
+			total += query.weight(candidate.weight, candidate.distance(query));
+			weights.add(total);
+		}
+		if (total <= 0) return null;
+
+		int index = search(weights, random.nextDouble() * total);
+		return index == 0 ? null : candidates.get(Math.min(index, candidates.size()) - 1).key;
+	}
+
+	// The first index whose cumulative value is larger than r
+	private static int search(DoubleArrayList cumulative, double r) {
+		int low = 0, high = cumulative.size() - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative.getDouble(middle) > r) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	private static long pack(int x, int z) {
+		return (long) x << 32 | z & 0xFFFFFFFFL;
+	}
+
+	private static double sq(double a) {
+		return a * a;
+	}
+
+	private static class Entry<T> {
+		private final T key;
+		private final int x;
+		private final int z;
+		private final int depth;
+		private final double weight;
+		private Node<T> leaf;
+		private int index;
+
+		private Entry(T key, int x, int z, int depth, double weight) {
+			this.key = key;
+			this.x = x;
+			this.z = z;
+			this.depth = depth;
+			this.weight = weight;
+		}
+
+		private double distance(Query query) {
+			return query.distance(Math.sqrt(sq((double) this.x - query.x()) + sq((double) this.z - query.z())), this.depth - query.depth());
+		}
+	}
+
+	private static class Node<T> {
+		private final Node<T> parent;
+		private final Long2ObjectMap<Node<T>> roots; // only set for roots
+		private final int level;
+		private final int x;
+		private final int z;
+		@SuppressWarnings("unchecked")
+		private final Node<T>[] children = new Node[4];
+		private final List<Entry<T>> entries;
+		private double weight;
+		private int count;
+		// Only ever grows while the node exists, which keeps it a valid bound
+		private int minDepth = Integer.MAX_VALUE;
+		private int maxDepth = Integer.MIN_VALUE;
+
+		private Node(Node<T> parent, Long2ObjectMap<Node<T>> roots, int level, int x, int z) {
+			this.parent = parent;
+			this.roots = roots;
+			this.level = level;
+			this.x = x;
+			this.z = z;
+			this.entries = level == 0 ? new ArrayList<>() : null;
+		}
+
+		private void add(double weight, int depth) {
+			this.weight += weight;
+			this.count++;
+			this.minDepth = Math.min(this.minDepth, depth);
+			this.maxDepth = Math.max(this.maxDepth, depth);
+		}
+
+		// Descends in proportion to the weights, so every entry below is picked in proportion to its own weight
+		private Entry<T> pick(Random random) {
+			Node<T> node = this;
+			while (node.level > 0) {
+				double r = random.nextDouble() * node.weight;
+				Node<T> picked = null;
+				for (Node<T> child : node.children) {
+					if (child == null) continue;
+					picked = child;
+					r -= child.weight;
+					if (r < 0) break;
+				}
+				node = picked;
+			}
+
+			double r = random.nextDouble() * node.weight;
+			for (Entry<T> entry : node.entries) {
+				r -= entry.weight;
+				if (r < 0) return entry;
+			}
+			return node.entries.get(node.entries.size() - 1);
+		}
+
+		private void collectEntries(List<Entry<T>> entries) {
+			if (this.level == 0) {
+				entries.addAll(this.entries);
+				return;
+			}
+			for (Node<T> child : this.children) {
+				if (child != null) child.collectEntries(entries);
+			}
+		}
+	}
+}
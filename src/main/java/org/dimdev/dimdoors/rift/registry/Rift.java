@@ -8,14 +8,16 @@ import org.apache.logging.log4j.Logger;
 import net.minecraft.nbt.NbtCompound;
 
 import org.dimdev.dimdoors.api.util.Location;
-import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
 import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 
 public class Rift extends RegistryVertex {
 	private static final Logger LOGGER = LogManager.getLogger();
 	private Location location;
 	private boolean isDetached;
 	private LinkProperties properties;
+	private VirtualLocation virtualLocation; // resolved by the registry, not saved
+	private boolean registered; // whether the registry still maps the location to this vertex
 
 	public Rift(Location location) {
 		this.location = location;
@@ -41,29 +43,25 @@ public class Rift extends RegistryVertex {
 	@Override
 	public void sourceGone(RegistryVertex source) {
 		super.sourceGone(source);
-		RiftBlockEntity riftTileEntity = (RiftBlockEntity) this.location.getBlockEntity();
-		if (source instanceof Rift) {
-			riftTileEntity.handleSourceGone(((Rift) source).location);
-		}
+		RiftUpdateQueue.getInstance().recolor(this.location);
 	}
 
 	@Override
 	public void targetGone(RegistryVertex target) {
 		super.targetGone(target);
-		RiftBlockEntity riftTileEntity = (RiftBlockEntity) this.location.getBlockEntity();
 		if (target instanceof Rift) {
-			riftTileEntity.handleTargetGone(((Rift) target).location);
+			RiftUpdateQueue.getInstance().targetGone(this.location, ((Rift) target).location);
 		}
-		riftTileEntity.updateColor();
+		RiftUpdateQueue.getInstance().recolor(this.location);
 	}
 
 	public void targetChanged(RegistryVertex target) {
 		LOGGER.debug("Rift " + this + " notified of target " + target + " having changed. Updating color.");
-		((RiftBlockEntity) this.location.getBlockEntity()).updateColor();
+		RiftUpdateQueue.getInstance().recolor(this.location);
 	}
 
 	public void markDirty() {
-		((RiftBlockEntity) this.location.getBlockEntity()).updateColor();
+		RiftUpdateQueue.getInstance().recolor(this.location);
 		for (Location location : DimensionalRegistry.getRiftRegistry().getSources(this.location)) {
 			DimensionalRegistry.getRiftRegistry().getRift(location).targetChanged(this);
 		}
@@ -115,4 +113,20 @@ public class Rift extends RegistryVertex {
 	public void setProperties(LinkProperties properties) {
 		this.properties = properties;
 	}
+
+	public VirtualLocation getVirtualLocation() {
+		return virtualLocation;
+	}
+
+	public void setVirtualLocation(VirtualLocation virtualLocation) {
+		this.virtualLocation = virtualLocation;
+	}
+
+	public boolean isRegistered() {
+		return registered;
+	}
+
+	void setRegistered(boolean registered) {
+		this.registered = registered;
+	}
 }
@@ -0,0 +1,253 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+/**
+ * Directed graph without parallel edges, compared by identity. Vertices get dense int ids which are reused
+ * after they are removed, and the targets and sources of every vertex are kept in int arrays indexed by those ids,
+ * so following, adding or removing a link allocates nothing once the arrays grew large enough.
+ */
+public class RiftGraph<V> {
+	private static final int[] EMPTY = new int[0];
+
+	private final Reference2IntOpenHashMap<V> ids = new Reference2IntOpenHashMap<>();
+	private final IntArrayList freeIds = new IntArrayList();
+	private Object[] vertices = new Object[16];
+	private int[][] targets = new int[16][];
+	private int[] targetCounts = new int[16];
+	private int[][] sources = new int[16][];
+	private int[] sourceCounts = new int[16];
+	private int idCount = 0;
+	private int edgeCount = 0;
+
+	public RiftGraph() {
+		this.ids.defaultReturnValue(-1);
+	}
+
+	public int vertexCount() {
+		return this.ids.size();
+	}
+
+	public int edgeCount() {
+		return this.edgeCount;
+	}
+
+	public boolean containsVertex(V vertex) {
+		return this.ids.containsKey(vertex);
+	}
+
+	/**
+	 * @return the id of the vertex, or -1 if it is not part of the graph
+	 */
+	public int getId(V vertex) {
+		return this.ids.getInt(vertex);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getVertex(int id) {
+		return (V) this.vertices[id];
+	}
+
+	/**
+	 * @return whether the vertex was not part of the graph yet
+	 */
+	public boolean addVertex(V vertex) {
+		Objects.requireNonNull(vertex);
+		if (this.ids.containsKey(vertex)) return false;
+
+		int id;
+		if (this.freeIds.isEmpty()) {
+			id = this.idCount++;
+			if (id == this.vertices.length) this.grow();
+		} else {
+			id = this.freeIds.popInt();
+		}
+		this.vertices[id] = vertex;
+		this.targets[id] = EMPTY;
+		this.sources[id] = EMPTY;
+		this.ids.put(vertex, id);
+		return true;
+	}
+
+	/**
+	 * Puts another vertex in the place of one in the graph, keeping its id and links.
+	 */
+	public void replaceVertex(V vertex, V replacement) {
+		int id = this.requireId(vertex);
+		if (this.ids.containsKey(replacement)) throw new IllegalArgumentException("The replacement is already part of the graph");
+		this.ids.removeInt(vertex);
+		this.ids.put(replacement, id);
+		this.vertices[id] = replacement;
+	}
+
+	/**
+	 * Removes a vertex together with all of its links.
+	 *
+	 * @return whether the vertex was part of the graph
+	 */
+	public boolean removeVertex(V vertex) {
+		int id = this.ids.removeInt(vertex);
+		if (id < 0) return false;
+
+		for (int i = 0; i < this.targetCounts[id]; i++) {
+			int target = this.targets[id][i];
+			if (target != id) this.sourceCounts[target] = remove(this.sources[target], this.sourceCounts[target], id);
+		}
+		this.edgeCount -= this.targetCounts[id];
+		for (int i = 0; i < this.sourceCounts[id]; i++) {
+			int source = this.sources[id][i];
+			if (source != id) {
+				this.targetCounts[source] = remove(this.targets[source], this.targetCounts[source], id);
+				this.edgeCount--;
+			}
+		}
+
+		this.vertices[id] = null;
+		this.targets[id] = null;
+		this.sources[id] = null;
+		this.targetCounts[id] = 0;
+		this.sourceCounts[id] = 0;
+		this.freeIds.add(id);
+		return true;
+	}
+
+	public boolean containsEdge(V from, V to) {
+		int fromId = this.ids.getInt(from);
+		int toId = this.ids.getInt(to);
+		return fromId >= 0 && toId >= 0 && indexOf(this.targets[fromId], this.targetCounts[fromId], toId) >= 0;
+	}
+
+	/**
+	 * @return whether the link did not exist yet
+	 * @throws IllegalArgumentException if either vertex is not part of the graph
+	 */
+	public boolean addEdge(V from, V to) {
+		int fromId = this.requireId(from);
+		int toId = this.requireId(to);
+		if (indexOf(this.targets[fromId], this.targetCounts[fromId], toId) >= 0) return false;
+
+		this.targets[fromId] = append(this.targets[fromId], this.targetCounts[fromId]++, toId);
+		this.sources[toId] = append(this.sources[toId], this.sourceCounts[toId]++, fromId);
+		this.edgeCount++;
+		return true;
+	}
+
+	/**
+	 * @return whether the link existed
+	 */
+	public boolean removeEdge(V from, V to) {
+		int fromId = this.ids.getInt(from);
+		int toId = this.ids.getInt(to);
+		if (fromId < 0 || toId < 0 || indexOf(this.targets[fromId], this.targetCounts[fromId], toId) < 0) return false;
+
+		this.targetCounts[fromId] = remove(this.targets[fromId], this.targetCounts[fromId], toId);
+		this.sourceCounts[toId] = remove(this.sources[toId], this.sourceCounts[toId], fromId);
+		this.edgeCount--;
+		return true;
+	}
+
+	public int outDegree(V vertex) {
+		return this.targetCounts[this.requireId(vertex)];
+	}
+
+	public int inDegree(V vertex) {
+		return this.sourceCounts[this.requireId(vertex)];
+	}
+
+	/**
+	 * @param index between 0 and {@link #outDegree(Object)}, the order changes whenever a link is removed
+	 */
+	@SuppressWarnings("unchecked")
+	public V getTarget(V vertex, int index) {
+		int id = this.requireId(vertex);
+		Objects.checkIndex(index, this.targetCounts[id]);
+		return (V) this.vertices[this.targets[id][index]];
+	}
+
+	/**
+	 * @param index between 0 and {@link #inDegree(Object)}, the order changes whenever a link is removed
+	 */
+	@SuppressWarnings("unchecked")
+	public V getSource(V vertex, int index) {
+		int id = this.requireId(vertex);
+		Objects.checkIndex(index, this.sourceCounts[id]);
+		return (V) this.vertices[this.sources[id][index]];
+	}
+
+	/**
+	 * @return the first target of a vertex with at most one link, or null if it has none or is not part of the graph
+	 */
+	public V followPointer(V pointer) {
+		int id = pointer != null ? this.ids.getInt(pointer) : -1;
+		return id >= 0 && this.targetCounts[id] > 0 ? this.getVertex(this.targets[id][0]) : null;
+	}
+
+	/**
+	 * @return a copy of the targets of a vertex
+	 */
+	public List<V> getTargets(V vertex) {
+		int id = this.requireId(vertex);
+		return this.copy(this.targets[id], this.targetCounts[id]);
+	}
+
+	/**
+	 * @return a copy of the sources of a vertex
+	 */
+	public List<V> getSources(V vertex) {
+		int id = this.requireId(vertex);
+		return this.copy(this.sources[id], this.sourceCounts[id]);
+	}
+
+	public Stream<V> vertices() {
+		return IntStream.range(0, this.idCount).filter(id -> this.vertices[id] != null).mapToObj(this::getVertex);
+	}
+
+	private List<V> copy(int[] ids, int count) {
+		List<V> copy = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) copy.add(this.getVertex(ids[i]));
+		return copy;
+	}
+
+	private int requireId(V vertex) {
+		int id = this.ids.getInt(vertex);
+		if (id < 0) throw new IllegalArgumentException("The vertex " + vertex + " is not part of the graph");
+		return id;
+	}
+
+	private void grow() {
+		int capacity = this.vertices.length * 2;
+		this.vertices = Arrays.copyOf(this.vertices, capacity);
+		this.targets = Arrays.copyOf(this.targets, capacity);
+		this.targetCounts = Arrays.copyOf(this.targetCounts, capacity);
+		this.sources = Arrays.copyOf(this.sources, capacity);
+		this.sourceCounts = Arrays.copyOf(this.sourceCounts, capacity);
+	}
+
+	private static int indexOf(int[] ids, int count, int id) {
+		for (int i = 0; i < count; i++) {
+			if (ids[i] == id) return i;
+		}
+		return -1;
+	}
+
+	private static int[] append(int[] ids, int count, int id) {
+		if (count == ids.length) ids = Arrays.copyOf(ids, Math.max(2, count * 2));
+		ids[count] = id;
+		return ids;
+	}
+
+	// Swaps the last id into the gap, links have no order
+	private static int remove(int[] ids, int count, int id) {
+		int index = indexOf(ids, count, id);
+		ids[index] = ids[count - 1];
+		return count - 1;
+	}
+}
@@ -0,0 +1,196 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import io.netty.buffer.Unpooled;
+
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.util.Identifier;
+import net.minecraft.world.World;
+
+/**
+ * Binary format for a set of rift graph vertices and their outgoing links, used for the rift files.
+ * <pre>
+ * varint version
+ * varint worldCount, string[worldCount]        world keys, referenced by index
+ * varint vertexCount, vertex[vertexCount]       referenced by ordinal
+ *   rift:     byte flags, long uuidMost, long uuidLeast, varint world, long pos, [properties]
+ *   entrance: byte ENTRANCE, long uuidMost, long uuidLeast, varint world, varint pocketId
+ * varint linkCount, (varint fromDelta, varint to)[linkCount]
+ * varint externalLinkCount, (varint fromDelta, long uuidMost, long uuidLeast)[externalLinkCount]
+ * </pre>
+ * Links must be added in ascending order of their source, only links to vertices outside the set repeat a UUID.
+ */
+public final class RiftGraphCodec {
+	public static final int VERSION = 1;
+
+	private static final int ENTRANCE = 1;
+	private static final int DETACHED = 1 << 1;
+	private static final int HAS_PROPERTIES = 1 << 2;
+	private static final int ONE_WAY = 1 << 3;
+	private static final int HAS_GROUPS = 1 << 4;
+
+	private RiftGraphCodec() {
+	}
+
+	public interface Visitor {
+		void rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties);
+
+		void entrance(UUID id, RegistryKey<World> world, int pocketId);
+
+		void link(int from, int to);
+
+		void externalLink(int from, UUID to);
+	}
+
+	public static class Writer {
+		private final Map<RegistryKey<World>, Integer> worlds = new HashMap<>();
+		private final List<RegistryKey<World>> worldTable = new ArrayList<>();
+		private final PacketByteBuf vertices = new PacketByteBuf(Unpooled.buffer());
+		private final PacketByteBuf links = new PacketByteBuf(Unpooled.buffer());
+		private final PacketByteBuf externalLinks = new PacketByteBuf(Unpooled.buffer());
+		private int vertexCount = 0;
+		private int linkCount = 0;
+		private int lastLinkSource = 0;
+		private int externalLinkCount = 0;
+		private int lastExternalLinkSource = 0;
+
+		/**
+		 * @return the ordinal of the rift
+		 */
+		public int rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+			int flags = 0;
+			if (detached) flags |= DETACHED;
+			if (properties != null) {
+				flags |= HAS_PROPERTIES;
+				if (properties.isOneWay()) flags |= ONE_WAY;
+				if (!properties.getGroups().isEmpty()) flags |= HAS_GROUPS;
+			}
+
+			this.vertices.writeByte(flags);
+			this.vertices.writeUuid(id);
+			this.vertices.writeVarInt(this.getWorldIndex(world));
+			this.vertices.writeLong(pos);
+			if (properties != null) {
+				this.vertices.writeFloat(properties.floatingWeight);
+				this.vertices.writeFloat(properties.getEntranceWeight());
+				this.vertices.writeVarInt(properties.getLinksRemaining());
+				if (!properties.getGroups().isEmpty()) {
+					this.vertices.writeVarInt(properties.getGroups().size());
+					properties.getGroups().forEach(this.vertices::writeVarInt);
+				}
+			}
+			return this.vertexCount++;
+		}
+
+		/**
+		 * @return the ordinal of the entrance
+		 */
+		public int entrance(UUID id, RegistryKey<World> world, int pocketId) {
+			this.vertices.writeByte(ENTRANCE);
+			this.vertices.writeUuid(id);
+			this.vertices.writeVarInt(this.getWorldIndex(world));
+			this.vertices.writeVarInt(pocketId);
+			return this.vertexCount++;
+		}
+
+		public void link(int from, int to) {
+			if (from < this.lastLinkSource) throw new IllegalArgumentException("Links must be added in order of their source");
+			this.links.writeVarInt(from - this.lastLinkSource);
+			this.links.writeVarInt(to);
+			this.lastLinkSource = from;
+			this.linkCount++;
+		}
+
+		public void externalLink(int from, UUID to) {
+			if (from < this.lastExternalLinkSource) throw new IllegalArgumentException("Links must be added in order of their source");
+			this.externalLinks.writeVarInt(from - this.lastExternalLinkSource);
+			this.externalLinks.writeUuid(to);
+			this.lastExternalLinkSource = from;
+			this.externalLinkCount++;
+		}
+
+		private int getWorldIndex(RegistryKey<World> world) {
+			return this.worlds.computeIfAbsent(world, key -> {
+				this.worldTable.add(key);
+				return this.worldTable.size() - 1;
+			});
+		}
+
+		public byte[] toByteArray() {
+			PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer(this.vertices.readableBytes() + this.links.readableBytes() + this.externalLinks.readableBytes() + 64));
+			buf.writeVarInt(VERSION);
+			buf.writeVarInt(this.worldTable.size());
+			this.worldTable.forEach(world -> buf.writeString(world.getValue().toString()));
+			buf.writeVarInt(this.vertexCount);
+			buf.writeBytes(this.vertices, this.vertices.readerIndex(), this.vertices.readableBytes());
+			buf.writeVarInt(this.linkCount);
+			buf.writeBytes(this.links, this.links.readerIndex(), this.links.readableBytes());
+			buf.writeVarInt(this.externalLinkCount);
+			buf.writeBytes(this.externalLinks, this.externalLinks.readerIndex(), this.externalLinks.readableBytes());
+
+			byte[] bytes = new byte[buf.readableBytes()];
+			buf.readBytes(bytes);
+			return bytes;
+		}
+	}
+
+	public static void read(byte[] bytes, Visitor visitor) {
+		PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(bytes));
+		int version = buf.readVarInt();
+		if (version != VERSION) throw new IllegalStateException("Unknown rift graph version " + version + ", the rift file is corrupt or from a newer version");
+
+		List<RegistryKey<World>> worlds = new ArrayList<>();
+		for (int i = buf.readVarInt(); i > 0; i--) {
+			worlds.add(RegistryKey.of(RegistryKeys.WORLD, new Identifier(buf.readString())));
+		}
+
+		for (int i = buf.readVarInt(); i > 0; i--) {
+			int flags = buf.readByte();
+			UUID id = buf.readUuid();
+			RegistryKey<World> world = worlds.get(buf.readVarInt());
+			if ((flags & ENTRANCE) != 0) {
+				visitor.entrance(id, world, buf.readVarInt());
+				continue;
+			}
+
+			long pos = buf.readLong();
+			LinkProperties properties = null;
+			if ((flags & HAS_PROPERTIES) != 0) {
+				LinkProperties.LinkPropertiesBuilder builder = LinkProperties.builder()
+						.floatingWeight(buf.readFloat())
+						.entranceWeight(buf.readFloat())
+						.linksRemaining(buf.readVarInt())
+						.oneWay((flags & ONE_WAY) != 0);
+				if ((flags & HAS_GROUPS) != 0) {
+					int groupCount = buf.readVarInt();
+					Set<Integer> groups = new HashSet<>(groupCount);
+					for (int j = 0; j < groupCount; j++) groups.add(buf.readVarInt());
+					builder.groups(groups);
+				}
+				properties = builder.build();
+			}
+			visitor.rift(id, world, pos, (flags & DETACHED) != 0, properties);
+		}
+
+		int from = 0;
+		for (int i = buf.readVarInt(); i > 0; i--) {
+			from += buf.readVarInt();
+			visitor.link(from, buf.readVarInt());
+		}
+
+		from = 0;
+		for (int i = buf.readVarInt(); i > 0; i--) {
+			from += buf.readVarInt();
+			visitor.externalLink(from, buf.readUuid());
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.world.World;
+
+import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.world.pocket.PocketDirectory;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Append-only log of {@link RiftRegistry} mutations since the rift files were last written.
+ * Every record is framed as {@code [length][crc32][op][payload]}, so a record torn by a crash is detected and dropped.
+ * Records describe the resulting state rather than a delta, which makes replaying them on top of
+ * rift files that already contain some of them harmless.
+ * <p>
+ * When the rift files are rewritten the journal is rotated into {@code rifts.journal.<generation>}, which is kept
+ * until the rewritten files are on disk, so the records keep being appended while the files are being written.
+ * <p>
+ * The file is only touched on the writer thread of the registry storage. Appends and rotations are queued there in
+ * the order they are requested, so they stay ordered with the rift files a compaction writes after rotating.
+ */
+public class RiftJournal {
+	private static final Logger LOGGER = LogManager.getLogger();
+
+	private static final byte ADD_RIFT = 0;
+	private static final byte REMOVE_RIFT = 1;
+	private static final byte ADD_LINK = 2;
+	private static final byte REMOVE_LINK = 3;
+	private static final byte SET_PROPERTIES = 4;
+	private static final byte SET_DETACHED = 5;
+	private static final byte ADD_POCKET_ENTRANCE = 6;
+	private static final byte SET_PLAYER_RIFT_POINTER = 7;
+	private static final byte REMOVE_POCKET_ENTRANCE = 8;
+
+	public static final byte LAST_PRIVATE_POCKET_ENTRANCE = 0;
+	public static final byte LAST_PRIVATE_POCKET_EXIT = 1;
+	public static final byte OVERWORLD_RIFT = 2;
+
+	private final Path file;
+	private final Executor writer;
+	private final PacketByteBuf pending = new PacketByteBuf(Unpooled.buffer());
+	private final PacketByteBuf record = new PacketByteBuf(Unpooled.buffer());
+	private final CRC32 crc = new CRC32();
+	private long nextGeneration;
+	// Bytes in the journal file once the queued appends are done, so its size is known without touching it
+	private long size;
+	// Set by the writer when records could not be appended, cleared once they were rotated away
+	private volatile boolean failed = false;
+
+	public RiftJournal(Path file, Executor writer) {
+		this.file = file;
+		this.writer = writer;
+		try {
+			this.nextGeneration = this.listRotated().stream().mapToLong(RiftJournal::getGeneration).max().orElse(-1) + 1;
+			this.size = Files.exists(file) ? Files.size(file) : 0;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read the rift journals next to " + file, e);
+		}
+	}
+
+	void addRift(Location location, UUID id) {
+		this.begin(ADD_RIFT);
+		writeLocation(this.record, location);
+		this.record.writeUuid(id);
+		this.end();
+	}
+
+	void removeRift(Location location) {
+		this.begin(REMOVE_RIFT);
+		writeLocation(this.record, location);
+		this.end();
+	}
+
+	void addLink(Location from, Location to) {
+		this.begin(ADD_LINK);
+		writeLocation(this.record, from);
+		writeLocation(this.record, to);
+		this.end();
+	}
+
+	void removeLink(Location from, Location to) {
+		this.begin(REMOVE_LINK);
+		writeLocation(this.record, from);
+		writeLocation(this.record, to);
+		this.end();
+	}
+
+	void setProperties(Location location, LinkProperties properties) {
+		this.begin(SET_PROPERTIES);
+		writeLocation(this.record, location);
+		this.record.writeNbt(properties != null ? LinkProperties.toNbt(properties) : null);
+		this.end();
+	}
+
+	void setDetached(Location location, boolean detached) {
+		this.begin(SET_DETACHED);
+		writeLocation(this.record, location);
+		this.record.writeBoolean(detached);
+		this.end();
+	}
+
+	void addPocketEntrance(Pocket pocket, UUID pointerId, Location location) {
+		this.begin(ADD_POCKET_ENTRANCE);
+		this.record.writeRegistryKey(pocket.getWorld());
+		this.record.writeVarInt(pocket.getId());
+		this.record.writeUuid(pointerId);
+		writeLocation(this.record, location);
+		this.end();
+	}
+
+	void removePocketEntrance(RegistryKey<World> world, int pocketId) {
+		this.begin(REMOVE_POCKET_ENTRANCE);
+		this.record.writeRegistryKey(world);
+		this.record.writeVarInt(pocketId);
+		this.end();
+	}
+
+	void setPlayerRiftPointer(byte kind, UUID player, Location rift) {
+		this.begin(SET_PLAYER_RIFT_POINTER);
+		this.record.writeByte(kind);
+		this.record.writeUuid(player);
+		this.record.writeBoolean(rift != null);
+		if (rift != null) writeLocation(this.record, rift);
+		this.end();
+	}
+
+	private void begin(byte op) {
+		this.record.clear();
+		this.record.writeByte(op);
+	}
+
+	private void end() {
+		this.crc.reset();
+		this.crc.update(this.record.nioBuffer());
+		this.pending.writeInt(this.record.readableBytes());
+		this.pending.writeInt((int) this.crc.getValue());
+		this.pending.writeBytes(this.record);
+	}
+
+	public boolean hasPending() {
+		return this.pending.isReadable();
+	}
+
+	/**
+	 * Hands the records of the last tick to the writer, which appends them to the journal file.
+	 */
+	public void flush() {
+		if (!this.hasPending()) return;
+		byte[] bytes = new byte[this.pending.readableBytes()];
+		this.pending.readBytes(bytes);
+		this.pending.clear();
+		this.size += bytes.length;
+		this.writer.execute(() -> {
+			try {
+				Files.createDirectories(this.file.getParent());
+				Files.write(this.file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			} catch (IOException e) {
+				LOGGER.error("Could not append to the rift journal", e);
+				this.failed = true;
+			}
+		});
+	}
+
+	/**
+	 * @return whether records were lost since the last rotation, so the rift files have to be rewritten
+	 */
+	public boolean hasFailed() {
+		return this.failed;
+	}
+
+	public long size() {
+		return this.size + this.pending.readableBytes();
+	}
+
+	/**
+	 * Moves the flushed records aside, to be called when the rift files are about to be rewritten. Records that
+	 * could not be moved stay in the journal file, replaying them on top of the rewritten files is harmless.
+	 *
+	 * @return the generation to pass to {@link #deleteRotated(long)} once the rift files are written
+	 */
+	public long rotate() {
+		long generation = this.nextGeneration++;
+		this.size = 0;
+		this.writer.execute(() -> {
+			this.failed = false;
+			try {
+				if (Files.exists(this.file)) {
+					Files.move(this.file, this.getRotatedFile(generation), StandardCopyOption.ATOMIC_MOVE);
+				}
+			} catch (IOException e) {
+				LOGGER.error("Could not rotate the rift journal", e);
+			}
+		});
+		return generation;
+	}
+
+	/**
+	 * Drops the records rotated up to the given generation, to be called on the writer once the rift files contain
+	 * all of them.
+	 */
+	public void deleteRotated(long generation) throws IOException {
+		for (Path rotated : this.listRotated()) {
+			if (getGeneration(rotated) <= generation) Files.deleteIfExists(rotated);
+		}
+	}
+
+	private Path getRotatedFile(long generation) {
+		return this.file.resolveSibling(this.file.getFileName() + "." + generation);
+	}
+
+	/**
+	 * @return the rotated journals, oldest first
+	 */
+	private List<Path> listRotated() throws IOException {
+		List<Path> rotated = new ArrayList<>();
+		if (!Files.isDirectory(this.file.getParent())) return rotated;
+
+		String prefix = this.file.getFileName() + ".";
+		try (Stream<Path> files = Files.list(this.file.getParent())) {
+			files.filter(file -> {
+				String name = file.getFileName().toString();
+				return name.startsWith(prefix) && name.length() > prefix.length() && name.substring(prefix.length()).chars().allMatch(Character::isDigit);
+			}).forEach(rotated::add);
+		}
+		rotated.sort((a, b) -> Long.compare(getGeneration(a), getGeneration(b)));
+		return rotated;
+	}
+
+	private static long getGeneration(Path rotated) {
+		String name = rotated.getFileName().toString();
+		return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+	}
+
+	/**
+	 * Applies the rotated journals and the journal file on top of a registry that was just read from the rift files.
+	 *
+	 * @return the amount of records that were replayed
+	 */
+	public int replay(RiftRegistry registry, Map<RegistryKey<World>, PocketDirectory> pocketRegistry) throws IOException {
+		int count = 0;
+		for (Path rotated : this.listRotated()) {
+			count += this.replay(rotated, registry, pocketRegistry);
+		}
+		return count + this.replay(this.file, registry, pocketRegistry);
+	}
+
+	private int replay(Path file, RiftRegistry registry, Map<RegistryKey<World>, PocketDirectory> pocketRegistry) throws IOException {
+		if (!Files.exists(file)) return 0;
+
+		ByteBuf buf = Unpooled.wrappedBuffer(Files.readAllBytes(file));
+		int count = 0;
+		while (buf.isReadable()) {
+			if (buf.readableBytes() < 8) break;
+			int length = buf.readInt();
+			int checksum = buf.readInt();
+			if (length <= 0 || buf.readableBytes() < length) break;
+
+			PacketByteBuf record = new PacketByteBuf(buf.readSlice(length));
+			this.crc.reset();
+			this.crc.update(record.nioBuffer());
+			if ((int) this.crc.getValue() != checksum) break;
+
+			apply(record, registry, pocketRegistry);
+			count++;
+		}
+
+		if (buf.isReadable()) {
+			LOGGER.warn("Ignoring " + buf.readableBytes() + " bytes of incomplete records at the end of " + file);
+		}
+		return count;
+	}
+
+	private static void apply(PacketByteBuf record, RiftRegistry registry, Map<RegistryKey<World>, PocketDirectory> pocketRegistry) {
+		switch (record.readByte()) {
+			case ADD_RIFT -> {
+				Location location = readLocation(record);
+				UUID id = record.readUuid();
+				if (!registry.isRiftAt(location)) registry.putRift(location, id);
+			}
+			case REMOVE_RIFT -> {
+				Rift rift = registry.getRiftAt(readLocation(record));
+				if (rift != null) registry.dropRift(rift);
+			}
+			case ADD_LINK -> registry.putLink(readLocation(record), readLocation(record));
+			case REMOVE_LINK -> {
+				Rift from = registry.getRiftAt(readLocation(record));
+				Rift to = registry.getRiftAt(readLocation(record));
+				if (from != null && to != null) registry.dropLink(from, to);
+			}
+			case SET_PROPERTIES -> {
+				Rift rift = registry.getRiftAt(readLocation(record));
+				NbtCompound properties = record.readNbt();
+				if (rift != null) registry.putProperties(rift, properties != null ? LinkProperties.fromNbt(properties) : null);
+			}
+			case SET_DETACHED -> {
+				Rift rift = registry.getRiftAt(readLocation(record));
+				boolean detached = record.readBoolean();
+				if (rift != null) registry.putDetached(rift, detached);
+			}
+			case ADD_POCKET_ENTRANCE -> {
+				RegistryKey<World> world = record.readRegistryKey(RegistryKeys.WORLD);
+				int pocketId = record.readVarInt();
+				UUID pointerId = record.readUuid();
+				Rift rift = registry.getRiftAt(readLocation(record));
+				PocketDirectory directory = pocketRegistry.get(world);
+				Pocket pocket = directory != null ? directory.getPocket(pocketId) : null;
+				if (pocket != null && rift != null) registry.putPocketEntrance(pocket, rift, pointerId);
+			}
+			case SET_PLAYER_RIFT_POINTER -> {
+				byte kind = record.readByte();
+				UUID player = record.readUuid();
+				Location rift = record.readBoolean() ? readLocation(record) : null;
+				if (rift == null || registry.getRiftAt(rift) != null) registry.putPlayerRiftPointer(player, rift, kind);
+			}
+			case REMOVE_POCKET_ENTRANCE -> registry.dropPocketEntrance(record.readRegistryKey(RegistryKeys.WORLD), record.readVarInt());
+			default -> throw new IllegalStateException("Unknown rift journal record");
+		}
+	}
+
+	private static void writeLocation(PacketByteBuf buf, Location location) {
+		buf.writeRegistryKey(location.world);
+		buf.writeBlockPos(location.pos);
+	}
+
+	private static Location readLocation(PacketByteBuf buf) {
+		return new Location(buf.readRegistryKey(RegistryKeys.WORLD), buf.readBlockPos());
+	}
+}
@@ -1,41 +1,52 @@
 package org.dimdev.dimdoors.rift.registry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
 
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.util.Pair;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 import net.fabricmc.fabric.api.util.NbtType;
 
-import org.dimdev.dimdoors.api.util.GraphUtils;
 import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.world.ModDimensions;
 import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.PocketDirectory;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
 public class RiftRegistry {
 	private static final Logger LOGGER = LogManager.getLogger();
 	private static final String DATA_NAME = "rifts";
 
-	protected DefaultDirectedGraph<RegistryVertex, DefaultEdge> graph = new DefaultDirectedGraph<>(DefaultEdge.class);
-	protected Map<Location, Rift> locationMap = new HashMap<>();
+	protected RiftGraph<RegistryVertex> graph = new RiftGraph<>();
+	protected Map<RegistryKey<World>, Long2ObjectMap<Rift>> locationMap = new Reference2ObjectOpenHashMap<>(); // World -> packed BlockPos -> rift
 	protected Map<Pocket, PocketEntrancePointer> pocketEntranceMap = new HashMap<>();
 	protected Map<UUID, RegistryVertex> uuidMap = new HashMap<>();
 
@@ -45,11 +56,94 @@ public class RiftRegistry {
 	//I know this is sorta hacky, but overworldRifts can't be set for some reason it doesn't think that the rift location exists.
 	//TODO: Fix this shit so that u can use overworldRifts instead of overworldLocations. NVM this is better cause we can teleport to locations that aren't rifts.
 	protected Map<UUID, Location> overworldLocations = new HashMap<>();
+
+	// Pocket directories the shards of rifts in pocket worlds are derived from
+	protected final Map<RegistryKey<World>, PocketDirectory> pocketRegistry;
+	// Shards which changed since the last save. Links are stored in the shard of their source vertex.
+	protected Set<RiftShard> dirtyShards = new HashSet<>();
+	// Rifts and entrances saved in each shard, so capturing the dirty shards does not visit the others
+	protected Map<RiftShard, Set<RegistryVertex>> shardVertices = new HashMap<>();
+	protected boolean playersDirty = false;
+	protected RiftJournal journal;
+	// Candidates of random links, built once the server started since virtual locations can only be resolved then
+	protected RandomTargetIndex<Rift> randomTargetIndex;
+	// Rifts in pocket worlds with a resolved virtual location, by the pocket id of their position
+	protected Map<RegistryKey<World>, Int2ObjectSortedMap<Set<Rift>>> resolvedRifts = new Reference2ObjectOpenHashMap<>();
+	private int version = 0;
+
+	public RiftRegistry(Map<RegistryKey<World>, PocketDirectory> pocketRegistry) {
+		this.pocketRegistry = pocketRegistry;
+	}
+
 	public static RiftRegistry fromNbt(Map<RegistryKey<World>, PocketDirectory> pocketRegistry, NbtCompound nbt) {
-		// Read rifts in this dimension
+		RiftRegistry riftRegistry = new RiftRegistry(pocketRegistry);
+		riftRegistry.readVertices(pocketRegistry, nbt);
+		riftRegistry.readLinks(nbt);
+		riftRegistry.readPlayers(nbt);
+		return riftRegistry;
+	}
 
-		RiftRegistry riftRegistry = new RiftRegistry();
+	/**
+	 * Reads a registry that was saved as rift shards, see {@link RiftShard}, plus a shard for the player pointers.
+	 * All vertices are read before any links, since links may cross shards.
+	 */
+	public static RiftRegistry fromShards(Map<RegistryKey<World>, PocketDirectory> pocketRegistry, Collection<NbtCompound> worldShards, NbtCompound players) {
+		RiftRegistry riftRegistry = new RiftRegistry(pocketRegistry);
+		List<Pair<RegistryVertex, UUID>> externalLinks = new ArrayList<>();
+		for (NbtCompound shard : worldShards) {
+			if (shard.contains("graph", NbtType.BYTE_ARRAY)) {
+				riftRegistry.readGraph(pocketRegistry, shard.getByteArray("graph"), externalLinks);
+			} else {
+				riftRegistry.readVertices(pocketRegistry, shard);
+			}
+		}
+		worldShards.stream().filter(shard -> !shard.contains("graph", NbtType.BYTE_ARRAY)).forEach(riftRegistry::readLinks);
+		for (Pair<RegistryVertex, UUID> link : externalLinks) {
+			RegistryVertex to = riftRegistry.uuidMap.get(link.getRight());
+			if (to != null) riftRegistry.graph.addEdge(link.getLeft(), to);
+		}
+		riftRegistry.readPlayers(players);
+		return riftRegistry;
+	}
 
+	private void readGraph(Map<RegistryKey<World>, PocketDirectory> pocketRegistry, byte[] graph, List<Pair<RegistryVertex, UUID>> externalLinks) {
+		List<RegistryVertex> vertices = new ArrayList<>();
+		RiftGraphCodec.read(graph, new RiftGraphCodec.Visitor() {
+			@Override
+			public void rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+				Rift rift = new Rift(id, new Location(world, BlockPos.fromLong(pos)), detached, properties);
+				vertices.add(rift);
+				RiftRegistry.this.graph.addVertex(rift);
+				RiftRegistry.this.uuidMap.put(id, rift);
+				RiftRegistry.this.putRiftAt(rift.getLocation(), rift);
+				RiftRegistry.this.trackVertex(rift);
+			}
+
+			@Override
+			public void entrance(UUID id, RegistryKey<World> world, int pocketId) {
+				PocketEntrancePointer pointer = new PocketEntrancePointer(world, pocketId);
+				pointer.id = id;
+				vertices.add(pointer);
+				RiftRegistry.this.graph.addVertex(pointer);
+				RiftRegistry.this.uuidMap.put(id, pointer);
+				RiftRegistry.this.trackVertex(pointer);
+				RiftRegistry.this.pocketEntranceMap.put(pocketRegistry.get(world).getPocket(pocketId), pointer);
+			}
+
+			@Override
+			public void link(int from, int to) {
+				RiftRegistry.this.graph.addEdge(vertices.get(from), vertices.get(to));
+			}
+
+			@Override
+			public void externalLink(int from, UUID to) {
+				externalLinks.add(new Pair<>(vertices.get(from), to));
+			}
+		});
+	}
+
+	private void readVertices(Map<RegistryKey<World>, PocketDirectory> pocketRegistry, NbtCompound nbt) {
+		// Read rifts in this dimension
 		NbtList riftsNBT = nbt.getList("rifts", NbtType.COMPOUND);
 		String riftTypeId = RegistryVertex.registry.getId(RegistryVertex.RegistryVertexType.RIFT).toString();
 		CompletableFuture<List<Rift>> futureRifts = CompletableFuture.supplyAsync(() -> riftsNBT.parallelStream().unordered().map(NbtCompound.class::cast).filter(nbtCompound -> nbtCompound.getString("type").equals(riftTypeId)).map(Rift::fromNbt).collect(Collectors.toList()));
@@ -58,39 +152,44 @@ public class RiftRegistry {
 		CompletableFuture<List<PocketEntrancePointer>> futurePockets = CompletableFuture.supplyAsync(() -> pocketsNBT.stream().map(NbtCompound.class::cast).map(PocketEntrancePointer::fromNbt).collect(Collectors.toList()));
 
 		futureRifts.join().forEach(rift -> {
-			riftRegistry.graph.addVertex(rift);
-			riftRegistry.uuidMap.put(rift.id, rift);
-			riftRegistry.locationMap.put(rift.getLocation(), rift);
+			this.graph.addVertex(rift);
+			this.uuidMap.put(rift.id, rift);
+			this.putRiftAt(rift.getLocation(), rift);
+			this.trackVertex(rift);
 		});
 
 		futurePockets.join().forEach(pocket -> {
-			riftRegistry.graph.addVertex(pocket);
-			riftRegistry.uuidMap.put(pocket.id, pocket);
-			riftRegistry.pocketEntranceMap.put(pocketRegistry.get(pocket.getWorld()).getPocket(pocket.getPocketId()), pocket);
+			this.graph.addVertex(pocket);
+			this.uuidMap.put(pocket.id, pocket);
+			this.trackVertex(pocket);
+			this.pocketEntranceMap.put(pocketRegistry.get(pocket.getWorld()).getPocket(pocket.getPocketId()), pocket);
 		});
+	}
 
+	private void readLinks(NbtCompound nbt) {
 		// Read the connections between links that have a source or destination in this dimension
 		NbtList linksNBT = nbt.getList("links", NbtType.COMPOUND);
 		for (NbtElement linkNBT : linksNBT) {
-			RegistryVertex from = riftRegistry.uuidMap.get(((NbtCompound) linkNBT).getUuid("from"));
-			RegistryVertex to = riftRegistry.uuidMap.get(((NbtCompound) linkNBT).getUuid("to"));
+			RegistryVertex from = this.uuidMap.get(((NbtCompound) linkNBT).getUuid("from"));
+			RegistryVertex to = this.uuidMap.get(((NbtCompound) linkNBT).getUuid("to"));
 			if (from != null && to != null) {
-				riftRegistry.graph.addEdge(from, to);
+				this.graph.addEdge(from, to);
 				// We need a system for detecting links that are incomplete after processing them in the other subregistry too
 			}
 		}
+	}
 
-		riftRegistry.lastPrivatePocketEntrances = riftRegistry.readPlayerRiftPointers(nbt.getList("last_private_pocket_entrances", NbtType.COMPOUND));
-		riftRegistry.lastPrivatePocketExits = riftRegistry.readPlayerRiftPointers(nbt.getList("last_private_pocket_exits", NbtType.COMPOUND));
-		riftRegistry.overworldRifts = riftRegistry.readPlayerRiftPointers(nbt.getList("overworld_rifts", NbtType.COMPOUND));
-		return riftRegistry;
+	private void readPlayers(NbtCompound nbt) {
+		this.lastPrivatePocketEntrances = this.readPlayerRiftPointers(nbt.getList("last_private_pocket_entrances", NbtType.COMPOUND));
+		this.lastPrivatePocketExits = this.readPlayerRiftPointers(nbt.getList("last_private_pocket_exits", NbtType.COMPOUND));
+		this.overworldRifts = this.readPlayerRiftPointers(nbt.getList("overworld_rifts", NbtType.COMPOUND));
 	}
 
 	public NbtCompound toNbt() {
 		NbtCompound nbt = new NbtCompound();
 		// Write rifts in this dimension
 		CompletableFuture<Pair<NbtList, NbtList>> futureRiftsAndPocketsNBT = CompletableFuture.supplyAsync(() -> {
-			Map<Boolean, List<RegistryVertex>> vertices = this.graph.vertexSet().parallelStream().unordered().filter(vertex -> vertex instanceof Rift || vertex instanceof PocketEntrancePointer)
+			Map<Boolean, List<RegistryVertex>> vertices = this.graph.vertices().parallel().unordered().filter(vertex -> vertex instanceof Rift || vertex instanceof PocketEntrancePointer)
 					.collect(Collectors.partitioningBy(Rift.class::isInstance));
 
 			CompletableFuture<List<NbtCompound>> futureRiftsNBT = CompletableFuture.supplyAsync(() -> vertices.get(true).parallelStream().map(RegistryVertex::toNbt).collect(Collectors.toList()));
@@ -109,14 +208,14 @@ public class RiftRegistry {
 		// Write the connections between links that have a source or destination in this dimension
 		CompletableFuture<NbtList> futureLinksNBT = CompletableFuture.supplyAsync(() -> {
 			NbtList linksNBT = new NbtList();
-			for (DefaultEdge edge : this.graph.edgeSet()) {
-				RegistryVertex from = this.graph.getEdgeSource(edge);
-				RegistryVertex to = this.graph.getEdgeTarget(edge);
-				NbtCompound linkNBT = new NbtCompound();
-				linkNBT.putUuid("from", from.id);
-				linkNBT.putUuid("to", to.id);
-				linksNBT.add(linkNBT);
-			}
+			this.graph.vertices().forEach(from -> {
+				for (int i = 0; i < this.graph.outDegree(from); i++) {
+					NbtCompound linkNBT = new NbtCompound();
+					linkNBT.putUuid("from", from.id);
+					linkNBT.putUuid("to", this.graph.getTarget(from, i).id);
+					linksNBT.add(linkNBT);
+				}
+			});
 			return linksNBT;
 		});
 
@@ -135,6 +234,154 @@ public class RiftRegistry {
 		return nbt;
 	}
 
+	/**
+	 * Captures the shards which changed since the last call and clears their dirty flags. The returned suppliers
+	 * only read the captured copy, so the shards can be encoded on another thread while the graph changes.
+	 */
+	public Map<RiftShard, Supplier<NbtCompound>> snapshotDirtyShards() {
+		if (this.dirtyShards.isEmpty()) return Collections.emptyMap();
+
+		Map<RiftShard, List<VertexSnapshot>> vertices = new HashMap<>();
+		for (RiftShard shard : this.dirtyShards) {
+			Set<RegistryVertex> shardVertices = this.shardVertices.getOrDefault(shard, Collections.emptySet());
+			List<VertexSnapshot> snapshots = new ArrayList<>(shardVertices.size());
+			for (RegistryVertex vertex : shardVertices) snapshots.add(this.snapshot(vertex));
+			vertices.put(shard, snapshots);
+		}
+		this.dirtyShards.clear();
+
+		Map<RiftShard, Supplier<NbtCompound>> shards = new HashMap<>();
+		vertices.forEach((shard, snapshots) -> shards.put(shard, () -> shardToNbt(snapshots)));
+		return shards;
+	}
+
+	private VertexSnapshot snapshot(RegistryVertex vertex) {
+		// Placeholders are never read back, neither are links to them
+		int outDegree = this.graph.outDegree(vertex);
+		UUID[] targets = new UUID[outDegree];
+		int count = 0;
+		for (int i = 0; i < outDegree; i++) {
+			RegistryVertex target = this.graph.getTarget(vertex, i);
+			if (!(target instanceof RiftPlaceholder)) targets[count++] = target.id;
+		}
+		if (count < outDegree) targets = Arrays.copyOf(targets, count);
+		if (vertex instanceof Rift rift) {
+			return new VertexSnapshot(rift.id, rift.getLocation().getWorldId(), rift.getLocation().pos.asLong(), rift.isDetached(), rift.getProperties(), -1, targets);
+		}
+		PocketEntrancePointer pointer = (PocketEntrancePointer) vertex;
+		return new VertexSnapshot(pointer.id, pointer.getWorld(), 0, false, null, pointer.getPocketId(), targets);
+	}
+
+	private static NbtCompound shardToNbt(List<VertexSnapshot> vertices) {
+		RiftGraphCodec.Writer writer = new RiftGraphCodec.Writer();
+		Map<UUID, Integer> ordinals = new HashMap<>();
+		for (VertexSnapshot vertex : vertices) {
+			if (vertex.isEntrance()) {
+				ordinals.put(vertex.id(), writer.entrance(vertex.id(), vertex.world(), vertex.pocketId()));
+			} else {
+				ordinals.put(vertex.id(), writer.rift(vertex.id(), vertex.world(), vertex.pos(), vertex.detached(), vertex.properties()));
+			}
+		}
+
+		for (int from = 0; from < vertices.size(); from++) {
+			for (UUID target : vertices.get(from).targets()) {
+				Integer to = ordinals.get(target);
+				if (to != null) {
+					writer.link(from, to);
+				} else {
+					writer.externalLink(from, target);
+				}
+			}
+		}
+
+		NbtCompound nbt = new NbtCompound();
+		nbt.putByteArray("graph", writer.toByteArray());
+		return nbt;
+	}
+
+	// Copy of a vertex and its outgoing links, LinkProperties are immutable so they are shared with the live rift
+	private record VertexSnapshot(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties, int pocketId, UUID[] targets) {
+		boolean isEntrance() {
+			return this.pocketId >= 0;
+		}
+	}
+
+	public RiftJournal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * Starts recording every mutation, set once the registry was loaded and the journal replayed.
+	 */
+	public void setJournal(RiftJournal journal) {
+		this.journal = journal;
+	}
+
+	public boolean isPlayersDirty() {
+		return this.playersDirty;
+	}
+
+	public NbtCompound playersToNbt() {
+		this.playersDirty = false;
+
+		NbtCompound nbt = new NbtCompound();
+		nbt.put("last_private_pocket_entrances", this.writePlayerRiftPointers(this.lastPrivatePocketEntrances));
+		nbt.put("last_private_pocket_exits", this.writePlayerRiftPointers(this.lastPrivatePocketExits));
+		nbt.put("overworld_rifts", this.writePlayerRiftPointers(this.overworldRifts));
+		return nbt;
+	}
+
+	public void markDirty(RiftShard shard) {
+		this.dirtyShards.add(shard);
+	}
+
+	/**
+	 * Marks every shard of a world as dirty, used once its rifts were read from a file of an older layout.
+	 */
+	public void markDirty(RegistryKey<World> world) {
+		this.shardVertices.keySet().stream().filter(shard -> shard.world().equals(world)).forEach(this.dirtyShards::add);
+	}
+
+	public void markPlayersDirty() {
+		this.playersDirty = true;
+	}
+
+	/**
+	 * Marks every shard as dirty, used after migrating from the single compound format.
+	 */
+	public void markAllDirty() {
+		this.dirtyShards.addAll(this.shardVertices.keySet());
+		this.playersDirty = true;
+	}
+
+	private void trackVertex(RegistryVertex vertex) {
+		if (vertex instanceof RiftPlaceholder) return;
+		this.shardVertices.computeIfAbsent(this.getShard(vertex), shard -> new ReferenceOpenHashSet<>()).add(vertex);
+	}
+
+	private void untrackVertex(RegistryVertex vertex) {
+		Set<RegistryVertex> vertices = this.shardVertices.get(this.getShard(vertex));
+		if (vertices != null) vertices.remove(vertex);
+	}
+
+	private void markDirty(RegistryVertex vertex) {
+		if (vertex instanceof PlayerRiftPointer) {
+			this.playersDirty = true;
+		} else {
+			this.dirtyShards.add(this.getShard(vertex));
+		}
+	}
+
+	private RiftShard getShard(RegistryVertex vertex) {
+		if (vertex instanceof Rift rift) {
+			RegistryKey<World> world = rift.getLocation().getWorldId();
+			if (!ModDimensions.isPocketDimension(world)) return RiftShard.of(world);
+			int pocketId = this.pocketRegistry.computeIfAbsent(world, PocketDirectory::new).posToID(rift.getLocation().pos);
+			return RiftShard.of(world, PocketDirectory.getShard(pocketId));
+		}
+		return RiftShard.of(vertex.getWorld(), PocketDirectory.getShard(((PocketEntrancePointer) vertex).getPocketId()));
+	}
+
 	// TODO: parallelization
 	private Map<UUID, PlayerRiftPointer> readPlayerRiftPointers(NbtList nbt) {
 		Map<UUID, PlayerRiftPointer> pointerMap = new HashMap<>();
@@ -156,60 +403,104 @@ public class RiftRegistry {
 		for (Map.Entry<UUID, PlayerRiftPointer> entry : playerRiftPointerMap.entrySet()) {
 			NbtCompound entryNBT = new NbtCompound();
 			entryNBT.putUuid("player", entry.getKey());
-			int count = 0;
-			for (DefaultEdge edge : this.graph.outgoingEdgesOf(entry.getValue())) {
-				entryNBT.putUuid("rift", this.graph.getEdgeTarget(edge).id);
-				count++;
-			}
-			if (count != 1) throw new RuntimeException("PlayerRiftPointer points to more than one rift");
+			if (this.graph.outDegree(entry.getValue()) != 1) throw new RuntimeException("PlayerRiftPointer points to more than one rift");
+			entryNBT.putUuid("rift", this.graph.getTarget(entry.getValue(), 0).id);
 			pointers.add(entryNBT);
 		}
 		return pointers;
 	}
 
+	Rift getRiftAt(Location location) {
+		Long2ObjectMap<Rift> rifts = this.locationMap.get(location.getWorldId());
+		return rifts != null ? rifts.get(location.pos.asLong()) : null;
+	}
+
+	private void putRiftAt(Location location, Rift rift) {
+		Rift previous = this.locationMap.computeIfAbsent(location.getWorldId(), world -> new Long2ObjectOpenHashMap<>()).put(location.pos.asLong(), rift);
+		if (previous != null) {
+			previous.setRegistered(false);
+			this.untrackVirtualLocation(previous);
+		}
+		rift.setRegistered(true);
+		this.version++;
+	}
+
+	private void removeRiftAt(Location location) {
+		Long2ObjectMap<Rift> rifts = this.locationMap.get(location.getWorldId());
+		Rift rift = rifts != null ? rifts.remove(location.pos.asLong()) : null;
+		if (rift != null) {
+			rift.setRegistered(false);
+			this.untrackVirtualLocation(rift);
+		}
+		this.version++;
+	}
+
+	/**
+	 * @return a number that changes whenever a rift or placeholder is added or removed
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
 	public boolean isRiftAt(Location location) {
-		Rift possibleRift = this.locationMap.get(location);
+		Rift possibleRift = this.getRiftAt(location);
 		return possibleRift != null && !(possibleRift instanceof RiftPlaceholder);
 	}
 
 	public Rift getRift(Location location) {
-		Rift rift = this.locationMap.get(location);
+		Rift rift = this.getRiftAt(location);
 		if (rift == null) throw new IllegalArgumentException("There is no rift registered at " + location);
 		return rift;
 	}
 
 	private Rift getRiftOrPlaceholder(Location location) {
-		Rift rift = this.locationMap.get(location);
+		Rift rift = this.getRiftAt(location);
 		if (rift == null) {
 			LOGGER.debug("Creating a rift placeholder at " + location);
 			rift = new RiftPlaceholder();
 			rift.setWorld(location.world);
 			rift.setLocation(location);
-			this.locationMap.put(location, rift);
+			this.putRiftAt(location, rift);
 			this.uuidMap.put(rift.id, rift);
 			this.graph.addVertex(rift);
+			this.markDirty(rift);
 		}
 		return rift;
 	}
 
-	public void addRift(Location location) {
+	public Rift addRift(Location location) {
 		LOGGER.debug("Adding rift at " + location);
-		RegistryVertex currentRift = this.locationMap.get(location);
+		Rift rift = this.putRift(location, null);
+		this.resolveVirtualLocation(rift);
+		rift.markDirty();
+		return rift;
+	}
+
+	// The raw mutations below change the graph and record the change, but do not notify anything in the world.
+	// They are shared with journal replay, which runs before any world is loaded.
+	Rift putRift(Location location, UUID id) {
+		RegistryVertex currentRift = this.getRiftAt(location);
 		Rift rift;
 		if (currentRift instanceof RiftPlaceholder) {
 			LOGGER.info("Converting a rift placeholder at " + location + " into a rift");
 			rift = new Rift(location);
-			rift.id = currentRift.id;
-			GraphUtils.replaceVertex(this.graph, currentRift, rift);
+			rift.id = id != null ? id : currentRift.id;
+			this.graph.replaceVertex(currentRift, rift);
+			this.uuidMap.remove(currentRift.id);
+			this.trackVertex(rift);
 		} else if (currentRift == null) {
 			rift = new Rift(location);
+			if (id != null) rift.id = id;
 			this.graph.addVertex(rift);
+			this.trackVertex(rift);
 		} else {
 			throw new IllegalArgumentException("There is already a rift registered at " + location);
 		}
 		this.uuidMap.put(rift.id, rift);
-		this.locationMap.put(location, rift);
-		rift.markDirty();
+		this.putRiftAt(location, rift);
+		this.markDirty(rift);
+		if (this.journal != null) this.journal.addRift(location, rift.id);
+		return rift;
 	}
 
 	public void removeRift(Location location) {
@@ -217,20 +508,31 @@ public class RiftRegistry {
 
 		Rift rift = this.getRift(location);
 
-		Set<DefaultEdge> incomingEdges = this.graph.incomingEdgesOf(rift);
-		Set<DefaultEdge> outgoingEdges = this.graph.outgoingEdgesOf(rift);
+		List<RegistryVertex> sources = this.graph.getSources(rift);
+		List<RegistryVertex> targets = this.graph.getTargets(rift);
 
-		this.graph.removeVertex(rift);
-		this.locationMap.remove(location);
-		this.uuidMap.remove(rift.id);
+		this.dropRift(rift);
 
 		// Notify the adjacent vertices of the change
-		for (DefaultEdge edge : incomingEdges) this.graph.getEdgeSource(edge).targetGone(rift);
-		for (DefaultEdge edge : outgoingEdges) this.graph.getEdgeTarget(edge).sourceGone(rift);
+		for (RegistryVertex source : sources) source.targetGone(rift);
+		for (RegistryVertex target : targets) target.sourceGone(rift);
+	}
+
+	void dropRift(Rift rift) {
+		// Links are stored with their source, so every shard pointing here changes too
+		this.markDirty(rift);
+		for (int i = 0; i < this.graph.inDegree(rift); i++) this.markDirty(this.graph.getSource(rift, i));
+
+		this.graph.removeVertex(rift);
+		this.untrackVertex(rift);
+		this.removeRiftAt(rift.getLocation());
+		this.uuidMap.remove(rift.id);
+		if (this.randomTargetIndex != null) this.randomTargetIndex.remove(rift);
+		if (this.journal != null) this.journal.removeRift(rift.getLocation());
 	}
 
 	private void addEdge(RegistryVertex from, RegistryVertex to) {
-		this.graph.addEdge(from, to);
+		this.putEdge(from, to);
 
 		if (from instanceof Rift) {
 			((Rift) from).markDirty();
@@ -240,8 +542,14 @@ public class RiftRegistry {
 		}
 	}
 
+	private void putEdge(RegistryVertex from, RegistryVertex to) {
+		this.graph.addEdge(from, to);
+		this.markDirty(from);
+	}
+
 	private void removeEdge(RegistryVertex from, RegistryVertex to) {
 		this.graph.removeEdge(from, to);
+		this.markDirty(from);
 	}
 
 	public void addLink(Location locationFrom, Location locationTo) {
@@ -251,6 +559,7 @@ public class RiftRegistry {
 		Rift to = this.getRiftOrPlaceholder(locationTo);
 
 		this.addEdge(from, to);
+		if (this.journal != null) this.journal.addLink(locationFrom, locationTo);
 
 		// Notify the linked vertices of the change
 		if (!(from instanceof RiftPlaceholder) && !(to instanceof RiftPlaceholder)) {
@@ -259,33 +568,157 @@ public class RiftRegistry {
 		}
 	}
 
+	void putLink(Location locationFrom, Location locationTo) {
+		this.putEdge(this.getRiftOrPlaceholder(locationFrom), this.getRiftOrPlaceholder(locationTo));
+		if (this.journal != null) this.journal.addLink(locationFrom, locationTo);
+	}
+
 	public void removeLink(Location locationFrom, Location locationTo) {
 		LOGGER.debug("Removing link " + locationFrom + " -> " + locationTo);
 
 		Rift from = this.getRift(locationFrom);
 		Rift to = this.getRift(locationTo);
 
-		this.removeEdge(from, to);
+		this.dropLink(from, to);
 
 		// Notify the linked vertices of the change
 		from.targetGone(to);
 		to.sourceGone(from);
 	}
 
+	void dropLink(Rift from, Rift to) {
+		this.removeEdge(from, to);
+		if (this.journal != null) this.journal.removeLink(from.getLocation(), to.getLocation());
+	}
+
 	public void setProperties(Location location, LinkProperties properties) {
 		LOGGER.debug("Setting DungeonLinkProperties for rift at " + location + " to " + properties);
 		Rift rift = this.getRift(location);
+		this.putProperties(rift, properties);
+		rift.markDirty();
+	}
+
+	void putProperties(Rift rift, LinkProperties properties) {
 		rift.setProperties(properties);
+		this.markDirty(rift);
+		if (this.randomTargetIndex != null) this.indexRandomTarget(rift);
+		if (this.journal != null) this.journal.setProperties(rift.getLocation(), properties);
+	}
+
+	public void setDetached(Location location, boolean detached) {
+		Rift rift = this.getRift(location);
+		this.putDetached(rift, detached);
 		rift.markDirty();
 	}
 
+	void putDetached(Rift rift, boolean detached) {
+		rift.setDetached(detached);
+		this.markDirty(rift);
+		if (this.randomTargetIndex != null) this.indexRandomTarget(rift);
+		if (this.journal != null) this.journal.setDetached(rift.getLocation(), detached);
+	}
+
+	/**
+	 * Picks a rift for a random link, see {@link RandomTargetIndex#sample}.
+	 */
+	public Rift sampleRandomTarget(RandomTargetIndex.Query query, double newRiftWeight, Random random) {
+		if (this.randomTargetIndex == null) this.buildRandomTargetIndex(); // only if sampled before the server started
+		return this.randomTargetIndex.sample(query, newRiftWeight, random);
+	}
+
+	/**
+	 * Indexes every rift for random links, to be called once the worlds exist, so the first random link does not
+	 * have to visit all of them. Later changes keep the index up to date.
+	 */
+	public void buildRandomTargetIndex() {
+		this.randomTargetIndex = new RandomTargetIndex<>();
+		this.locationMap.values().forEach(rifts -> rifts.values().forEach(this::indexRandomTarget));
+	}
+
+	private void indexRandomTarget(Rift rift) {
+		LinkProperties properties = rift.getProperties();
+		float weight = properties == null ? 0 : rift.isDetached() ? properties.floatingWeight : properties.getEntranceWeight();
+		if (rift instanceof RiftPlaceholder || weight <= 0 || properties.getLinksRemaining() == 0) {
+			this.randomTargetIndex.remove(rift);
+			return;
+		}
+
+		VirtualLocation location = this.resolveVirtualLocation(rift);
+		this.randomTargetIndex.put(rift, properties.getGroups(), location.getX(), location.getZ(), location.getDepth(), weight);
+	}
+
+	/**
+	 * @return the virtual location of the rift at a location, which is only looked up once per rift
+	 */
+	public VirtualLocation getVirtualLocation(Location location) {
+		Rift rift = this.getRiftAt(location);
+		return rift != null ? this.resolveVirtualLocation(rift) : VirtualLocation.fromLocation(location);
+	}
+
+	/**
+	 * Resolves the virtual locations of many locations at once. The result does not refer to any world or pocket,
+	 * so depth based work on it can be moved off the server thread.
+	 */
+	public Map<Location, VirtualLocation> getVirtualLocations(Collection<Location> locations) {
+		Map<Location, VirtualLocation> virtualLocations = new HashMap<>(locations.size());
+		for (Location location : locations) virtualLocations.put(location, this.getVirtualLocation(location));
+		return virtualLocations;
+	}
+
+	/**
+	 * Forgets the virtual locations of the rifts in the area of a pocket, to be called whenever the pocket is
+	 * added or removed. Only the rifts which resolved theirs are looked at.
+	 */
+	public void invalidateVirtualLocations(Pocket pocket) {
+		Int2ObjectSortedMap<Set<Rift>> rifts = this.resolvedRifts.get(pocket.getWorld());
+		if (rifts == null) return;
+
+		Int2ObjectSortedMap<Set<Rift>> inPocket = rifts.subMap(pocket.getId() - pocket.getRange() + 1, pocket.getId() + 1);
+		if (inPocket.isEmpty()) return;
+		List<Rift> invalidated = new ArrayList<>();
+		inPocket.values().forEach(invalidated::addAll);
+		inPocket.clear();
+
+		for (Rift rift : invalidated) {
+			rift.setVirtualLocation(null);
+			if (this.randomTargetIndex != null) this.indexRandomTarget(rift);
+		}
+	}
+
+	private VirtualLocation resolveVirtualLocation(Rift rift) {
+		VirtualLocation location = rift.getVirtualLocation();
+		if (location == null) {
+			location = VirtualLocation.fromLocation(rift.getLocation());
+			rift.setVirtualLocation(location);
+			if (ModDimensions.isPocketDimension(rift.getLocation().world)) {
+				this.resolvedRifts.computeIfAbsent(rift.getLocation().world, world -> new Int2ObjectAVLTreeMap<>())
+						.computeIfAbsent(getPocketId(rift), id -> new ReferenceOpenHashSet<>())
+						.add(rift);
+			}
+		}
+		return location;
+	}
+
+	private void untrackVirtualLocation(Rift rift) {
+		if (rift.getVirtualLocation() == null) return;
+		rift.setVirtualLocation(null); // resolved and tracked again once needed
+		Int2ObjectSortedMap<Set<Rift>> rifts = this.resolvedRifts.get(rift.getLocation().world);
+		if (rifts == null) return;
+		int id = getPocketId(rift);
+		Set<Rift> inPocket = rifts.get(id);
+		if (inPocket != null && inPocket.remove(rift) && inPocket.isEmpty()) rifts.remove(id);
+	}
+
+	private static int getPocketId(Rift rift) {
+		return DimensionalRegistry.getPocketDirectory(rift.getLocation().world).posToID(rift.getLocation().pos);
+	}
+
 	public Set<Location> getPocketEntrances(Pocket pocket) {
 		PocketEntrancePointer pointer = this.pocketEntranceMap.get(pocket);
 		if (pointer == null) {
 			return Collections.emptySet();
 		} else {
-			return this.graph.outgoingEdgesOf(pointer).stream()
-					.map(this.graph::getEdgeTarget)
+			return this.graph.getTargets(pointer).stream()
 					.map(Rift.class::cast)
 					.map(Rift::getLocation)
 					.collect(Collectors.toSet());
@@ -302,38 +735,82 @@ public class RiftRegistry {
 	public void addPocketEntrance(Pocket pocket, Location location) {
 		LOGGER.debug("Adding pocket entrance for pocket " + pocket.getId() + " in dimension " + pocket.getWorld() + " at " + location);
 
-//		PocketEntrancePointer pointer = this.pocketEntranceMap.get(pocket);
-//		if (pointer == null) {
-//			pointer = new PocketEntrancePointer(pocket.world, pocket.id);
-//			pointer.world = pocket.world;
-//			this.graph.addVertex(pointer);
-//			this.pocketEntranceMap.put(pocket, pointer);
-//			this.uuidMap.put(pointer.id, pointer);
-//		}
-		this.addEdge(
-				this.pocketEntranceMap.computeIfAbsent(pocket, p -> {
-					PocketEntrancePointer pointer = new PocketEntrancePointer(pocket.getWorld(), pocket.getId());
-					pointer.setWorld(pocket.getWorld());
-					this.graph.addVertex(pointer);
-					this.uuidMap.put(pointer.id, pointer);
-					return pointer;
-				}),
-				this.getRift(location)
-		);
+		Rift rift = this.getRift(location);
+		this.putPocketEntrance(pocket, rift, null);
+		rift.markDirty();
+	}
+
+	void putPocketEntrance(Pocket pocket, Rift rift, UUID pointerId) {
+		PocketEntrancePointer entrancePointer = this.pocketEntranceMap.computeIfAbsent(pocket, p -> {
+			PocketEntrancePointer pointer = new PocketEntrancePointer(pocket.getWorld(), pocket.getId());
+			if (pointerId != null) pointer.id = pointerId;
+			pointer.setWorld(pocket.getWorld());
+			this.graph.addVertex(pointer);
+			this.uuidMap.put(pointer.id, pointer);
+			this.trackVertex(pointer);
+			return pointer;
+		});
+		this.putEdge(entrancePointer, rift);
+		if (this.journal != null) this.journal.addPocketEntrance(pocket, entrancePointer.id, rift.getLocation());
+	}
+
+	/**
+	 * Forgets the rifts and the entrance of a pocket whose area is about to be deleted, without notifying
+	 * anything in the world. Player rift pointers leading into the pocket are cleared too.
+	 */
+	public void removePocket(Pocket pocket, Collection<Location> rifts) {
+		LOGGER.debug("Removing pocket " + pocket.getId() + " in dimension " + pocket.getWorld() + " with " + rifts.size() + " rifts");
+
+		Set<RegistryVertex> removed = new HashSet<>();
+		for (Location location : rifts) {
+			Rift rift = this.getRiftAt(location);
+			if (rift != null) removed.add(rift);
+		}
+
+		for (byte kind = RiftJournal.LAST_PRIVATE_POCKET_ENTRANCE; kind <= RiftJournal.OVERWORLD_RIFT; kind++) {
+			for (Map.Entry<UUID, PlayerRiftPointer> entry : new ArrayList<>(this.getPlayerRiftPointers(kind).entrySet())) {
+				if (removed.contains(this.graph.followPointer(entry.getValue()))) {
+					this.putPlayerRiftPointer(entry.getKey(), null, kind);
+				}
+			}
+		}
+
+		removed.forEach(rift -> this.dropRift((Rift) rift));
+		this.dropPocketEntrance(pocket.getWorld(), pocket.getId());
+	}
+
+	void dropPocketEntrance(RegistryKey<World> world, int pocketId) {
+		this.pocketEntranceMap.entrySet().removeIf(entry -> {
+			PocketEntrancePointer pointer = entry.getValue();
+			if (pointer.getPocketId() != pocketId || !pointer.getWorld().equals(world)) return false;
+			this.markDirty(pointer);
+			this.graph.removeVertex(pointer);
+			this.untrackVertex(pointer);
+			this.uuidMap.remove(pointer.id);
+			return true;
+		});
+		if (this.journal != null) this.journal.removePocketEntrance(world, pocketId);
 	}
 
 	public Location getPrivatePocketEntrance(UUID playerUUID) {
 		// Try to get the last used entrance
 		PlayerRiftPointer entrancePointer = this.lastPrivatePocketEntrances.get(playerUUID);
-		Rift entrance = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+		Rift entrance = (Rift) this.graph.followPointer(entrancePointer);
 		if (entrance != null) return entrance.getLocation();
 
 		// If there was no last used private entrance, get the first player's private pocket entrance
 		return this.getPocketEntrance(DimensionalRegistry.getPrivateRegistry().getPrivatePocket(playerUUID));
 	}
 
-	private void setPlayerRiftPointer(UUID playerUUID, Location rift, Map<UUID, PlayerRiftPointer> map) {
+	private void setPlayerRiftPointer(UUID playerUUID, Location rift, byte kind) {
+		this.putPlayerRiftPointer(playerUUID, rift, kind);
+		if (rift != null) this.getRift(rift).markDirty();
+	}
+
+	void putPlayerRiftPointer(UUID playerUUID, Location rift, byte kind) {
+		Map<UUID, PlayerRiftPointer> map = this.getPlayerRiftPointers(kind);
 		PlayerRiftPointer pointer = map.get(playerUUID);
+		this.playersDirty = true;
 		if (pointer != null) {
 			this.graph.removeVertex(pointer);
 			map.remove(playerUUID);
@@ -344,30 +821,40 @@ public class RiftRegistry {
 			this.graph.addVertex(pointer);
 			map.put(playerUUID, pointer);
 			this.uuidMap.put(pointer.id, pointer);
-			this.addEdge(pointer, this.getRift(rift));
+			this.putEdge(pointer, this.getRift(rift));
 		}
+		if (this.journal != null) this.journal.setPlayerRiftPointer(kind, playerUUID, rift);
+	}
+
+	private Map<UUID, PlayerRiftPointer> getPlayerRiftPointers(byte kind) {
+		return switch (kind) {
+			case RiftJournal.LAST_PRIVATE_POCKET_ENTRANCE -> this.lastPrivatePocketEntrances;
+			case RiftJournal.LAST_PRIVATE_POCKET_EXIT -> this.lastPrivatePocketExits;
+			case RiftJournal.OVERWORLD_RIFT -> this.overworldRifts;
+			default -> throw new IllegalArgumentException("Unknown player rift pointer kind " + kind);
+		};
 	}
 
 	public void setLastPrivatePocketEntrance(UUID playerUUID, Location rift) {
 		LOGGER.debug("Setting last used private pocket entrance for " + playerUUID + " at " + rift);
-		this.setPlayerRiftPointer(playerUUID, rift, this.lastPrivatePocketEntrances);
+		this.setPlayerRiftPointer(playerUUID, rift, RiftJournal.LAST_PRIVATE_POCKET_ENTRANCE);
 	}
 
 	public Location getPrivatePocketExit(UUID playerUUID) {
 		PlayerRiftPointer entrancePointer = this.lastPrivatePocketExits.get(playerUUID);
-		Rift entrance = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+		Rift entrance = (Rift) this.graph.followPointer(entrancePointer);
 		return entrance != null ? entrance.getLocation() : null;
 	}
 
 	public void setLastPrivatePocketExit(UUID playerUUID, Location rift) {
 		LOGGER.debug("Setting last used private pocket exit for " + playerUUID + " at " + rift);
-		this.setPlayerRiftPointer(playerUUID, rift, this.lastPrivatePocketExits);
+		this.setPlayerRiftPointer(playerUUID, rift, RiftJournal.LAST_PRIVATE_POCKET_EXIT);
 	}
 
 	public Location getOverworldRift(UUID playerUUID) {
 		/*
 		PlayerRiftPointer entrancePointer = this.overworldRifts.get(playerUUID);
-		Rift rift = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+		Rift rift = (Rift) this.graph.followPointer(entrancePointer);
 		for (int i = 0; i < 10; i++) {
 			if (rift == null) {
 				LOGGER.log(Level.ERROR, "rift is null for getOverworldRift");
@@ -384,28 +871,40 @@ public class RiftRegistry {
 	public void setOverworldRift(UUID playerUUID, Location rift) {
 		/*
 		LOGGER.log(Level.INFO, "Setting last used overworld rift for " + playerUUID + " at " + rift.getWorld() + " pos at " + rift.getBlockPos());
-		this.setPlayerRiftPointer(playerUUID, rift, this.overworldRifts);
+		this.setPlayerRiftPointer(playerUUID, rift, RiftJournal.OVERWORLD_RIFT);
 		 */
 		overworldLocations.put(playerUUID, rift);
 	}
 
 	public Collection<Rift> getRifts() {
-		return this.locationMap.values();
+		List<Rift> rifts = new ArrayList<>();
+		this.locationMap.values().forEach(worldRifts -> rifts.addAll(worldRifts.values()));
+		return rifts;
+	}
+
+	public Collection<Rift> getRifts(RegistryKey<World> world) {
+		Long2ObjectMap<Rift> rifts = this.locationMap.get(world);
+		return rifts != null ? new ArrayList<>(rifts.values()) : Collections.emptyList();
 	}
 
 	public Set<Location> getTargets(Location location) {
-		return this.graph.outgoingEdgesOf(this.getRift(location)).stream()
-				.map(this.graph::getEdgeTarget)
-				.map(Rift.class::cast)
-				.map(rift -> rift.getLocation())
-				.collect(Collectors.toSet());
+		Rift rift = this.getRift(location);
+		Set<Location> targets = new HashSet<>();
+		for (int i = 0; i < this.graph.outDegree(rift); i++) {
+			targets.add(((Rift) this.graph.getTarget(rift, i)).getLocation());
+		}
+		return targets;
 	}
 
 	public Set<Location> getSources(Location location) {
-		return this.graph.incomingEdgesOf(this.getRift(location)).stream()
-				.map(this.graph::getEdgeTarget)
-				.map(Rift.class::cast)
-				.map(rift -> rift.getLocation())
-				.collect(Collectors.toSet());
+		// Pocket entrances and player pointers lead here too, only rifts are returned
+		Rift rift = this.getRift(location);
+		Set<Location> sources = new HashSet<>();
+		for (int i = 0; i < this.graph.inDegree(rift); i++) {
+			if (this.graph.getSource(rift, i) instanceof Rift source && !(source instanceof RiftPlaceholder)) {
+				sources.add(source.getLocation());
+			}
+		}
+		return sources;
 	}
 }
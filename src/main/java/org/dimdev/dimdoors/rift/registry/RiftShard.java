@@ -0,0 +1,27 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import org.dimdev.dimdoors.world.pocket.PocketDirectory;
+
+/**
+ * The file a rift or pocket entrance is saved in. Pocket worlds are split like their pockets, by
+ * {@link PocketDirectory#getShard(int)} of the pocket the vertex belongs to, other worlds are saved whole.
+ */
+public record RiftShard(RegistryKey<World> world, int pocketShard) {
+	// PocketDirectory.getShard never gets this low, even for negative ids
+	private static final int WHOLE_WORLD = Integer.MIN_VALUE;
+
+	public static RiftShard of(RegistryKey<World> world) {
+		return new RiftShard(world, WHOLE_WORLD);
+	}
+
+	public static RiftShard of(RegistryKey<World> world, int pocketShard) {
+		return new RiftShard(world, pocketShard);
+	}
+
+	public boolean isWholeWorld() {
+		return this.pocketShard == WHOLE_WORLD;
+	}
+}
@@ -0,0 +1,208 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.util.NbtType;
+
+import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
+import org.dimdev.dimdoors.pockets.TemplateUtils;
+import org.dimdev.dimdoors.rift.targets.VirtualTarget;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+
+/**
+ * Changes of the registry that have to reach rift block entities, such as recoloring a rift, telling it a target
+ * is gone or linking the exit of a claimed pocket. They are collected during the tick, merged per rift and applied once at the end of it, and only to rifts
+ * in chunks that are already loaded. The updates of any other rift wait until its chunk loads instead of loading it.
+ * <p>
+ * Updates which have not been applied yet are saved with the dimensional registry, so a rift whose chunk stays unloaded
+ * until after a restart still gets them.
+ */
+public class RiftUpdateQueue {
+	private final Map<Location, Update> pending = new HashMap<>();
+	private List<Update> ready = new ArrayList<>();
+	private final Map<RegistryKey<World>, Long2ObjectMap<List<Update>>> held = new HashMap<>(); // World -> chunk -> updates
+	private long chunkLoadsAvoided = 0;
+	private boolean dirty = false;
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(server -> getInstance().flush(server));
+		ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> getInstance().release(world, chunk));
+	}
+
+	public static RiftUpdateQueue getInstance() {
+		return DimensionalRegistry.getRiftUpdates();
+	}
+
+	public void recolor(Location location) {
+		this.get(location).recolor = true;
+	}
+
+	public void targetGone(Location location, Location target) {
+		this.get(location).targetsGone.add(target);
+	}
+
+	/**
+	 * Links the rift if it is still an unlinked pocket exit, see {@link TemplateUtils#linkExits}.
+	 */
+	public void linkExit(Location location, VirtualTarget linkTo, LinkProperties linkProperties) {
+		Update update = this.get(location);
+		update.linkExit = true;
+		update.linkTo = linkTo;
+		update.linkProperties = linkProperties;
+	}
+
+	/**
+	 * @return how many chunks were not loaded just to update a rift in them since the server started
+	 */
+	public long getChunkLoadsAvoided() {
+		return this.chunkLoadsAvoided;
+	}
+
+	/**
+	 * @return how many rifts have updates waiting for their chunk to load
+	 */
+	public int getHeldCount() {
+		return this.pending.size() - this.ready.size();
+	}
+
+	private Update get(Location location) {
+		Update update = this.pending.get(location);
+		if (update == null) {
+			update = new Update(location);
+			this.pending.put(location, update);
+			this.ready.add(update);
+		}
+		this.dirty = true;
+		return update;
+	}
+
+	private void flush(MinecraftServer server) {
+		if (this.ready.isEmpty()) return;
+
+		// Updating a rift may queue more updates, which are applied on the next tick
+		List<Update> updates = this.ready;
+		this.ready = new ArrayList<>();
+		for (Update update : updates) {
+			Location location = update.location;
+			ServerWorld world = server.getWorld(location.getWorldId());
+			if (world == null) {
+				this.pending.remove(location);
+				this.dirty = true;
+				continue;
+			}
+
+			int chunkX = location.getX() >> 4;
+			int chunkZ = location.getZ() >> 4;
+			if (!world.getChunkManager().isChunkLoaded(chunkX, chunkZ)) {
+				List<Update> chunkUpdates = this.held.computeIfAbsent(location.getWorldId(), key -> new Long2ObjectOpenHashMap<>())
+						.computeIfAbsent(ChunkPos.toLong(chunkX, chunkZ), chunk -> new ArrayList<>());
+				if (chunkUpdates.isEmpty()) this.chunkLoadsAvoided++;
+				chunkUpdates.add(update);
+				continue;
+			}
+
+			this.pending.remove(location);
+			this.dirty = true;
+			update.apply(world.getBlockEntity(location.pos));
+		}
+	}
+
+	private void release(ServerWorld world, WorldChunk chunk) {
+		Long2ObjectMap<List<Update>> chunks = this.held.get(world.getRegistryKey());
+		if (chunks == null) return;
+		List<Update> updates = chunks.remove(chunk.getPos().toLong());
+		if (updates != null) this.ready.addAll(updates);
+	}
+
+	public NbtCompound toNbt(NbtCompound nbt) {
+		NbtList updatesNbt = new NbtList();
+		for (Update update : this.pending.values()) {
+			NbtCompound updateNbt = new NbtCompound();
+			updateNbt.put("location", Location.toNbt(update.location));
+			updateNbt.putBoolean("recolor", update.recolor);
+			NbtList targetsGoneNbt = new NbtList();
+			for (Location target : update.targetsGone) targetsGoneNbt.add(Location.toNbt(target));
+			updateNbt.put("targets_gone", targetsGoneNbt);
+			if (update.linkExit) {
+				NbtCompound linkExitNbt = new NbtCompound();
+				if (update.linkTo != null) linkExitNbt.put("link_to", VirtualTarget.toNbt(update.linkTo));
+				if (update.linkProperties != null) linkExitNbt.put("link_properties", LinkProperties.toNbt(update.linkProperties));
+				updateNbt.put("link_exit", linkExitNbt);
+			}
+			updatesNbt.add(updateNbt);
+		}
+		nbt.put("updates", updatesNbt);
+		return nbt;
+	}
+
+	public void fromNbt(NbtCompound nbt) {
+		this.pending.clear();
+		this.ready.clear();
+		this.held.clear();
+		// Everything is applied or held again on the first tick, depending on which chunks are loaded by then
+		for (NbtElement element : nbt.getList("updates", NbtType.COMPOUND)) {
+			NbtCompound updateNbt = (NbtCompound) element;
+			Update update = this.get(Location.fromNbt(updateNbt.getCompound("location")));
+			update.recolor |= updateNbt.getBoolean("recolor");
+			for (NbtElement target : updateNbt.getList("targets_gone", NbtType.COMPOUND)) update.targetsGone.add(Location.fromNbt((NbtCompound) target));
+			if (updateNbt.contains("link_exit", NbtType.COMPOUND)) {
+				NbtCompound linkExitNbt = updateNbt.getCompound("link_exit");
+				update.linkExit = true;
+				update.linkTo = linkExitNbt.contains("link_to", NbtType.COMPOUND) ? VirtualTarget.fromNbt(linkExitNbt.getCompound("link_to")) : null;
+				update.linkProperties = linkExitNbt.contains("link_properties", NbtType.COMPOUND) ? LinkProperties.fromNbt(linkExitNbt.getCompound("link_properties")) : null;
+			}
+		}
+		this.dirty = false;
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
+
+	private static class Update {
+		private final Location location;
+		private final Set<Location> targetsGone = new LinkedHashSet<>();
+		private boolean recolor;
+		private boolean linkExit;
+		private VirtualTarget linkTo;
+		private LinkProperties linkProperties;
+
+		private Update(Location location) {
+			this.location = location;
+		}
+
+		private void apply(BlockEntity blockEntity) {
+			if (!(blockEntity instanceof RiftBlockEntity rift)) return; // broken since the update was queued
+			if (this.linkExit) TemplateUtils.linkExits(Collections.singletonList(rift), this.linkTo, this.linkProperties);
+			for (Location target : this.targetsGone) rift.handleTargetGone(target);
+			if (this.recolor) rift.updateColor();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.dimdev.dimdoors.rift.targets;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.state.property.Properties;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.block.entity.EntranceRiftBlockEntity;
+
+/**
+ * Keeps the destination chunks of the open doors around each player loaded, together with their neighbors,
+ * so walking through a door does not wait for its destination to load. Every player keeps a ticket for at most
+ * a configured amount of doors, the nearest ones, and the tickets are removed once the player walks away.
+ */
+public final class DestinationPreloader {
+	private static final int SCAN_INTERVAL = 10; // Ticks between looking for doors around the players
+	private static final ChunkTicketType<BlockPos> TICKET = ChunkTicketType.create("dimdoors_destination", Comparator.comparingLong(BlockPos::asLong), 4 * SCAN_INTERVAL);
+
+	private static final Map<UUID, Set<Location>> preloads = new HashMap<>(); // Player -> destinations with a ticket
+	private static final Object2IntMap<Location> playerCounts = new Object2IntOpenHashMap<>(); // Destination -> players preloading it
+	private static long traversals = 0;
+	private static long hits = 0;
+	private static long chunksLoaded = 0;
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			if (server.getTicks() % SCAN_INTERVAL == 0) scan(server);
+		});
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			preloads.clear();
+			playerCounts.clear();
+		});
+	}
+
+	/**
+	 * Records a player going through a door to the location, for the hit rate.
+	 */
+	public static void recordTraversal(Location destination) {
+		traversals++;
+		ChunkPos chunk = new ChunkPos(destination.pos);
+		if (playerCounts.containsKey(destination) && destination.getWorld().getChunkManager().isChunkLoaded(chunk.x, chunk.z)) hits++;
+	}
+
+	public static long getTraversals() {
+		return traversals;
+	}
+
+	public static long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many destination chunks were not loaded yet when they were preloaded, since the server started
+	 */
+	public static long getChunksLoaded() {
+		return chunksLoaded;
+	}
+
+	public static int getPreloadedCount() {
+		return playerCounts.size();
+	}
+
+	private static void scan(MinecraftServer server) {
+		int distance = DimensionalDoors.getConfig().getDoorsConfig().destinationPreloadDistance;
+		int budget = DimensionalDoors.getConfig().getDoorsConfig().destinationPreloadBudget;
+
+		Set<UUID> online = new HashSet<>();
+		for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+			online.add(player.getUuid());
+			Set<Location> wanted = distance > 0 && budget > 0 && !player.isSpectator() ? findDestinations(player, distance, budget) : Set.of();
+			Set<Location> current = preloads.getOrDefault(player.getUuid(), Set.of());
+
+			for (Location destination : current) {
+				if (!wanted.contains(destination)) release(destination);
+			}
+			for (Location destination : wanted) acquire(destination, !current.contains(destination));
+
+			if (wanted.isEmpty()) {
+				preloads.remove(player.getUuid());
+			} else {
+				preloads.put(player.getUuid(), wanted);
+			}
+		}
+
+		preloads.entrySet().removeIf(entry -> {
+			if (online.contains(entry.getKey())) return false;
+			entry.getValue().forEach(DestinationPreloader::release);
+			return true;
+		});
+	}
+
+	private static Set<Location> findDestinations(ServerPlayerEntity player, int distance, int budget) {
+		ServerWorld world = (ServerWorld) player.world;
+		BlockPos center = player.getBlockPos();
+		List<EntranceRiftBlockEntity> doors = new ArrayList<>();
+		for (int chunkX = (center.getX() - distance) >> 4; chunkX <= (center.getX() + distance) >> 4; chunkX++) {
+			for (int chunkZ = (center.getZ() - distance) >> 4; chunkZ <= (center.getZ() + distance) >> 4; chunkZ++) {
+				if (!world.getChunkManager().isChunkLoaded(chunkX, chunkZ)) continue;
+				for (BlockEntity blockEntity : world.getChunk(chunkX, chunkZ).getBlockEntities().values()) {
+					if (blockEntity instanceof EntranceRiftBlockEntity door && isOpen(door.getCachedState())
+							&& door.getPos().getSquaredDistance(center) <= (double) distance * distance) {
+						doors.add(door);
+					}
+				}
+			}
+		}
+		doors.sort(Comparator.comparingDouble(door -> door.getPos().getSquaredDistance(center)));
+
+		Set<Location> destinations = new LinkedHashSet<>();
+		for (EntranceRiftBlockEntity door : doors) {
+			VirtualTarget destination = door.getDestination();
+			if (destination == VirtualTarget.NoneTarget.INSTANCE) continue;
+			destination.setLocation(new Location(world, door.getPos()));
+			Location location = destination.getResolvedLocation();
+			if (location != null && DimensionalDoors.getServer().getWorld(location.getWorldId()) != null) destinations.add(location);
+			if (destinations.size() == budget) break;
+		}
+		return destinations;
+	}
+
+	private static boolean isOpen(BlockState state) {
+		return !state.contains(Properties.OPEN) || state.get(Properties.OPEN);
+	}
+
+	// Adding the ticket again refreshes it, so it only expires once no player is near the door anymore
+	private static void acquire(Location destination, boolean added) {
+		ServerWorld world = destination.getWorld();
+		ChunkPos chunk = new ChunkPos(destination.pos);
+		if (added && playerCounts.getInt(destination) == 0 && !world.getChunkManager().isChunkLoaded(chunk.x, chunk.z)) chunksLoaded++;
+		if (added) playerCounts.put(destination, playerCounts.getInt(destination) + 1);
+		world.getChunkManager().addTicket(TICKET, chunk, 1, destination.pos);
+	}
+
+	private static void release(Location destination) {
+		int count = playerCounts.getInt(destination) - 1;
+		if (count > 0) {
+			playerCounts.put(destination, count);
+			return;
+		}
+
+		playerCounts.removeInt(destination);
+		ChunkPos chunk = new ChunkPos(destination.pos);
+		ServerWorld world = destination.getWorld();
+		if (world != null) world.getChunkManager().removeTicket(TICKET, chunk, 1, destination.pos);
+	}
+}
@@ -1,6 +1,7 @@
 package org.dimdev.dimdoors.rift.targets;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
@@ -21,6 +22,7 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.random.Random;
 
 import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
 import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.util.Location;
 import org.dimdev.dimdoors.api.util.TeleportUtil;
@@ -30,7 +32,7 @@ import org.dimdev.dimdoors.world.ModDimensions;
 
 import static org.dimdev.dimdoors.api.util.EntityUtils.chat;
 
-public class EscapeTarget extends VirtualTarget implements EntityTarget { // TODO: createRift option
+public class EscapeTarget extends VirtualTarget implements EntityTarget, AsyncEntityTarget { // TODO: createRift option
 	private static final Logger LOGGER = LogManager.getLogger();
 
 	public static final Codec<EscapeTarget> CODEC = RecordCodecBuilder.create(instance -> instance.group(
@@ -43,6 +45,25 @@ public class EscapeTarget extends VirtualTarget implements EntityTarget { // TOD
 		this.canEscapeLimbo = canEscapeLimbo;
 	}
 
+	/**
+	 * Waits for the chunk of the spawn point the entity would escape to.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		boolean escaping = this.canEscapeLimbo && !entity.getEntityWorld().isClient && (ModDimensions.isPocketDimension(entity.world) || ModDimensions.isLimboDimension(entity.world));
+		if (!escaping || entity.world.getPlayerByUuid(entity.getUuid()) == null) return CompletableFuture.completedFuture(this);
+		return PendingTeleports.loadChunk(getSpawnPoint(entity, entity.getUuid())).thenApply(loaded -> this);
+	}
+
+	private static Location getSpawnPoint(Entity entity, UUID uuid) {
+		ServerPlayerEntity player = (ServerPlayerEntity) entity.world.getPlayerByUuid(uuid);
+		if (player.getSpawnPointPosition() != null) {
+			return new Location(player.getSpawnPointDimension(), player.getSpawnPointPosition());
+		} else {
+			return new Location(DimensionalDoors.getServer().getOverworld(), DimensionalDoors.getServer().getOverworld().getSpawnPos());
+		}
+	}
+
 	@Override
 	public boolean receiveEntity(Entity entity, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		if (!ModDimensions.isPocketDimension(entity.world) && !(ModDimensions.isLimboDimension(entity.world))) {
@@ -63,13 +84,7 @@ public class EscapeTarget extends VirtualTarget implements EntityTarget { // TOD
 				return false;
 			}
 			LOGGER.log(Level.INFO, "sending player from limbo to their spawnpoint, good luck!");
-			Location destLoc;
-			if (((ServerPlayerEntity) entity.world.getPlayerByUuid(uuid)).getSpawnPointPosition() != null) {
-				destLoc = new Location(((ServerPlayerEntity) entity.world.getPlayerByUuid(uuid)).getSpawnPointDimension(), ((ServerPlayerEntity) entity.world.getPlayerByUuid(uuid)).getSpawnPointPosition());
-			} else {
-				destLoc = new Location(DimensionalDoors.getServer().getOverworld(), DimensionalDoors.getServer().getOverworld().getSpawnPos());
-
-			}
+			Location destLoc = getSpawnPoint(entity, uuid);
 
 
 			/*
@@ -1,5 +1,7 @@
 package org.dimdev.dimdoors.rift.targets;
 
+import java.util.concurrent.CompletableFuture;
+
 import net.minecraft.entity.Entity;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
@@ -7,11 +9,12 @@ import net.minecraft.text.TranslatableTextContent;
 import net.minecraft.util.math.EulerAngle;
 import net.minecraft.util.math.Vec3d;
 
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
 import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.rift.target.Target;
 import org.dimdev.dimdoors.api.util.EntityUtils;
 
-public class MessageTarget implements EntityTarget {
+public class MessageTarget implements EntityTarget, AsyncEntityTarget {
 	private final Target forwardTo;
 	private final String message;
 	private final Object[] messageParams;
@@ -26,6 +29,15 @@ public class MessageTarget implements EntityTarget {
 		this(null, message, messageParams);
 	}
 
+	/**
+	 * Resolves the target the entity is forwarded to, and shows the message once the entity is received.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		if (this.forwardTo == null) return CompletableFuture.completedFuture(this);
+		return AsyncEntityTarget.resolve(this.forwardTo, entity).thenApply(target -> new MessageTarget(target, this.message, this.messageParams));
+	}
+
 	@Override
 	public boolean receiveEntity(Entity entity, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		EntityUtils.chat(entity, Text.translatable(this.message, this.messageParams));
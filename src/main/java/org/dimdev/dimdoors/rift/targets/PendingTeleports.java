@@ -0,0 +1,157 @@
+package org.dimdev.dimdoors.rift.targets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
+import org.dimdev.dimdoors.api.rift.target.EntityTarget;
+import org.dimdev.dimdoors.api.util.EntityUtils;
+import org.dimdev.dimdoors.api.util.Location;
+
+/**
+ * Teleports whose {@link AsyncEntityTarget} is still being resolved. The entity is held where it entered the rift
+ * until its target is ready, and the teleport is then committed at the end of a server tick.
+ */
+public final class PendingTeleports {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int TIMEOUT = 30 * 20; // Ticks after which a teleport is given up
+
+	private static final Map<UUID, Pending> pending = new HashMap<>();
+	private static final List<ChunkWait> chunkWaits = new ArrayList<>();
+	private static List<Runnable> tasks = new ArrayList<>();
+
+	/**
+	 * Runs tasks at the end of the current server tick, outside of whatever triggered the teleport.
+	 */
+	public static final Executor END_OF_TICK = task -> tasks.add(task);
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(PendingTeleports::tick);
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			pending.clear();
+			chunkWaits.clear();
+			tasks.clear();
+		});
+	}
+
+	public static boolean isPending(Entity entity) {
+		return pending.containsKey(entity.getUuid());
+	}
+
+	/**
+	 * Holds the entity in place until the target is resolved, then passes it to commit.
+	 */
+	public static void hold(Entity entity, CompletableFuture<EntityTarget> target, Consumer<EntityTarget> commit) {
+		pending.put(entity.getUuid(), new Pending(entity, entity.getPos(), target, commit));
+	}
+
+	public static <T> CompletableFuture<T> atEndOfTick(Supplier<T> supplier) {
+		return CompletableFuture.supplyAsync(supplier, END_OF_TICK);
+	}
+
+	/**
+	 * @return a future completed on the server thread once the chunk of the location is loaded, without loading it synchronously
+	 */
+	public static CompletableFuture<Void> loadChunk(Location location) {
+		ServerWorld world = location.getWorld();
+		ChunkPos chunk = new ChunkPos(location.pos);
+		if (world.getChunkManager().isChunkLoaded(chunk.x, chunk.z)) return CompletableFuture.completedFuture(null);
+
+		world.getChunkManager().addTicket(ChunkTicketType.PORTAL, chunk, 3, location.pos);
+		ChunkWait wait = new ChunkWait(world, chunk, new CompletableFuture<>());
+		chunkWaits.add(wait);
+		return wait.future;
+	}
+
+	private static void tick(MinecraftServer server) {
+		if (!tasks.isEmpty()) {
+			// Tasks may queue more tasks, which run on the next tick
+			List<Runnable> current = tasks;
+			tasks = new ArrayList<>();
+			current.forEach(Runnable::run);
+		}
+
+		chunkWaits.removeIf(wait -> {
+			if (!wait.world.getChunkManager().isChunkLoaded(wait.chunk.x, wait.chunk.z)) return false;
+			wait.future.complete(null);
+			return true;
+		});
+
+		if (pending.isEmpty()) return;
+		Iterator<Pending> iterator = pending.values().iterator();
+		List<Pending> done = new ArrayList<>();
+		while (iterator.hasNext()) {
+			Pending teleport = iterator.next();
+			if (teleport.entity.isRemoved()) {
+				iterator.remove();
+			} else if (teleport.target.isDone()) {
+				iterator.remove();
+				done.add(teleport);
+			} else if (++teleport.ticks > TIMEOUT) {
+				iterator.remove();
+				teleport.target.cancel(false);
+				EntityUtils.chat(teleport.entity, Text.translatable("rifts.teleport.timed_out"));
+			} else {
+				teleport.holdInPlace();
+			}
+		}
+
+		// Committing moves entities between worlds, so it happens after the iteration
+		for (Pending teleport : done) {
+			try {
+				teleport.commit.accept(teleport.target.join());
+			} catch (Exception e) {
+				EntityUtils.chat(teleport.entity, Text.of("Something went wrong while trying to teleport you, please report this bug."));
+				LOGGER.error("Resolving the target of a teleport failed with the following exception: ", e);
+			}
+		}
+	}
+
+	private static final class Pending {
+		private final Entity entity;
+		private final Vec3d position;
+		private final CompletableFuture<EntityTarget> target;
+		private final Consumer<EntityTarget> commit;
+		private int ticks = 0;
+
+		private Pending(Entity entity, Vec3d position, CompletableFuture<EntityTarget> target, Consumer<EntityTarget> commit) {
+			this.entity = entity;
+			this.position = position;
+			this.target = target;
+			this.commit = commit;
+		}
+
+		private void holdInPlace() {
+			this.entity.setVelocity(Vec3d.ZERO);
+			this.entity.fallDistance = 0;
+			if (this.entity.squaredDistanceTo(this.position) > 0.25) {
+				this.entity.requestTeleport(this.position.x, this.position.y, this.position.z);
+			}
+		}
+	}
+
+	private record ChunkWait(ServerWorld world, ChunkPos chunk, CompletableFuture<Void> future) {
+	}
+}
@@ -1,11 +1,15 @@
 package org.dimdev.dimdoors.rift.targets;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.mojang.serialization.Codec;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.text.TranslatableTextContent;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.EulerAngle;
 import net.minecraft.util.math.Vec3d;
 
@@ -15,9 +19,22 @@ import org.dimdev.dimdoors.api.util.EntityUtils;
 public class PocketExitMarker extends VirtualTarget implements EntityTarget {
 	public static final Codec<PocketExitMarker> CODEC = Codec.unit(PocketExitMarker::new);
 
+	private final List<BlockPos> exits = new ArrayList<>(); // Only filled when passed as the target of a pocket generated ahead of time, not saved
+
 	public PocketExitMarker() {
 	}
 
+	public void addExit(BlockPos pos) {
+		this.exits.add(pos.toImmutable());
+	}
+
+	/**
+	 * @return the rifts left leading to this marker by the pocket generated with it as its target, see PocketPool
+	 */
+	public List<BlockPos> getExits() {
+		return this.exits;
+	}
+
 	@Override
 	public boolean receiveEntity(Entity entity, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		EntityUtils.chat(entity, Text.translatable("The exit of this dungeon has not been linked. If this is a normally generated pocket, please report this bug."));
@@ -1,6 +1,7 @@
 package org.dimdev.dimdoors.rift.targets;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,6 +14,7 @@ import net.minecraft.item.Item;
 import net.minecraft.util.math.EulerAngle;
 import net.minecraft.util.math.Vec3d;
 
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
 import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.util.EntityUtils;
 import org.dimdev.dimdoors.api.util.Location;
@@ -23,7 +25,7 @@ import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 import org.dimdev.dimdoors.world.pocket.type.PrivatePocket;
 
-public class PrivatePocketTarget extends VirtualTarget implements EntityTarget {
+public class PrivatePocketTarget extends VirtualTarget implements EntityTarget, AsyncEntityTarget {
 	private static final Logger LOGGER = LogManager.getLogger();
 
 	public static final RGBA COLOR = new RGBA(0, 1, 0, 1);
@@ -31,44 +33,58 @@ public class PrivatePocketTarget extends VirtualTarget implements EntityTarget {
 	public PrivatePocketTarget() {
 	}
 
+	/**
+	 * Generates the private pocket at the end of the tick if needed, and waits for the chunk of its entrance.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		UUID uuid = EntityUtils.getOwner(entity).getUuid();
+		if (uuid == null) return CompletableFuture.completedFuture(this);
+		return PendingTeleports.atEndOfTick(() -> this.getEntrance(uuid)).thenCompose(PendingTeleports::loadChunk).thenApply(loaded -> this);
+	}
+
 	@Override
 	public boolean receiveEntity(Entity entity, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		UUID uuid = EntityUtils.getOwner(entity).getUuid();
-		VirtualLocation virtualLocation = VirtualLocation.fromLocation(this.location);
 		if (uuid != null) {
+			Location destLoc = this.getEntrance(uuid);
 			PrivatePocket pocket = DimensionalRegistry.getPrivateRegistry().getPrivatePocket(uuid);
-			if (pocket == null) { // generate the private pocket and get its entrances
-				// set to where the pocket was first created
-				Pocket unknownTypePocket = PocketGenerator.generatePrivatePocketV2(new VirtualLocation(virtualLocation.getWorld(), virtualLocation.getX(), virtualLocation.getZ(), -1));
-				if (! (unknownTypePocket instanceof PrivatePocket)) throw new RuntimeException("Pocket generated for private pocket is not of type PrivatePocket");
-				pocket = (PrivatePocket) unknownTypePocket;
-
-
-				DimensionalRegistry.getPrivateRegistry().setPrivatePocketID(uuid, pocket);
-				BlockEntity be = DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket).getBlockEntity();
-				this.processEntity(pocket, be, entity, uuid, relativePos, relativeAngle, relativeVelocity);
-			} else {
-				Location destLoc = DimensionalRegistry.getRiftRegistry().getPrivatePocketEntrance(uuid); // get the last used entrances
-				if (destLoc == null)
-					destLoc = DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket); // if there's none, then set the target to the main entrances
-				if (destLoc == null) { // if the pocket entrances is gone, then create a new private pocket
-					LOGGER.info("All entrances are gone, creating a new private pocket!");
-					Pocket unknownTypePocket = PocketGenerator.generatePrivatePocketV2(new VirtualLocation(virtualLocation.getWorld(), virtualLocation.getX(), virtualLocation.getZ(), -1));
-					if (! (unknownTypePocket instanceof PrivatePocket)) throw new RuntimeException("Pocket generated for private pocket is not of type PrivatePocket");
-					pocket = (PrivatePocket) unknownTypePocket;
-
-					DimensionalRegistry.getPrivateRegistry().setPrivatePocketID(uuid, pocket);
-					destLoc = DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket);
-				}
-
-				this.processEntity(pocket, destLoc.getBlockEntity(), entity, uuid, relativePos, relativeAngle, relativeVelocity);
-			}
+			this.processEntity(pocket, destLoc.getBlockEntity(), entity, uuid, relativePos, relativeAngle, relativeVelocity);
 			return true;
 		} else {
 			return false;
 		}
 	}
 
+	private Location getEntrance(UUID uuid) {
+		VirtualLocation virtualLocation = DimensionalRegistry.getRiftRegistry().getVirtualLocation(this.location);
+		PrivatePocket pocket = DimensionalRegistry.getPrivateRegistry().getPrivatePocket(uuid);
+		if (pocket == null) { // generate the private pocket and get its entrances
+			// set to where the pocket was first created
+			pocket = this.generatePrivatePocket(uuid, virtualLocation);
+			return DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket);
+		}
+
+		Location destLoc = DimensionalRegistry.getRiftRegistry().getPrivatePocketEntrance(uuid); // get the last used entrances
+		if (destLoc == null)
+			destLoc = DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket); // if there's none, then set the target to the main entrances
+		if (destLoc == null) { // if the pocket entrances is gone, then create a new private pocket
+			LOGGER.info("All entrances are gone, creating a new private pocket!");
+			pocket = this.generatePrivatePocket(uuid, virtualLocation);
+			destLoc = DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket);
+		}
+		return destLoc;
+	}
+
+	private PrivatePocket generatePrivatePocket(UUID uuid, VirtualLocation virtualLocation) {
+		Pocket unknownTypePocket = PocketGenerator.generatePrivatePocketV2(new VirtualLocation(virtualLocation.getWorld(), virtualLocation.getX(), virtualLocation.getZ(), -1));
+		if (! (unknownTypePocket instanceof PrivatePocket)) throw new RuntimeException("Pocket generated for private pocket is not of type PrivatePocket");
+		PrivatePocket pocket = (PrivatePocket) unknownTypePocket;
+
+		DimensionalRegistry.getPrivateRegistry().setPrivatePocketID(uuid, pocket);
+		return pocket;
+	}
+
 	private void processEntity(PrivatePocket pocket, BlockEntity blockEntity, Entity entity, UUID uuid, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		if (entity instanceof ItemEntity) {
 			Item item = ((ItemEntity) entity).getStack().getItem();
@@ -30,7 +30,7 @@ public class PublicPocketTarget extends RestoringTarget {
 
 	@Override
 	public Location makeLinkTarget() {
-		VirtualLocation riftVirtualLocation = VirtualLocation.fromLocation(this.location);
+		VirtualLocation riftVirtualLocation = DimensionalRegistry.getRiftRegistry().getVirtualLocation(this.location);
 		VirtualLocation newVirtualLocation;
 		int depth = riftVirtualLocation.getDepth() + 1;
 		newVirtualLocation = new VirtualLocation(riftVirtualLocation.getWorld(), riftVirtualLocation.getX(), riftVirtualLocation.getZ(), depth);
@@ -3,33 +3,35 @@ package org.dimdev.dimdoors.rift.targets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
-import com.google.common.collect.Sets;
-
+import net.minecraft.entity.Entity;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.Heightmap;
 
 import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
+import org.dimdev.dimdoors.api.rift.target.DefaultTargets;
+import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.rift.target.Target;
 import org.dimdev.dimdoors.api.util.Location;
-import org.dimdev.dimdoors.api.util.math.MathUtil;
 import org.dimdev.dimdoors.block.ModBlocks;
 import org.dimdev.dimdoors.block.entity.DetachedRiftBlockEntity;
 import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
 import org.dimdev.dimdoors.pockets.PocketGenerator;
 import org.dimdev.dimdoors.rift.registry.LinkProperties;
+import org.dimdev.dimdoors.rift.registry.RandomTargetIndex;
 import org.dimdev.dimdoors.rift.registry.Rift;
 import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
-public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTarget subclass
+public class RandomTarget extends VirtualTarget implements AsyncEntityTarget { // TODO: Split into DungeonTarget subclass
 	private final float newRiftWeight;
 	private final double weightMaximum;
 	private final double coordFactor;
@@ -38,6 +40,7 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
 	private final Set<Integer> acceptedGroups;
 	private final boolean noLink;
 	private final boolean noLinkBack;
+	private CompletableFuture<Target> pendingTarget; // so entities arriving while it is picked share one link
 
 	public RandomTarget(float newRiftWeight, double weightMaximum, double coordFactor, double positiveDepthFactor, double negativeDepthFactor, Set<Integer> acceptedGroups, boolean noLink, boolean noLinkBack) {
 		this.newRiftWeight = newRiftWeight;
@@ -56,51 +59,53 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
 
 	@Override
 	public Target receiveOther() { // TODO: Wrap rather than replace
-		VirtualLocation virtualLocationHere = VirtualLocation.fromLocation(this.location);
-
-		Map<Location, Float> riftWeights = new HashMap<>();
-		if (this.newRiftWeight > 0) riftWeights.put(null, this.newRiftWeight);
-
-		for (Rift otherRift : DimensionalRegistry.getRiftRegistry().getRifts()) {
-			VirtualLocation otherVirtualLocation = VirtualLocation.fromLocation(otherRift.getLocation());
-			if (otherRift.getProperties() == null) continue;
-			double otherWeight = otherRift.isDetached() ? otherRift.getProperties().floatingWeight : otherRift.getProperties().getEntranceWeight();
-			if (otherWeight == 0 || Sets.intersection(this.acceptedGroups, otherRift.getProperties().getGroups()).isEmpty())
-				continue;
-
-			// Calculate the distance as sqrt((coordFactor * coordDistance)^2 + (depthFactor * depthDifference)^2)
-			if (otherRift.getProperties().getLinksRemaining() == 0) continue;
-			double depthDifference = otherVirtualLocation.getDepth() - virtualLocationHere.getDepth();
-			double coordDistance = Math.sqrt(this.sq(otherVirtualLocation.getX() - virtualLocationHere.getX())
-					+ this.sq(otherVirtualLocation.getZ() - virtualLocationHere.getZ()));
-			double depthFactor = depthDifference > 0 ? this.positiveDepthFactor : this.negativeDepthFactor;
-			double distance = Math.sqrt(this.sq(this.coordFactor * coordDistance) + this.sq(depthFactor * depthDifference));
-
-			// Calculate the weight as 4m/pi w/(m^2/d + d)^2. This is similar to how gravitational/electromagnetic attraction
-			// works in physics (G m1 m2/d^2 and k_e m1 m2/d^2). Even though we add a depth dimension to the world, we keep
-			// the weight inversly proportionally to the area of a sphere (the square of the distance) rather than a
-			// hypersphere (the cube of the area) because the y coordinate does not matter for now. We use m^2/d + d
-			// rather than d such that the probability near 0 tends to 0 rather than infinity. f(m^2/d) is a special case
-			// of f((m^(a+1)/a)/d^a). m is the location of f's maximum. The constant 4m/pi makes it such that a newRiftWeight
-			// of 1 is equivalent to having a total link weight of 1 distributed equally across all layers.
-			// TODO: We might want an a larger than 1 to make the function closer to 1/d^2
-			double weight = 4 * this.weightMaximum / Math.PI * otherWeight / this.sq(this.sq(this.weightMaximum) / distance + distance);
-			riftWeights.put(otherRift.getLocation(), (float) weight);
-		}
+		Rift selectedRift = this.sampleRift();
+		if (selectedRift != null) return this.linkSelected(selectedRift.getLocation());
+		return this.mayCreateRift() ? this.createRift(this.pickVirtualLocation()) : null; // Without candidates a new rift may not always be created
+	}
 
-		Location selectedLink;
-		if (riftWeights.size() == 0) {
-			if (this.newRiftWeight == -1) {
-				selectedLink = null;
-			} else {
-				return null;
-			}
-		} else {
-			selectedLink = MathUtil.weightedRandom(riftWeights);
+	/**
+	 * Picks the link at the end of the tick, since that may generate a pocket. The chunks of this rift, of the
+	 * selected one and of a new overworld rift are waited for rather than loaded, before their block entities are linked.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		if (this.pendingTarget == null) {
+			this.pendingTarget = PendingTeleports.loadChunk(this.location)
+					.thenCompose(loaded -> PendingTeleports.atEndOfTick(this::sampleRift))
+					.<Target>thenCompose(selectedRift -> {
+						if (selectedRift != null) {
+							Location selectedLink = selectedRift.getLocation();
+							return PendingTeleports.loadChunk(selectedLink).thenApply(loaded -> this.linkSelected(selectedLink));
+						}
+						if (!this.mayCreateRift()) return CompletableFuture.completedFuture(null);
+
+						VirtualLocation virtualLocation = this.pickVirtualLocation();
+						if (virtualLocation.getDepth() > 0) return CompletableFuture.completedFuture(this.createRift(virtualLocation));
+						// The rift is placed on the surface of the world, at a chunk that may not be loaded yet
+						Location surface = new Location(virtualLocation.getWorld(), new BlockPos(virtualLocation.getX(), 0, virtualLocation.getZ()));
+						return PendingTeleports.loadChunk(surface).thenApply(loaded -> this.createRift(virtualLocation));
+					})
+					.whenComplete((target, e) -> this.pendingTarget = null);
 		}
+		return this.pendingTarget.thenApply(target -> target != null ? target.as(Targets.ENTITY) : DefaultTargets.getDefaultTarget(Targets.ENTITY));
+	}
+
+	private Rift sampleRift() {
+		VirtualLocation virtualLocationHere = DimensionalRegistry.getRiftRegistry().getVirtualLocation(this.location);
+
+		RandomTargetIndex.Query query = new RandomTargetIndex.Query(virtualLocationHere.getX(), virtualLocationHere.getZ(), virtualLocationHere.getDepth(),
+				this.acceptedGroups, this.weightMaximum, this.coordFactor, this.positiveDepthFactor, this.negativeDepthFactor);
+		return DimensionalRegistry.getRiftRegistry().sampleRandomTarget(query, Math.max(this.newRiftWeight, 0), ThreadLocalRandom.current());
+	}
+
+	private boolean mayCreateRift() {
+		return this.newRiftWeight > 0 || this.newRiftWeight == -1;
+	}
+
+	private VirtualLocation pickVirtualLocation() {
+		VirtualLocation virtualLocationHere = DimensionalRegistry.getRiftRegistry().getVirtualLocation(this.location);
 
-		// Check if we have to generate a new rift
-		if (selectedLink == null) {
 //             Randomly select a distance from the distribution f(x) = 1/(m^2/x + x)^2. We use the same distribution as the
 //             weighting function. The idea is that there is some kind of "field" formed by the rift, with the field's
 //             intensity decreasing proportionally to the area of the sphere. The product of the area of the sphere and
@@ -119,63 +124,66 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
 //             Show[ListPlot[table], Plot[fit[x], {x, 0, 1}]]
 //             Clear[m];
 //             inverseCummulativeNormalizedDistribution = Normal[fit]
-			double r = Math.random();
-			double distance = this.weightMaximum * (2 * Math.tan(Math.PI / 2 * r) - 0.5578284481138029 * Math.sqrt(r) * Math.log(r));
-
-			// Randomly split the vector into depth, x, and z components
-			// TODO: Two random angles isn't a uniformly random direction! Use random vector, normalize, add depth offset, scale xz, scale depth.
-			double theta = Math.random() * Math.PI; // Angle between vector and xz plane
-			double phi = Math.random() * Math.PI;  // Angle of the vector on the xz plane relative to the x axis
-			double depth = distance * Math.sin(theta);
-			depth /= depth > 0 ? this.positiveDepthFactor : this.negativeDepthFactor;
-			double x = Math.cos(theta) * Math.cos(phi) * distance / this.coordFactor;
-			double z = Math.cos(theta) * Math.sin(phi) * distance / this.coordFactor;
-			VirtualLocation virtualLocation = new VirtualLocation(virtualLocationHere.getWorld(),
-					virtualLocationHere.getX() + (int) Math.round(x),
-					virtualLocationHere.getZ() + (int) Math.round(z),
-					virtualLocationHere.getDepth() + (int) Math.round(depth));
-
-			if (virtualLocation.getDepth() <= 0) {
-				// This will lead to the overworld
-				ServerWorld world = DimensionalDoors.getWorld(virtualLocation.getWorld());
-				BlockPos pos = world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, new BlockPos(virtualLocation.getX(), 0, virtualLocation.getZ()));
-				if (pos.getY() == -1) {
-					// No blocks at that XZ (hole in bedrock)
-					pos = new BlockPos(virtualLocation.getX(), 0, virtualLocation.getX());
-				}
-				world.setBlockState(pos, ModBlocks.DETACHED_RIFT.getDefaultState());
-
-				RiftBlockEntity thisRift = (RiftBlockEntity) this.location.getBlockEntity();
-				DetachedRiftBlockEntity riftEntity = (DetachedRiftBlockEntity) world.getBlockEntity(pos);
-				// TODO: Should the rift not be configured like the other link
-				riftEntity.setProperties(thisRift.getProperties().toBuilder().linksRemaining(1).build());
-
-				if (!this.noLinkBack && !riftEntity.getProperties().isOneWay())
-					linkRifts(new Location(world, pos), this.location);
-				if (!this.noLink) linkRifts(this.location, new Location(world, pos));
-				return riftEntity.as(Targets.ENTITY);
-			} else {
-				// Make a new dungeon pocket
-				RiftBlockEntity thisRift = (RiftBlockEntity) this.location.getBlockEntity();
-				LinkProperties newLink = thisRift.getProperties() != null ? thisRift.getProperties().toBuilder().linksRemaining(0).build() : null;
-				Pocket pocket = PocketGenerator.generateDungeonPocketV2(virtualLocation, new GlobalReference(!this.noLinkBack ? this.location : null), newLink); // TODO make the generated dungeon of the same type, but in the overworld
-
-				// Link the rift if necessary and teleport the entity
-				if (!this.noLink)
-					linkRifts(this.location, DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket));
-				return (Target) DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket).getBlockEntity();
+		double r = Math.random();
+		double distance = this.weightMaximum * (2 * Math.tan(Math.PI / 2 * r) - 0.5578284481138029 * Math.sqrt(r) * Math.log(r));
+
+		// Randomly split the vector into depth, x, and z components
+		// TODO: Two random angles isn't a uniformly random direction! Use random vector, normalize, add depth offset, scale xz, scale depth.
+		double theta = Math.random() * Math.PI; // Angle between vector and xz plane
+		double phi = Math.random() * Math.PI;  // Angle of the vector on the xz plane relative to the x axis
+		double depth = distance * Math.sin(theta);
+		depth /= depth > 0 ? this.positiveDepthFactor : this.negativeDepthFactor;
+		double x = Math.cos(theta) * Math.cos(phi) * distance / this.coordFactor;
+		double z = Math.cos(theta) * Math.sin(phi) * distance / this.coordFactor;
+		return new VirtualLocation(virtualLocationHere.getWorld(),
+				virtualLocationHere.getX() + (int) Math.round(x),
+				virtualLocationHere.getZ() + (int) Math.round(z),
+				virtualLocationHere.getDepth() + (int) Math.round(depth));
+	}
+
+	private Target createRift(VirtualLocation virtualLocation) {
+		if (virtualLocation.getDepth() <= 0) {
+			// This will lead to the overworld
+			ServerWorld world = DimensionalDoors.getWorld(virtualLocation.getWorld());
+			BlockPos pos = world.getTopPosition(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, new BlockPos(virtualLocation.getX(), 0, virtualLocation.getZ()));
+			if (pos.getY() == -1) {
+				// No blocks at that XZ (hole in bedrock)
+				pos = new BlockPos(virtualLocation.getX(), 0, virtualLocation.getX());
 			}
-		} else {
-			// An existing rift was selected
-			RiftBlockEntity riftEntity = (RiftBlockEntity) selectedLink.getBlockEntity();
+			world.setBlockState(pos, ModBlocks.DETACHED_RIFT.getDefaultState());
+
+			RiftBlockEntity thisRift = (RiftBlockEntity) this.location.getBlockEntity();
+			DetachedRiftBlockEntity riftEntity = (DetachedRiftBlockEntity) world.getBlockEntity(pos);
+			// TODO: Should the rift not be configured like the other link
+			riftEntity.setProperties(thisRift.getProperties().toBuilder().linksRemaining(1).build());
 
-			// Link the rifts if necessary and teleport the entity
-			if (!this.noLink) linkRifts(this.location, selectedLink);
-			if (!this.noLinkBack && !riftEntity.getProperties().isOneWay()) linkRifts(selectedLink, this.location);
-			return riftEntity;
+			if (!this.noLinkBack && !riftEntity.getProperties().isOneWay())
+				linkRifts(new Location(world, pos), this.location);
+			if (!this.noLink) linkRifts(this.location, new Location(world, pos));
+			return riftEntity.as(Targets.ENTITY);
+		} else {
+			// Make a new dungeon pocket
+			RiftBlockEntity thisRift = (RiftBlockEntity) this.location.getBlockEntity();
+			LinkProperties newLink = thisRift.getProperties() != null ? thisRift.getProperties().toBuilder().linksRemaining(0).build() : null;
+			Pocket pocket = PocketGenerator.generateDungeonPocketV2(virtualLocation, new GlobalReference(!this.noLinkBack ? this.location : null), newLink); // TODO make the generated dungeon of the same type, but in the overworld
+
+			// Link the rift if necessary and teleport the entity
+			if (!this.noLink)
+				linkRifts(this.location, DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket));
+			return (Target) DimensionalRegistry.getRiftRegistry().getPocketEntrance(pocket).getBlockEntity();
 		}
 	}
 
+	private Target linkSelected(Location selectedLink) {
+		// The selected rift may have been removed while its chunk was loading
+		if (!(selectedLink.getBlockEntity() instanceof RiftBlockEntity riftEntity)) return null;
+
+		// Link the rifts if necessary and teleport the entity
+		if (!this.noLink) linkRifts(this.location, selectedLink);
+		if (!this.noLinkBack && !riftEntity.getProperties().isOneWay()) linkRifts(selectedLink, this.location);
+		return riftEntity;
+	}
+
 	protected Pocket generatePocket(VirtualLocation location, GlobalReference linkTo, LinkProperties props) {
 		return PocketGenerator.generateDungeonPocketV2(location, linkTo, props);
 	}
@@ -192,10 +200,6 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
 		}
 	}
 
-	private double sq(double a) {
-		return a * a;
-	}
-
 	public float getNewRiftWeight() {
 		return this.newRiftWeight;
 	}
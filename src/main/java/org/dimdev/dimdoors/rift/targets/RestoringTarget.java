@@ -1,10 +1,19 @@
 package org.dimdev.dimdoors.rift.targets;
 
+import java.util.concurrent.CompletableFuture;
+
+import net.minecraft.entity.Entity;
+
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
+import org.dimdev.dimdoors.api.rift.target.DefaultTargets;
+import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.rift.target.Target;
 import org.dimdev.dimdoors.api.util.Location;
 import org.dimdev.dimdoors.api.util.RGBA;
 
-public abstract class RestoringTarget extends VirtualTarget {
+public abstract class RestoringTarget extends VirtualTarget implements AsyncEntityTarget {
+	private CompletableFuture<Location> pendingLinkTarget; // so entities arriving while it is made share one link target
+
 	public RestoringTarget() {
 	}
 
@@ -14,7 +23,31 @@ public abstract class RestoringTarget extends VirtualTarget {
 			return this.getTarget();
 		}
 
-		Location linkTarget = this.makeLinkTarget();
+		return this.link(this.makeLinkTarget());
+	}
+
+	/**
+	 * Makes the link target at the end of the tick instead of inside the collision with the rift,
+	 * and waits for its chunk to load.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		if (this.getTarget() != null) {
+			return AsyncEntityTarget.resolve(this.getTarget(), entity);
+		}
+
+		if (this.pendingLinkTarget == null) {
+			this.pendingLinkTarget = PendingTeleports.atEndOfTick(this::makeLinkTarget)
+					.thenCompose(linkTarget -> linkTarget != null ? PendingTeleports.loadChunk(linkTarget).thenApply(loaded -> linkTarget) : CompletableFuture.completedFuture(null))
+					.whenComplete((linkTarget, e) -> this.pendingLinkTarget = null);
+		}
+		return this.pendingLinkTarget.thenCompose(linkTarget -> {
+			Target target = this.getTarget() != null ? this.getTarget() : this.link(linkTarget);
+			return target != null ? AsyncEntityTarget.resolve(target, entity) : CompletableFuture.completedFuture(DefaultTargets.getDefaultTarget(Targets.ENTITY));
+		});
+	}
+
+	private Target link(Location linkTarget) {
 		if (linkTarget != null) {
 			this.setTarget(RiftReference.tryMakeLocal(this.location, linkTarget));
 			this.getTarget().setLocation(linkTarget);
@@ -42,6 +75,11 @@ public abstract class RestoringTarget extends VirtualTarget {
 		}
 	}
 
+	@Override
+	public Location getResolvedLocation() {
+		return this.getTarget() != null ? this.getTarget().getResolvedLocation() : null;
+	}
+
 	@Override
 	public void unregister() {
 		if (this.getTarget() != null) this.getTarget().unregister();
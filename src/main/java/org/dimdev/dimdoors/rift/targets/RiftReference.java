@@ -1,9 +1,14 @@
 package org.dimdev.dimdoors.rift.targets;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import net.minecraft.entity.Entity;
+import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.math.Vec3i;
 
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
+import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 import org.dimdev.dimdoors.api.rift.target.Target;
 import org.dimdev.dimdoors.api.util.Location;
 import org.dimdev.dimdoors.api.util.RGBA;
@@ -18,7 +23,7 @@ import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
  * such that when the target rift is gone, the destination is notified and invalidated
  * (see shouldInvalidate)
  */
-public abstract class RiftReference extends VirtualTarget {
+public abstract class RiftReference extends VirtualTarget implements AsyncEntityTarget {
 	public RiftReference() {
 	}
 
@@ -42,11 +47,23 @@ public abstract class RiftReference extends VirtualTarget {
 
 	public abstract Location getReferencedLocation();
 
+	@Override
+	public Location getResolvedLocation() {
+		return this.getReferencedLocation();
+	}
+
 	@Override
 	public Target receiveOther() {
 		return (Target) this.getReferencedLocation().getBlockEntity();
 	}
 
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		if (entity instanceof ServerPlayerEntity) DestinationPreloader.recordTraversal(this.getReferencedLocation());
+		// Only follows the reference once the rift's chunk is loaded
+		return PendingTeleports.loadChunk(this.getReferencedLocation()).thenApply(loaded -> this.as(Targets.ENTITY));
+	}
+
 	@Override
 	public void register() {
 		DimensionalRegistry.getRiftRegistry().addLink(this.location, this.getReferencedLocation());
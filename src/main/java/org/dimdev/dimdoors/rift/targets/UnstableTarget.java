@@ -1,15 +1,17 @@
 package org.dimdev.dimdoors.rift.targets;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.util.math.EulerAngle;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.random.Random;
 
+import org.dimdev.dimdoors.api.rift.target.AsyncEntityTarget;
 import org.dimdev.dimdoors.api.rift.target.EntityTarget;
 
-public class UnstableTarget extends VirtualTarget implements EntityTarget {
+public class UnstableTarget extends VirtualTarget implements EntityTarget, AsyncEntityTarget {
 	private static final Random RANDOM = Random.create();
 
 	@Override
@@ -17,23 +19,39 @@ public class UnstableTarget extends VirtualTarget implements EntityTarget {
 		return VirtualTargetType.UNSTABLE;
 	}
 
+	/**
+	 * Picks where the entity goes right away, and resolves a random link the way {@link RandomTarget} does.
+	 */
+	@Override
+	public CompletableFuture<EntityTarget> resolveEntityTarget(Entity entity) {
+		if (RANDOM.nextBoolean()) return AsyncEntityTarget.resolve(this.createRandomTarget(), entity);
+		return CompletableFuture.completedFuture(LimboTarget.INSTANCE);
+	}
+
 	@Override
 	public boolean receiveEntity(Entity entity, Vec3d relativePos, EulerAngle relativeAngle, Vec3d relativeVelocity) {
 		if (RANDOM.nextBoolean()) {
-			return RandomTarget.builder()
-					.acceptedGroups(Collections.singleton(0))
-					.coordFactor(1)
-					.negativeDepthFactor(10000)
-					.positiveDepthFactor(80)
-					.weightMaximum(100)
-					.noLink(false)
-					.noLinkBack(false)
-					.newRiftWeight(1)
-					.build()
+			return this.createRandomTarget()
 					.as(Targets.ENTITY)
 					.receiveEntity(entity, relativePos, relativeAngle, relativeVelocity);
 		}
 
 		return LimboTarget.INSTANCE.receiveEntity(entity, relativePos, relativeAngle, relativeVelocity);
 	}
+
+	private RandomTarget createRandomTarget() {
+		RandomTarget target = RandomTarget.builder()
+				.acceptedGroups(Collections.singleton(0))
+				.coordFactor(1)
+				.negativeDepthFactor(10000)
+				.positiveDepthFactor(80)
+				.weightMaximum(100)
+				.noLink(false)
+				.noLinkBack(false)
+				.newRiftWeight(1)
+				.build();
+		// The random link is made from the rift the entity entered
+		target.setLocation(this.location);
+		return target;
+	}
 }
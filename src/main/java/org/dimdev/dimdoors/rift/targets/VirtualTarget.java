@@ -82,6 +82,13 @@ public abstract class VirtualTarget implements Target {
 		return this.location;
 	}
 
+	/**
+	 * @return where entities sent to this target end up, if that is known without generating or loading anything
+	 */
+	public Location getResolvedLocation() {
+		return null;
+	}
+
 	public boolean isDummy() {
 		return false;
 	}
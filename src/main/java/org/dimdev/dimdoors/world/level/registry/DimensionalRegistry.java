@@ -1,36 +1,86 @@
 package org.dimdev.dimdoors.world.level.registry;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import dev.onyxstudios.cca.api.v3.component.ComponentV3;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Pair;
 import net.minecraft.world.World;
 import net.minecraft.world.level.LevelProperties;
 
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.dimdev.dimdoors.DimensionalDoors;
 import org.dimdev.dimdoors.DimensionalDoorsComponents;
+import org.dimdev.dimdoors.pockets.SchematicPlacementQueue;
+import org.dimdev.dimdoors.rift.registry.RiftJournal;
 import org.dimdev.dimdoors.rift.registry.RiftRegistry;
+import org.dimdev.dimdoors.rift.registry.RiftShard;
+import org.dimdev.dimdoors.rift.registry.RiftUpdateQueue;
 import org.dimdev.dimdoors.world.ModDimensions;
 import org.dimdev.dimdoors.world.pocket.PocketDirectory;
+import org.dimdev.dimdoors.world.pocket.PocketPool;
 import org.dimdev.dimdoors.world.pocket.PrivateRegistry;
 
 import static org.dimdev.dimdoors.DimensionalDoors.getServer;
 
 public class DimensionalRegistry implements ComponentV3 {
-	public static final int RIFT_DATA_VERSION = 1; // Increment this number every time a new schema is added
+	private static final Logger LOGGER = LogManager.getLogger();
+	public static final int RIFT_DATA_VERSION = 2; // Increment this number every time a new schema is added
+	// The level component of the running server, so the registries are not looked up on every access
+	private static DimensionalRegistry cachedInstance;
 	private Map<RegistryKey<World>, PocketDirectory> pocketRegistry = new HashMap<>();
-	private RiftRegistry riftRegistry = new RiftRegistry();
+	private RiftRegistry riftRegistry = new RiftRegistry(pocketRegistry);
 	private PrivateRegistry privateRegistry = new PrivateRegistry();
+	private PocketPool pocketPool = new PocketPool();
+	private SchematicPlacementQueue schematicPlacements = new SchematicPlacementQueue();
+	private RiftUpdateQueue riftUpdates = new RiftUpdateQueue();
+
+	// Level properties are read before the server exists, so the shards can only be located once it is starting.
+	private RegistryStorage storage;
+	private RiftJournal journal;
+	// Whether the registries were read from level.dat and have not been written to the storage yet
+	private boolean legacy = false;
+	private long saveCount = 0;
+	// Saves captured before a failed save was marked dirty again may not drop the rotated rift journals
+	private long firstCompleteSave = 0;
+	// Rift files of pocket worlds from before they were sharded by pocket, deleted once their shards are written
+	private List<Path> legacyRiftFiles = new ArrayList<>();
+
+	public static void init() {
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+			cachedInstance = instance();
+			cachedInstance.load(RegistryStorage.of(server));
+		});
+		// Virtual locations of rifts can only be resolved once the worlds are loaded
+		ServerLifecycleEvents.SERVER_STARTED.register(server -> instance().riftRegistry.buildRandomTargetIndex());
+		ServerTickEvents.END_SERVER_TICK.register(server -> instance().flushJournal());
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			instance().close();
+			cachedInstance = null;
+		});
+	}
 
 	@Override
 	public void readFromNbt(NbtCompound nbt) {
@@ -41,6 +91,9 @@ public class DimensionalRegistry implements ComponentV3 {
 			throw new UnsupportedOperationException("Downgrading is not supported!");
 		}
 
+		if (!nbt.contains("rift_registry")) return; // stored in its own files, see RegistryStorage
+		this.legacy = true;
+
 		NbtCompound pocketRegistryNbt = nbt.getCompound("pocket_registry");
 		CompletableFuture<Map<RegistryKey<World>, PocketDirectory>> futurePocketRegistry = CompletableFuture.supplyAsync(() -> pocketRegistryNbt.getKeys().stream().map(key -> {
 					NbtCompound pocketDirectoryNbt = pocketRegistryNbt.getCompound(key);
@@ -65,25 +118,255 @@ public class DimensionalRegistry implements ComponentV3 {
 
 	@Override
 	public void writeToNbt(NbtCompound nbt) {
-		CompletableFuture<NbtElement> futurePocketRegistryNbt = CompletableFuture.supplyAsync(() -> {
-			List<CompletableFuture<Pair<String, NbtElement>>> futurePocketRegistryNbts = new ArrayList<>();
-			pocketRegistry.forEach((key, value) -> futurePocketRegistryNbts.add(CompletableFuture.supplyAsync(() -> new Pair<>(key.getValue().toString(), value.writeToNbt()))));
-			NbtCompound pocketRegistryNbt = new NbtCompound();
-			futurePocketRegistryNbts.parallelStream().unordered().map(CompletableFuture::join).collect(Collectors.toConcurrentMap(Pair::getLeft, Pair::getRight)).forEach(pocketRegistryNbt::put);
-			return pocketRegistryNbt;
-		});
+		if (this.storage != null) {
+			CompletableFuture<Boolean> saved = this.save();
+			// Only wait for the first save after the migration, level.dat must not be written without the old layout before it finished
+			if (this.legacy && saved.join()) {
+				this.legacy = false;
+			}
+		}
 
-		CompletableFuture<NbtElement> futureRiftRegistryNbt = CompletableFuture.supplyAsync(riftRegistry::toNbt);
-		CompletableFuture<NbtElement> futurePrivateRegistryNbt = CompletableFuture.supplyAsync(() -> privateRegistry.toNbt(new NbtCompound()));
+		// Keep the old layout around until the storage holds a complete copy
+		if (this.legacy) {
+			CompletableFuture<NbtElement> futurePocketRegistryNbt = CompletableFuture.supplyAsync(() -> {
+				List<CompletableFuture<Pair<String, NbtElement>>> futurePocketRegistryNbts = new ArrayList<>();
+				pocketRegistry.forEach((key, value) -> futurePocketRegistryNbts.add(CompletableFuture.supplyAsync(() -> new Pair<>(key.getValue().toString(), value.writeToNbt()))));
+				NbtCompound pocketRegistryNbt = new NbtCompound();
+				futurePocketRegistryNbts.parallelStream().unordered().map(CompletableFuture::join).collect(Collectors.toConcurrentMap(Pair::getLeft, Pair::getRight)).forEach(pocketRegistryNbt::put);
+				return pocketRegistryNbt;
+			});
 
-		nbt.put("pocket_registry", futurePocketRegistryNbt.join());
-		nbt.put("rift_registry", futureRiftRegistryNbt.join());
-		nbt.put("private_registry", futurePrivateRegistryNbt.join());
+			CompletableFuture<NbtElement> futureRiftRegistryNbt = CompletableFuture.supplyAsync(riftRegistry::toNbt);
+			CompletableFuture<NbtElement> futurePrivateRegistryNbt = CompletableFuture.supplyAsync(() -> privateRegistry.toNbt(new NbtCompound()));
+
+			nbt.put("pocket_registry", futurePocketRegistryNbt.join());
+			nbt.put("rift_registry", futureRiftRegistryNbt.join());
+			nbt.put("private_registry", futurePrivateRegistryNbt.join());
+		}
 
 		nbt.putInt("RiftDataVersion", RIFT_DATA_VERSION);
 	}
 
+	private void load(RegistryStorage storage) {
+		this.storage = storage;
+		this.journal = new RiftJournal(storage.getRiftJournalFile(), storage.getWriter());
+
+		if (this.legacy) {
+			LOGGER.info("Moving the dimensional registry out of level.dat into " + storage.getRoot());
+			this.pocketRegistry.values().forEach(PocketDirectory::markAllDirty);
+			this.riftRegistry.markAllDirty();
+			this.privateRegistry.setDirty(true);
+		} else if (storage.exists()) {
+			this.readStorage();
+		}
+
+		if (DimensionalDoors.getConfig().getGeneralConfig().riftJournal) {
+			this.riftRegistry.setJournal(this.journal);
+		}
+	}
+
+	private void close() {
+		if (this.storage == null) return;
+		try {
+			if (!this.storage.close()) LOGGER.error("Timed out waiting for the dimensional registry to be saved");
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted while waiting for the dimensional registry to be saved", e);
+		}
+	}
+
+	private void readStorage() {
+		try {
+			Map<RegistryKey<World>, CompletableFuture<PocketDirectory>> futureDirectories = new HashMap<>();
+			for (RegistryKey<World> world : storage.listPocketDirectories()) {
+				List<CompletableFuture<NbtCompound>> futureShards = storage.listPocketShards(world).stream()
+						.map(shard -> this.readAsync(storage.getPocketShardFile(world, shard)))
+						.collect(Collectors.toList());
+				futureDirectories.put(world, this.readAsync(storage.getPocketDirectoryFile(world)).thenApply(nbt -> {
+					PocketDirectory directory = PocketDirectory.readFromNbt(world.getValue().toString(), nbt);
+					futureShards.forEach(futureShard -> directory.readShardFromNbt(futureShard.join()));
+					return directory;
+				}));
+			}
+
+			// A pocket world saved in one rift file is read from it, its shards may only have been written partly
+			List<RiftShard> riftShards = storage.listRiftShards();
+			Set<RegistryKey<World>> legacyRiftWorlds = riftShards.stream()
+					.filter(shard -> shard.isWholeWorld() && ModDimensions.isPocketDimension(shard.world()))
+					.map(RiftShard::world)
+					.collect(Collectors.toSet());
+			List<CompletableFuture<NbtCompound>> futureRiftShards = riftShards.stream()
+					.filter(shard -> shard.isWholeWorld() || !legacyRiftWorlds.contains(shard.world()))
+					.map(shard -> this.readAsync(storage.getRiftShardFile(shard)))
+					.collect(Collectors.toList());
+			CompletableFuture<NbtCompound> futurePlayers = this.readAsync(storage.getPlayersFile());
+			CompletableFuture<NbtCompound> futurePrivateRegistry = this.readAsync(storage.getPrivateRegistryFile());
+			CompletableFuture<NbtCompound> futurePocketPool = this.readAsync(storage.getPocketPoolFile());
+			CompletableFuture<NbtCompound> futureSchematicPlacements = this.readAsync(storage.getSchematicPlacementsFile());
+			CompletableFuture<NbtCompound> futureRiftUpdates = this.readAsync(storage.getRiftUpdatesFile());
+
+			Map<RegistryKey<World>, PocketDirectory> pocketRegistry = new HashMap<>();
+			futureDirectories.forEach((world, futureDirectory) -> pocketRegistry.put(world, futureDirectory.join()));
+			this.pocketRegistry = pocketRegistry;
+
+			this.riftRegistry = RiftRegistry.fromShards(pocketRegistry, futureRiftShards.stream().map(CompletableFuture::join).collect(Collectors.toList()), futurePlayers.join());
+			for (RegistryKey<World> world : legacyRiftWorlds) {
+				this.riftRegistry.markDirty(world);
+				// Shards without any rifts left must not be read back with stale ones either
+				riftShards.stream().filter(shard -> shard.world().equals(world) && !shard.isWholeWorld()).forEach(this.riftRegistry::markDirty);
+				this.legacyRiftFiles.add(storage.getRiftShardFile(RiftShard.of(world)));
+			}
+
+			this.privateRegistry = new PrivateRegistry();
+			this.privateRegistry.fromNbt(futurePrivateRegistry.join());
+
+			this.pocketPool = new PocketPool();
+			this.pocketPool.fromNbt(futurePocketPool.join());
+
+			this.schematicPlacements = new SchematicPlacementQueue();
+			this.schematicPlacements.fromNbt(futureSchematicPlacements.join());
+
+			this.riftUpdates = new RiftUpdateQueue();
+			this.riftUpdates.fromNbt(futureRiftUpdates.join());
+
+			// Replaying marks the touched rift files dirty, so they are written at the next compaction
+			int records = this.journal.replay(this.riftRegistry, pocketRegistry);
+			if (records > 0) LOGGER.info("Replayed " + records + " rift journal records");
+		} catch (IOException | CompletionException | IllegalStateException e) {
+			// Better to not start at all than to start with an empty registry and overwrite the good shards
+			throw new RuntimeException("Could not load the dimensional registry from " + storage.getRoot(), e);
+		}
+	}
+
+	private CompletableFuture<NbtCompound> readAsync(Path file) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return this.storage.read(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Captures every shard that changed since the last save and writes them on the writer thread of the storage.
+	 * Only the capture happens on the server thread, encoding and compressing the shards does not.
+	 *
+	 * @return whether all of them could be written
+	 */
+	private CompletableFuture<Boolean> save() {
+		List<Shard> shards = new ArrayList<>();
+
+		pocketRegistry.forEach((world, directory) -> {
+			if (directory.isDirty()) {
+				directory.setDirty(false);
+				NbtCompound nbt = directory.writeMetaToNbt();
+				shards.add(new Shard(storage.getPocketDirectoryFile(world), () -> nbt, () -> directory.setDirty(true)));
+			}
+			for (int shard : directory.pollDirtyShards()) {
+				NbtCompound nbt = directory.writeShardToNbt(shard);
+				shards.add(new Shard(storage.getPocketShardFile(world, shard), () -> nbt, () -> directory.markDirty(shard * PocketDirectory.SHARD_SIZE)));
+			}
+		});
+
+		// With the journal enabled the rift files are only rewritten once the journal grew large enough
+		this.flushJournal();
+		boolean compact = riftRegistry.getJournal() == null || this.legacy || this.journal.hasFailed() || this.journal.size() > DimensionalDoors.getConfig().getGeneralConfig().riftJournalCompactionSize * 1024L;
+		long journalGeneration = -1;
+		if (compact) {
+			riftRegistry.snapshotDirtyShards().forEach((shard, nbt) -> shards.add(new Shard(storage.getRiftShardFile(shard), nbt, () -> riftRegistry.markDirty(shard))));
+			if (riftRegistry.isPlayersDirty()) {
+				NbtCompound nbt = riftRegistry.playersToNbt();
+				shards.add(new Shard(storage.getPlayersFile(), () -> nbt, riftRegistry::markPlayersDirty));
+			}
+			journalGeneration = this.journal.rotate();
+		}
+
+		if (privateRegistry.isDirty()) {
+			privateRegistry.setDirty(false);
+			NbtCompound nbt = privateRegistry.toNbt(new NbtCompound());
+			shards.add(new Shard(storage.getPrivateRegistryFile(), () -> nbt, () -> privateRegistry.setDirty(true)));
+		}
+
+		if (pocketPool.isDirty()) {
+			pocketPool.setDirty(false);
+			NbtCompound nbt = pocketPool.toNbt(new NbtCompound());
+			shards.add(new Shard(storage.getPocketPoolFile(), () -> nbt, () -> pocketPool.setDirty(true)));
+		}
+
+		if (schematicPlacements.isDirty()) {
+			schematicPlacements.setDirty(false);
+			NbtCompound nbt = schematicPlacements.toNbt(new NbtCompound());
+			shards.add(new Shard(storage.getSchematicPlacementsFile(), () -> nbt, () -> schematicPlacements.setDirty(true)));
+		}
+
+		if (riftUpdates.isDirty()) {
+			riftUpdates.setDirty(false);
+			NbtCompound nbt = riftUpdates.toNbt(new NbtCompound());
+			shards.add(new Shard(storage.getRiftUpdatesFile(), () -> nbt, () -> riftUpdates.setDirty(true)));
+		}
+
+		long save = this.saveCount++;
+		long generation = journalGeneration;
+		MinecraftServer server = getServer();
+		return CompletableFuture.supplyAsync(() -> {
+			List<Shard> failed = shards.parallelStream().filter(shard -> !this.write(shard.file(), shard.nbt().get())).collect(Collectors.toList());
+			server.execute(() -> this.onSaved(save, compact, generation, failed));
+			if (!failed.isEmpty()) return false;
+
+			// Written last, so the storage only counts as present once everything else is
+			if (!storage.exists()) {
+				NbtCompound versionNbt = new NbtCompound();
+				versionNbt.putInt("RiftDataVersion", RIFT_DATA_VERSION);
+				return this.write(storage.getVersionFile(), versionNbt);
+			}
+			return true;
+		}, storage.getWriter());
+	}
+
+	private void onSaved(long save, boolean compact, long journalGeneration, List<Shard> failed) {
+		if (!failed.isEmpty()) {
+			failed.forEach(shard -> shard.markDirty().run());
+			// The rotated journals still hold the changes of the failed rift files until a later save wrote them
+			this.firstCompleteSave = this.saveCount;
+		} else if (compact && save >= this.firstCompleteSave) {
+			List<Path> legacyRiftFiles = this.legacyRiftFiles;
+			this.legacyRiftFiles = new ArrayList<>();
+			storage.getWriter().execute(() -> {
+				try {
+					if (journalGeneration >= 0) this.journal.deleteRotated(journalGeneration);
+				} catch (IOException e) {
+					LOGGER.error("Could not delete the rotated rift journals", e);
+				}
+				for (Path file : legacyRiftFiles) {
+					try {
+						Files.deleteIfExists(file);
+					} catch (IOException e) {
+						LOGGER.error("Could not delete " + file, e);
+					}
+				}
+			});
+		}
+	}
+
+	private boolean write(Path file, NbtCompound nbt) {
+		try {
+			storage.write(file, nbt);
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Could not save " + file, e);
+			return false;
+		}
+	}
+
+	private void flushJournal() {
+		if (this.journal != null) this.journal.flush();
+	}
+
+	private record Shard(Path file, Supplier<NbtCompound> nbt, Runnable markDirty) {
+	}
+
 	public static DimensionalRegistry instance() {
+		if (cachedInstance != null) return cachedInstance;
 		return DimensionalDoorsComponents.DIMENSIONAL_REGISTRY_COMPONENT_KEY.get((LevelProperties) getServer().getSaveProperties());
 	}
 
@@ -95,6 +378,22 @@ public class DimensionalRegistry implements ComponentV3 {
 		return instance().privateRegistry;
 	}
 
+	public static PocketPool getPocketPool() {
+		return instance().pocketPool;
+	}
+
+	public static SchematicPlacementQueue getSchematicPlacements() {
+		return instance().schematicPlacements;
+	}
+
+	public static RiftUpdateQueue getRiftUpdates() {
+		return instance().riftUpdates;
+	}
+
+	public static RegistryStorage getStorage() {
+		return instance().storage;
+	}
+
 	public static PocketDirectory getPocketDirectory(RegistryKey<World> key) {
 		if (!(ModDimensions.isPocketDimension(key))) {
 			throw new UnsupportedOperationException("PocketRegistry is only available for pocket dimensions!");
@@ -0,0 +1,222 @@
+package org.dimdev.dimdoors.world.level.registry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.world.World;
+
+import org.dimdev.dimdoors.rift.registry.RiftShard;
+import org.dimdev.dimdoors.world.ModDimensions;
+
+/**
+ * File layout of the dimensional registry inside the world's {@code data/dimdoors} directory:
+ * <pre>
+ * registry.dat                               data version
+ * private.dat                                private pockets
+ * pool.dat                                   pockets generated ahead of time, see PocketPool
+ * placements.dat                             pocket templates which are still being placed
+ * rift_updates.dat                           updates of rifts in chunks which were not loaded, see RiftUpdateQueue
+ * players.dat                                player rift pointers
+ * rifts.journal                              rift changes since the rift files were last written, see RiftJournal
+ * rifts.journal.&lt;generation&gt;                 rift changes of a compaction whose rift files are still being written
+ * rifts/&lt;namespace&gt;/&lt;path&gt;.dat               rifts, entrances and outgoing links of one world
+ * rifts/&lt;namespace&gt;/&lt;path&gt;/&lt;shard&gt;.dat        those of the pockets of one pocket shard, for pocket worlds
+ * pockets/&lt;namespace&gt;/&lt;path&gt;/directory.dat    grid size and next ids of one pocket world
+ * pockets/&lt;namespace&gt;/&lt;path&gt;/&lt;shard&gt;.dat      pockets with ids in [shard * SHARD_SIZE, (shard + 1) * SHARD_SIZE)
+ * chunk_pockets/&lt;hash&gt;.dat                  generated terrain of chunk pockets, see ChunkPocketCache
+ * </pre>
+ */
+public class RegistryStorage {
+	private static final String EXTENSION = ".dat";
+	private static final String DIRECTORY_FILE = "directory" + EXTENSION;
+
+	private final Path root;
+	// A single thread, so the files of a save are never overwritten by the ones of an older save
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "DimDoors Registry Writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public RegistryStorage(Path root) {
+		this.root = root;
+	}
+
+	public static RegistryStorage of(MinecraftServer server) {
+		return new RegistryStorage(server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve("dimdoors"));
+	}
+
+	public Path getRoot() {
+		return this.root;
+	}
+
+	public Path getVersionFile() {
+		return this.root.resolve("registry" + EXTENSION);
+	}
+
+	public Path getPrivateRegistryFile() {
+		return this.root.resolve("private" + EXTENSION);
+	}
+
+	public Path getPocketPoolFile() {
+		return this.root.resolve("pool" + EXTENSION);
+	}
+
+	public Path getSchematicPlacementsFile() {
+		return this.root.resolve("placements" + EXTENSION);
+	}
+
+	public Path getRiftUpdatesFile() {
+		return this.root.resolve("rift_updates" + EXTENSION);
+	}
+
+	public Path getPlayersFile() {
+		return this.root.resolve("players" + EXTENSION);
+	}
+
+	public Path getRiftJournalFile() {
+		return this.root.resolve("rifts.journal");
+	}
+
+	public Path getRiftShardFile(RiftShard shard) {
+		Identifier id = shard.world().getValue();
+		Path rifts = this.root.resolve("rifts").resolve(id.getNamespace());
+		if (shard.isWholeWorld()) return rifts.resolve(id.getPath() + EXTENSION);
+		return rifts.resolve(id.getPath()).resolve(shard.pocketShard() + EXTENSION);
+	}
+
+	public Path getPocketDirectoryFile(RegistryKey<World> world) {
+		return this.getPocketFolder(world).resolve(DIRECTORY_FILE);
+	}
+
+	public Path getPocketShardFile(RegistryKey<World> world, int shard) {
+		return this.getPocketFolder(world).resolve(shard + EXTENSION);
+	}
+
+	private Path getPocketFolder(RegistryKey<World> world) {
+		Identifier id = world.getValue();
+		return this.root.resolve("pockets").resolve(id.getNamespace()).resolve(id.getPath());
+	}
+
+	public Path getChunkPocketCacheFile(String hash) {
+		return this.getChunkPocketCacheFolder().resolve(hash + EXTENSION);
+	}
+
+	public Path getChunkPocketCacheFolder() {
+		return this.root.resolve("chunk_pockets");
+	}
+
+	public boolean exists() {
+		return Files.exists(this.getVersionFile());
+	}
+
+	public List<RiftShard> listRiftShards() throws IOException {
+		Path rifts = this.root.resolve("rifts");
+		List<RiftShard> shards = new ArrayList<>();
+		if (!Files.isDirectory(rifts)) return shards;
+
+		try (Stream<Path> files = Files.walk(rifts)) {
+			files.filter(Files::isRegularFile)
+					.map(rifts::relativize)
+					.filter(file -> file.getNameCount() > 1 && file.toString().endsWith(EXTENSION))
+					.forEach(file -> {
+						String path = file.subpath(1, file.getNameCount()).toString().replace(file.getFileSystem().getSeparator(), "/");
+						shards.add(toRiftShard(file.getName(0).toString(), path.substring(0, path.length() - EXTENSION.length())));
+					});
+		}
+		return shards;
+	}
+
+	// A numbered file inside the folder of a pocket world is one of its shards, anything else a whole world
+	private static RiftShard toRiftShard(String namespace, String path) {
+		int separator = path.lastIndexOf('/');
+		if (separator > 0) {
+			RegistryKey<World> world = toWorldKey(namespace, path.substring(0, separator));
+			if (ModDimensions.isPocketDimension(world)) {
+				try {
+					return RiftShard.of(world, Integer.parseInt(path.substring(separator + 1)));
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+		return RiftShard.of(toWorldKey(namespace, path));
+	}
+
+	public List<RegistryKey<World>> listPocketDirectories() throws IOException {
+		Path pockets = this.root.resolve("pockets");
+		List<RegistryKey<World>> worlds = new ArrayList<>();
+		if (!Files.isDirectory(pockets)) return worlds;
+
+		try (Stream<Path> files = Files.walk(pockets)) {
+			files.filter(file -> file.getFileName().toString().equals(DIRECTORY_FILE))
+					.map(file -> pockets.relativize(file.getParent()))
+					.filter(folder -> folder.getNameCount() > 1)
+					.forEach(folder -> worlds.add(toWorldKey(folder.getName(0).toString(), folder.subpath(1, folder.getNameCount()).toString().replace(folder.getFileSystem().getSeparator(), "/"))));
+		}
+		return worlds;
+	}
+
+	public List<Integer> listPocketShards(RegistryKey<World> world) throws IOException {
+		List<Integer> shards = new ArrayList<>();
+		try (Stream<Path> files = Files.list(this.getPocketFolder(world))) {
+			files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(EXTENSION) && !name.equals(DIRECTORY_FILE))
+					.forEach(name -> {
+						try {
+							shards.add(Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())));
+						} catch (NumberFormatException ignored) {
+						}
+					});
+		}
+		return shards;
+	}
+
+	public NbtCompound read(Path file) throws IOException {
+		if (!Files.exists(file)) return new NbtCompound();
+		return NbtIo.readCompressed(file.toFile());
+	}
+
+	/**
+	 * Writes to a temporary file first, so a crash halfway through a save never leaves a truncated shard behind.
+	 */
+	public void write(Path file, NbtCompound nbt) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		NbtIo.writeCompressed(nbt, temp.toFile());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public Executor getWriter() {
+		return this.writer;
+	}
+
+	/**
+	 * Waits for the pending writes, to be called once the server stopped.
+	 *
+	 * @return whether all of them finished in time
+	 */
+	public boolean close() throws InterruptedException {
+		this.writer.shutdown();
+		return this.writer.awaitTermination(5, TimeUnit.MINUTES);
+	}
+
+	private static RegistryKey<World> toWorldKey(String namespace, String path) {
+		return RegistryKey.of(RegistryKeys.WORLD, new Identifier(namespace, path));
+	}
+}
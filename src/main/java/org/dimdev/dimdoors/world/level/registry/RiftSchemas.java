@@ -20,6 +20,7 @@ public class RiftSchemas {
 	public static final BiFunction<Integer, Schema, Schema> EMPTY = Schema::new;
 	public static final DataFixer DATA_FIXER = Util.make(new DataFixerBuilder(RIFT_DATA_VERSION), builder -> {
 		builder.addSchema(1, Schema1::new);
+		builder.addSchema(2, EMPTY); // registries moved out of level.dat, see RegistryStorage
 		// TODO: add schemas if schema changes
 	}).buildUnoptimized();
 
@@ -1,12 +1,24 @@
 package org.dimdev.dimdoors.world.pocket;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
 import org.jetbrains.annotations.TestOnly;
 
 import net.minecraft.nbt.NbtCompound;
@@ -15,28 +27,41 @@ import net.minecraft.registry.RegistryKeys;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Pair;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.World;
 
 import org.dimdev.dimdoors.DimensionalDoors;
 import org.dimdev.dimdoors.api.util.math.GridUtil;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
 import org.dimdev.dimdoors.world.pocket.type.AbstractPocket;
-import org.dimdev.dimdoors.world.pocket.type.IdReferencePocket;
+import org.dimdev.dimdoors.world.pocket.type.LazyGenerationPocket;
 import org.dimdev.dimdoors.world.pocket.type.Pocket;
 
 public class PocketDirectory {
+	public static final int SHARD_SIZE = 4096; // Amount of consecutive pocket ids saved together in one file
+	private static final int MAX_CACHED_CHUNKS = 4096;
+
 	int gridSize; // Determines how much pockets in their dimension are spaced
 	int privatePocketSize;
 	int publicPocketSize;
-	Map<Integer, AbstractPocket<?>> pockets;
+	// Keyed by the id of the pocket, which is the last id of the range [id - range + 1, id] it occupies
+	NavigableMap<Integer, Pocket> pockets;
 	private SortedMap<Integer, Integer> nextIDMap;
+	private PocketIdAllocator freeIds = new PocketIdAllocator(); // ids of removed pockets
 	RegistryKey<World> worldKey;
+	private boolean dirty = false; // grid size, next id map and free ids
+	private final IntSet dirtyShards = new IntOpenHashSet();
+	// Grid cells are chunk aligned, so every block of a chunk resolves to the same pocket
+	private final Long2ObjectMap<ChunkPocketEntry> chunkCache = new Long2ObjectOpenHashMap<>();
+	private int generation = 0; // bumped when pockets are added or removed or get addons, invalidating every cached chunk
+	private final Int2ObjectMap<LazyGenerationPocket> lazyPockets = new Int2ObjectOpenHashMap<>(); // Every id of the lazy pockets with chunks left to generate
 
 	public PocketDirectory(RegistryKey<World> worldKey) {
 		this.gridSize = DimensionalDoors.getConfig().getPocketsConfig().pocketGridSize;
 		this.worldKey = worldKey;
 		this.nextIDMap = new TreeMap<>();
-		this.pockets = new HashMap<>();
+		this.pockets = new TreeMap<>();
 	}
 
 	@TestOnly
@@ -44,7 +69,7 @@ public class PocketDirectory {
 		this.gridSize = gridSize;
 		this.worldKey = worldKey;
 		this.nextIDMap = new TreeMap<>();
-		this.pockets = new HashMap<>();
+		this.pockets = new TreeMap<>();
 	}
 
 	public static PocketDirectory readFromNbt(String id, NbtCompound nbt) {
@@ -56,17 +81,29 @@ public class PocketDirectory {
 		// same thing, too short anyways
 		NbtCompound nextIdMapNbt = nbt.getCompound("next_id_map");
 		directory.nextIDMap.putAll(nextIdMapNbt.getKeys().stream().collect(Collectors.toMap(Integer::parseInt, nextIdMapNbt::getInt)));
+		directory.freeIds = PocketIdAllocator.fromNbt(nbt.getCompound("free_ids"));
 
-		NbtCompound pocketsNbt = nbt.getCompound("pockets");
-		directory.pockets = pocketsNbt.getKeys().stream().unordered().map(key -> {
-			NbtCompound pocketNbt = pocketsNbt.getCompound(key);
-			return CompletableFuture.supplyAsync(() -> new Pair<>(Integer.parseInt(key), AbstractPocket.deserialize(pocketNbt)));
-		}).parallel().map(CompletableFuture::join).collect(Collectors.toConcurrentMap(Pair::getLeft, Pair::getRight));
+		directory.readPockets(nbt.getCompound("pockets"));
 
 		return directory;
 	}
 
 	public NbtCompound writeToNbt() {
+		NbtCompound nbt = this.writeMetaToNbt();
+
+		NbtCompound pocketsNbt = new NbtCompound();
+		this.pockets.entrySet().parallelStream().unordered().map(entry -> CompletableFuture.supplyAsync(() -> new Pair<>(entry.getKey().toString(), entry.getValue().toNbt(new NbtCompound()))))
+				.map(CompletableFuture::join).sequential().forEach(pair -> pocketsNbt.put(pair.getLeft(), pair.getRight()));
+		nbt.put("pockets", pocketsNbt);
+
+		return nbt;
+	}
+
+	/**
+	 * Writes everything but the pockets themselves, which are stored in shards of {@link #SHARD_SIZE} ids.
+	 * Can be read back with {@link #readFromNbt(String, NbtCompound)}.
+	 */
+	public NbtCompound writeMetaToNbt() {
 		NbtCompound nbt = new NbtCompound();
 		nbt.putInt("grid_size", this.gridSize);
 		nbt.putInt("private_pocket_size", this.privatePocketSize);
@@ -75,15 +112,70 @@ public class PocketDirectory {
 		NbtCompound nextIdMapNbt = new NbtCompound();
 		this.nextIDMap.forEach((key, value) -> nextIdMapNbt.putInt(key.toString(), value));
 		nbt.put("next_id_map", nextIdMapNbt);
+		nbt.put("free_ids", this.freeIds.toNbt());
+
+		return nbt;
+	}
+
+	public void readShardFromNbt(NbtCompound nbt) {
+		this.readPockets(nbt.getCompound("pockets"));
+	}
 
+	public NbtCompound writeShardToNbt(int shard) {
 		NbtCompound pocketsNbt = new NbtCompound();
-		this.pockets.entrySet().parallelStream().unordered().map(entry -> CompletableFuture.supplyAsync(() -> new Pair<>(entry.getKey().toString(), entry.getValue().toNbt(new NbtCompound()))))
-				.map(CompletableFuture::join).sequential().forEach(pair -> pocketsNbt.put(pair.getLeft(), pair.getRight()));
-		nbt.put("pockets", pocketsNbt);
+		this.pockets.subMap(shard * SHARD_SIZE, (shard + 1) * SHARD_SIZE).forEach((id, pocket) -> pocketsNbt.put(Integer.toString(id), pocket.toNbt(new NbtCompound())));
 
+		NbtCompound nbt = new NbtCompound();
+		nbt.put("pockets", pocketsNbt);
 		return nbt;
 	}
 
+	private void readPockets(NbtCompound pocketsNbt) {
+		pocketsNbt.getKeys().stream().unordered().map(key -> {
+			NbtCompound pocketNbt = pocketsNbt.getCompound(key);
+			return CompletableFuture.supplyAsync(() -> new Pair<Integer, AbstractPocket<?>>(Integer.parseInt(key), AbstractPocket.deserialize(pocketNbt)));
+		}).parallel().map(CompletableFuture::join).sequential().forEach(pair -> {
+			if (pair.getRight() instanceof Pocket pocket) {
+				this.pockets.put(pair.getLeft(), pocket);
+				this.invalidateChunkCache();
+				if (pocket instanceof LazyGenerationPocket lazyPocket && !lazyPocket.isDoneGenerating()) this.trackLazyPocket(lazyPocket);
+			} else {
+				// Old saves stored an IdReferencePocket for every other id a pocket occupies, the index covers those now.
+				this.markDirty(pair.getLeft());
+			}
+		});
+	}
+
+	public static int getShard(int id) {
+		return Math.floorDiv(id, SHARD_SIZE);
+	}
+
+	public void markDirty(int id) {
+		this.dirtyShards.add(getShard(id));
+	}
+
+	public void markAllDirty() {
+		this.dirty = true;
+		this.pockets.keySet().stream().mapToInt(PocketDirectory::getShard).forEach(this.dirtyShards::add);
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
+
+	/**
+	 * @return the shards which changed since the last call, clearing them
+	 */
+	public int[] pollDirtyShards() {
+		int[] shards = this.dirtyShards.toIntArray();
+		this.dirtyShards.clear();
+		return shards;
+	}
+
 	/**
 	 * Create a new blank pocket.
 	 *
@@ -100,23 +192,22 @@ public class PocketDirectory {
 		}
 
 		int squaredSize = base3Size * base3Size;
-
-		int cursor = nextIDMap.headMap(base3Size+1).values().stream().mapToInt(num -> num).max().orElse(0);
-		cursor = cursor - Math.floorMod(cursor, squaredSize);
-
-		Pocket pocketAt = getPocket(cursor);
-		while (pocketAt != null) {
-			size = pocketAt.getSize();
-			longest = Math.max(size.getX(), size.getZ());
-			longest = (longest / (gridSize * 16)) + 1;
-
-			int pocketBase3Size = 1;
-			while (longest > pocketBase3Size) {
-				pocketBase3Size *= 3;
+		int sizeClass = PocketIdAllocator.sizeClassOf(squaredSize);
+
+		int cursor = sizeClass < 0 ? -1 : freeIds.allocate(sizeClass);
+		boolean reused = cursor >= 0;
+		if (!reused) {
+			cursor = nextIDMap.headMap(base3Size+1).values().stream().mapToInt(num -> num).max().orElse(0);
+			cursor = cursor - Math.floorMod(cursor, squaredSize);
+
+			Pocket pocketAt = getPocketInRange(cursor, squaredSize);
+			while (pocketAt != null) {
+				// skip to the first aligned space after the pocket in the way
+				int end = pocketAt.getId() + 1;
+				cursor = Math.max(cursor + squaredSize, end + Math.floorMod(-end, squaredSize));
+				pocketAt = getPocketInRange(cursor, squaredSize);
 			}
-
-			cursor += Math.max(squaredSize, pocketBase3Size * pocketBase3Size);
-			pocketAt = getPocket(cursor);
+			if (sizeClass >= 0) freeIds.claim(cursor, sizeClass);
 		}
 
 		cursor = cursor + squaredSize - 1; // we actually want to use the last id of
@@ -129,27 +220,51 @@ public class PocketDirectory {
 				.offsetOrigin(idToCenteredPos(cursor, base3Size, builder.getExpectedSize()))
 				.build();
 
-		nextIDMap.put(base3Size, cursor + squaredSize);
+		if (!reused) nextIDMap.put(base3Size, cursor + squaredSize);
+		this.dirty = true;
 		addPocket(pocket);
-
-		IdReferencePocket.IdReferencePocketBuilder idReferenceBuilder = IdReferencePocket.builder();
-		for (int i = 1; i < squaredSize; i++) {
-			addPocket(idReferenceBuilder
-					.id(cursor - i)
-					.world(worldKey)
-					.referencedId(cursor)
-					.build());
-		}
 		return pocket;
 	}
 
-	private void addPocket(AbstractPocket<?> pocket) {
+	private void addPocket(Pocket pocket) {
 		pockets.put(pocket.getId(), pocket);
+		markDirty(pocket.getId());
+		invalidateChunkCache();
+		DimensionalRegistry.getRiftRegistry().invalidateVirtualLocations(pocket);
 	}
 
-	// TODO: rework this method to remove references as well
+	/**
+	 * Removes the pocket occupying the given ID, along with the rest of its range.
+	 * Its ids are handed out to new pockets again, so the caller has to clear its area of the world.
+	 */
 	public void removePocket(int id) {
-		this.pockets.remove(id);
+		Pocket pocket = this.getPocket(id);
+		if (pocket == null) return;
+		this.pockets.remove(pocket.getId());
+		if (pocket instanceof LazyGenerationPocket lazyPocket) this.untrackLazyPocket(lazyPocket);
+		markDirty(pocket.getId());
+		invalidateChunkCache();
+		DimensionalRegistry.getRiftRegistry().invalidateVirtualLocations(pocket);
+
+		int sizeClass = PocketIdAllocator.sizeClassOf(pocket.getRange());
+		if (sizeClass >= 0) {
+			this.freeIds.free(pocket.getId() - pocket.getRange() + 1, sizeClass);
+			this.dirty = true;
+		}
+	}
+
+	/**
+	 * @return a pocket overlapping the ids [start, start + size), or null if they are all free
+	 */
+	private Pocket getPocketInRange(int start, int size) {
+		Map.Entry<Integer, Pocket> entry = this.pockets.ceilingEntry(start);
+		if (entry == null) return null;
+		Pocket pocket = entry.getValue();
+		return entry.getKey() - pocket.getRange() + 1 < start + size ? pocket : null;
+	}
+
+	public PocketIdAllocator getFreeIds() {
+		return this.freeIds;
 	}
 
 	/**
@@ -158,8 +273,11 @@ public class PocketDirectory {
 	 * @return The pocket which occupies the GridPos represented by that ID, or null if there was no pocket occupying that GridPos.
 	 */
 	public Pocket getPocket(int id) {
-		AbstractPocket<?> pocket = this.pockets.get(id);
-		return pocket == null ? null : pocket.getReferencedPocket(this);
+		// ranges never overlap, so only the first pocket ending at or after the id can contain it
+		Map.Entry<Integer, Pocket> entry = this.pockets.ceilingEntry(id);
+		if (entry == null) return null;
+		Pocket pocket = entry.getValue();
+		return entry.getKey() - pocket.getRange() < id ? pocket : null;
 	}
 
 	public <P extends Pocket> P getPocket(int id, Class<P> clazz) {
@@ -184,8 +302,8 @@ public class PocketDirectory {
 	 * @return The BlockPos of the pocket
 	 */
 	public BlockPos idToPos(int id) {
-		GridUtil.GridPos pos = this.idToGridPos(id);
-		return new BlockPos(pos.x * this.gridSize * 16, 0, pos.z * this.gridSize * 16);
+		long pos = GridUtil.idToPackedGridPos(id);
+		return new BlockPos(GridUtil.unpackX(pos) * this.gridSize * 16, 0, GridUtil.unpackZ(pos) * this.gridSize * 16);
 	}
 
 	public BlockPos idToCenteredPos(int id, int base3Size, Vec3i expectedSize) {
@@ -201,13 +319,68 @@ public class PocketDirectory {
 	 * @return The ID of the pocket, or -1 if there is no pocket at that location
 	 */
 	public int posToID(BlockPos pos) {
-		return this.gridPosToID(new GridUtil.GridPos(Math.floorDiv(pos.getX(), this.gridSize * 16), Math.floorDiv(pos.getZ(), this.gridSize * 16)));
+		return GridUtil.gridPosToID(Math.floorDiv(pos.getX(), this.gridSize * 16), Math.floorDiv(pos.getZ(), this.gridSize * 16));
 	}
 
 	public Pocket getPocketAt(BlockPos pos) { // TODO: use BlockPos
 		return this.getPocket(this.posToID(pos));
 	}
 
+	/**
+	 * Cached equivalent of {@code getPocketAt(pos).getAddonsInstanceOf(clazz)} for the block interaction listeners,
+	 * which does not allocate once the chunk of the position has been looked up.
+	 *
+	 * @return the addons of the pocket whose bounds contain the position, or an empty list
+	 */
+	public <T> List<T> getAddonsAt(BlockPos pos, Class<T> clazz) {
+		long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+		ChunkPocketEntry entry = this.chunkCache.get(chunk);
+		if (entry == null || entry.generation != this.generation) {
+			if (this.chunkCache.size() >= MAX_CACHED_CHUNKS) this.chunkCache.clear();
+			entry = new ChunkPocketEntry(this.getPocketAt(pos), this.generation);
+			this.chunkCache.put(chunk, entry);
+		}
+
+		if (entry.pocket == null || !entry.pocket.isInBounds(pos)) return Collections.emptyList();
+		return entry.getAddons(clazz);
+	}
+
+	/**
+	 * Drops the pockets and addons cached by {@link #getAddonsAt}, to be called when a pocket gets an addon.
+	 * The bounds of a pocket are checked on every lookup, so resizing it does not need this.
+	 */
+	public void invalidateChunkCache() {
+		this.generation++;
+	}
+
+	/**
+	 * Lets {@link #getLazyPocketAt} find the lazy pocket, until it is done generating.
+	 */
+	public void trackLazyPocket(LazyGenerationPocket pocket) {
+		for (int id = pocket.getId() - pocket.getRange() + 1; id <= pocket.getId(); id++) this.lazyPockets.put(id, pocket);
+	}
+
+	public void untrackLazyPocket(LazyGenerationPocket pocket) {
+		for (int id = pocket.getId() - pocket.getRange() + 1; id <= pocket.getId(); id++) this.lazyPockets.remove(id, pocket);
+	}
+
+	/**
+	 * @return the lazy pockets which are not done generating
+	 */
+	public Set<LazyGenerationPocket> getLazyPockets() {
+		return new ReferenceLinkedOpenHashSet<>(this.lazyPockets.values());
+	}
+
+	/**
+	 * Lookup for chunk loads, which does not go through the pockets map.
+	 *
+	 * @return the lazy pocket with chunks left to generate occupying the grid space of the chunk, or null
+	 */
+	public LazyGenerationPocket getLazyPocketAt(ChunkPos chunk) {
+		if (this.lazyPockets.isEmpty()) return null;
+		return this.lazyPockets.get(GridUtil.gridPosToID(Math.floorDiv(chunk.x, this.gridSize), Math.floorDiv(chunk.z, this.gridSize)));
+	}
+
 	public boolean isWithinPocketBounds(BlockPos pos) {
 		Pocket pocket = this.getPocketAt(pos);
 		return pocket != null && pocket.isInBounds(pos);
@@ -225,9 +398,30 @@ public class PocketDirectory {
 		return this.publicPocketSize;
 	}
 
-	public Map<Integer, AbstractPocket<?>> getPockets() {
+	public Map<Integer, Pocket> getPockets() {
 		return this.pockets;
 	}
+
+	private static class ChunkPocketEntry {
+		private final Pocket pocket;
+		private final int generation;
+		private final Reference2ObjectMap<Class<?>, List<?>> addons = new Reference2ObjectOpenHashMap<>();
+
+		private ChunkPocketEntry(Pocket pocket, int generation) {
+			this.pocket = pocket;
+			this.generation = generation;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T> List<T> getAddons(Class<T> clazz) {
+			List<?> addons = this.addons.get(clazz);
+			if (addons == null) {
+				addons = List.copyOf(this.pocket.getAddonsInstanceOf(clazz));
+				this.addons.put(clazz, addons);
+			}
+			return (List<T>) addons;
+		}
+	}
 }
 
 
@@ -0,0 +1,388 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerEntityManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.poi.PointOfInterest;
+import net.minecraft.world.poi.PointOfInterestSet;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import net.minecraft.world.storage.EntityChunkDataAccess;
+import net.minecraft.world.storage.StorageIoWorker;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.api.util.math.GridUtil;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Reclaims public and dungeon pockets which no player visited for a while and which can not be reached anymore.
+ * A pocket is reachable if a rift outside of the collected pocket dimensions, or a rift inside a pocket that
+ * is reachable or was visited recently, links to one of its rifts. Private pockets are never collected.
+ * <p>
+ * A cycle is spread over as many ticks as needed: the rifts are scanned and traced a limited amount per tick,
+ * then the garbage is swept a few chunks at a time. Sweeping a pocket deletes its chunks, entities and points of
+ * interest from the region files through their IO workers, then forgets its rifts and entrance and frees its ids for reuse.
+ * Pockets with any chunk still held by the chunk storage are left for the next cycle, as are pockets a reachable rift
+ * was linked into since the trace. Pockets waiting in the {@link PocketPool} are kept.
+ */
+public class PocketGarbageCollector {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final List<RegistryKey<World>> COLLECTED_WORLDS = List.of(ModDimensions.PUBLIC, ModDimensions.DUNGEON);
+	private static final int VISIT_INTERVAL = 20 * 60; // Ticks between recording which pockets players are in
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	private static final long MINUTE = 60 * 1000L;
+
+	private static PocketGarbageCollector instance;
+
+	private Cycle cycle;
+	private long nextCycle;
+	private Stats lastCycle;
+	private final Stats total = new Stats();
+
+	public static void init() {
+		ServerLifecycleEvents.SERVER_STARTED.register(server -> instance = new PocketGarbageCollector());
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> instance = null);
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			if (instance != null) instance.tick(server);
+		});
+	}
+
+	public static PocketGarbageCollector getInstance() {
+		return instance;
+	}
+
+	private PocketGarbageCollector() {
+		this.nextCycle = System.currentTimeMillis() + getConfig().pocketGarbageCollectionIntervalMinutes * MINUTE;
+	}
+
+	private void tick(MinecraftServer server) {
+		long time = System.currentTimeMillis();
+		if (server.getTicks() % VISIT_INTERVAL == 0) visitPockets(server, time);
+
+		if (this.cycle == null) {
+			if (!getConfig().pocketGarbageCollection || time < this.nextCycle) return;
+			this.start(time);
+		}
+
+		if (this.cycle.step(server, Math.max(getConfig().pocketGarbageCollectionWorkPerTick, 1))) {
+			Stats stats = this.cycle.reclaimed;
+			stats.ticks = this.cycle.ticks;
+			stats.nanos = this.cycle.nanos;
+			LOGGER.info("Pocket garbage collection reclaimed " + stats.pockets + " pockets with " + stats.rifts + " rifts, freeing "
+					+ stats.ids + " pocket ids and " + stats.chunks + " chunks in " + stats.nanos / 1_000_000 + " ms over " + stats.ticks + " ticks");
+			this.total.add(stats);
+			this.lastCycle = stats;
+			this.cycle = null;
+			this.nextCycle = time + getConfig().pocketGarbageCollectionIntervalMinutes * MINUTE;
+		}
+	}
+
+	/**
+	 * Starts a cycle right away, even if the garbage collection is disabled in the config.
+	 *
+	 * @return false if a cycle is already running
+	 */
+	public boolean start(long time) {
+		if (this.cycle != null) return false;
+		this.cycle = new Cycle(time, getConfig().pocketGarbageCollectionIdleDays * DAY, false);
+		return true;
+	}
+
+	/**
+	 * Finds every pocket the next cycle would reclaim, in one go and without changing anything.
+	 */
+	public static Cycle dryRun(MinecraftServer server) {
+		Cycle cycle = new Cycle(System.currentTimeMillis(), getConfig().pocketGarbageCollectionIdleDays * DAY, true);
+		while (!cycle.step(server, Integer.MAX_VALUE)) ;
+		return cycle;
+	}
+
+	public Stats getLastCycle() {
+		return this.lastCycle;
+	}
+
+	public Stats getTotal() {
+		return this.total;
+	}
+
+	private static void visitPockets(MinecraftServer server, long time) {
+		for (RegistryKey<World> key : COLLECTED_WORLDS) {
+			ServerWorld world = server.getWorld(key);
+			if (world == null) continue;
+			PocketDirectory directory = DimensionalRegistry.getPocketDirectory(key);
+			for (ServerPlayerEntity player : world.getPlayers()) {
+				Pocket pocket = directory.getPocketAt(player.getBlockPos());
+				if (pocket != null) pocket.visit(time);
+			}
+		}
+	}
+
+	private static ModConfig.Pockets getConfig() {
+		return DimensionalDoors.getConfig().getPocketsConfig();
+	}
+
+	private static Pocket getPocket(Location location) {
+		if (!COLLECTED_WORLDS.contains(location.world)) return null;
+		return DimensionalRegistry.getPocketDirectory(location.world).getPocketAt(location.pos);
+	}
+
+	private static GridUtil.GridBox getChunks(Pocket pocket) {
+		int gridSize = DimensionalRegistry.getPocketDirectory(pocket.getWorld()).getGridSize();
+		GridUtil.GridBox cells = GridUtil.idRangeToGridBox(pocket.getId() - pocket.getRange() + 1, pocket.getRange());
+		return new GridUtil.GridBox(cells.minX() * gridSize, cells.minZ() * gridSize, (cells.maxX() + 1) * gridSize - 1, (cells.maxZ() + 1) * gridSize - 1);
+	}
+
+	/**
+	 * Forgets the pocket and its rifts and frees its ids. Its chunks, entities and points of interest are deleted from
+	 * the region files first, so a pocket placed at the same ids later starts out empty.
+	 *
+	 * @return false if one of its chunks is still in memory, nothing is reclaimed then
+	 */
+	static boolean reclaim(ServerWorld world, Pocket pocket, List<Location> rifts) {
+		GridUtil.GridBox chunks = getChunks(pocket);
+		ServerEntityManager<Entity> entityManager = world.entityManager;
+		ThreadedAnvilChunkStorage chunkStorage = world.getChunkManager().threadedAnvilChunkStorage;
+		for (int x = chunks.minX(); x <= chunks.maxX(); x++) {
+			for (int z = chunks.minZ(); z <= chunks.maxZ(); z++) {
+				// Chunk holders below full status, or waiting to be unloaded, would save their copy over the deleted one
+				long pos = ChunkPos.toLong(x, z);
+				if (chunkStorage.getCurrentChunkHolder(pos) != null || chunkStorage.chunksToUnload.containsKey(pos) || entityManager.isLoaded(pos)) return false;
+			}
+		}
+
+		// Chunks without data are generated again, empty, once a new pocket is placed here
+		StorageIoWorker entityStorage = ((EntityChunkDataAccess) entityManager.dataAccess).dataLoadWorker;
+		PointOfInterestStorage poiStorage = chunkStorage.getPointOfInterestStorage();
+		for (int x = chunks.minX(); x <= chunks.maxX(); x++) {
+			for (int z = chunks.minZ(); z <= chunks.maxZ(); z++) {
+				ChunkPos pos = new ChunkPos(x, z);
+				chunkStorage.setNbt(pos, null);
+				entityStorage.setResult(pos, null);
+				clearPointsOfInterest(world, poiStorage, pos);
+			}
+		}
+
+		DimensionalRegistry.getRiftRegistry().removePocket(pocket, rifts);
+		DimensionalRegistry.getPocketDirectory(pocket.getWorld()).removePocket(pocket.getId());
+		return true;
+	}
+
+	private static void clearPointsOfInterest(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos pos) {
+		// The sections of a chunk are read together, those still in memory would be written back on the next save
+		for (int y = world.getBottomSectionCoord(); y < world.getTopSectionCoord(); y++) {
+			Optional<PointOfInterestSet> section = poiStorage.getIfLoaded(ChunkSectionPos.asLong(pos.x, y, pos.z));
+			if (section == null || section.isEmpty()) continue;
+			section.get().get(type -> true, PointOfInterestStorage.OccupationStatus.ANY).map(PointOfInterest::getPos).toList().forEach(poiStorage::remove);
+		}
+		poiStorage.worker.setResult(pos, null);
+	}
+
+	private static long getChunkCount(GridUtil.GridBox chunks) {
+		return (long) (chunks.maxX() - chunks.minX() + 1) * (chunks.maxZ() - chunks.minZ() + 1);
+	}
+
+	public static class Stats {
+		public int pockets;
+		public int rifts;
+		public long ids;
+		public long chunks;
+		public int ticks;
+		public long nanos;
+
+		private void add(Stats stats) {
+			this.pockets += stats.pockets;
+			this.rifts += stats.rifts;
+			this.ids += stats.ids;
+			this.chunks += stats.chunks;
+			this.ticks += stats.ticks;
+			this.nanos += stats.nanos;
+		}
+	}
+
+	public static class Cycle {
+		private enum Phase {
+			SCAN, TRACE, SWEEP
+		}
+
+		private final long time;
+		private final long idleTime;
+		private final boolean dryRun;
+		private final List<Location> rifts = new ArrayList<>();
+		private final Map<Pocket, List<Location>> pocketRifts = new HashMap<>();
+		private final Set<Pocket> reachable = new HashSet<>();
+		private final Deque<Location> queue = new ArrayDeque<>();
+		private final Deque<Pocket> garbage = new ArrayDeque<>();
+		private final List<Pocket> found = new ArrayList<>();
+		private final Set<Pocket> unreachable = new HashSet<>();
+		private final Stats reclaimable = new Stats();
+		private final Stats reclaimed = new Stats();
+		private Phase phase = Phase.SCAN;
+		private int scanned = 0;
+		private int ticks = 0;
+		private long nanos = 0;
+
+		private Cycle(long time, long idleTime, boolean dryRun) {
+			this.time = time;
+			this.idleTime = idleTime;
+			this.dryRun = dryRun;
+			DimensionalRegistry.getRiftRegistry().getRifts().forEach(rift -> this.rifts.add(rift.getLocation()));
+		}
+
+		/**
+		 * @return whether the cycle is done
+		 */
+		private boolean step(MinecraftServer server, int budget) {
+			long start = System.nanoTime();
+			this.ticks++;
+			try {
+				RiftRegistry riftRegistry = DimensionalRegistry.getRiftRegistry();
+				while (budget > 0) {
+					switch (this.phase) {
+						case SCAN -> {
+							if (this.scanned == this.rifts.size()) {
+								this.seed();
+								this.phase = Phase.TRACE;
+								continue;
+							}
+							Location location = this.rifts.get(this.scanned++);
+							Pocket pocket = getPocket(location);
+							if (pocket != null) {
+								this.pocketRifts.computeIfAbsent(pocket, p -> new ArrayList<>()).add(location);
+							} else {
+								this.queue.add(location);
+							}
+							budget--;
+						}
+						case TRACE -> {
+							if (this.queue.isEmpty()) {
+								this.collectGarbage();
+								this.phase = Phase.SWEEP;
+								continue;
+							}
+							Location location = this.queue.poll();
+							budget--;
+							if (!riftRegistry.isRiftAt(location)) continue; // removed since the scan
+							for (Location target : riftRegistry.getTargets(location)) {
+								Pocket pocket = getPocket(target);
+								if (pocket != null) this.markReachable(pocket);
+							}
+						}
+						case SWEEP -> {
+							if (this.dryRun || this.garbage.isEmpty()) return true;
+							budget -= this.sweep(server, this.garbage.poll());
+						}
+					}
+				}
+				return false;
+			} finally {
+				this.nanos += System.nanoTime() - start;
+			}
+		}
+
+		private void seed() {
+			PocketPool pocketPool = DimensionalRegistry.getPocketPool();
+			for (RegistryKey<World> world : COLLECTED_WORLDS) {
+				for (Pocket pocket : DimensionalRegistry.getPocketDirectory(world).getPockets().values()) {
+					// Pockets from before visits were tracked get a full idle period from now on
+					if (pocket.getLastVisited() == 0 && !this.dryRun) pocket.visit(this.time);
+					if (pocket.getLastVisited() == 0 || this.time - pocket.getLastVisited() < this.idleTime || pocketPool.contains(pocket)) this.markReachable(pocket);
+				}
+			}
+		}
+
+		private void markReachable(Pocket pocket) {
+			if (this.reachable.add(pocket)) this.queue.addAll(this.pocketRifts.getOrDefault(pocket, Collections.emptyList()));
+		}
+
+		private void collectGarbage() {
+			for (RegistryKey<World> world : COLLECTED_WORLDS) {
+				for (Pocket pocket : DimensionalRegistry.getPocketDirectory(world).getPockets().values()) {
+					if (this.reachable.contains(pocket)) continue;
+					this.garbage.add(pocket);
+					this.found.add(pocket);
+					this.unreachable.add(pocket);
+					this.reclaimable.pockets++;
+					this.reclaimable.rifts += this.pocketRifts.getOrDefault(pocket, Collections.emptyList()).size();
+					this.reclaimable.ids += pocket.getRange();
+					this.reclaimable.chunks += getChunkCount(getChunks(pocket));
+				}
+			}
+		}
+
+		/**
+		 * @return the amount of work done
+		 */
+		private int sweep(MinecraftServer server, Pocket pocket) {
+			ServerWorld world = server.getWorld(pocket.getWorld());
+			PocketDirectory directory = DimensionalRegistry.getPocketDirectory(pocket.getWorld());
+			// Someone may have entered it or it may be gone since the trace
+			if (world == null || directory.getPocket(pocket.getId()) != pocket || this.time - pocket.getLastVisited() < this.idleTime) return 1;
+
+			List<Location> rifts = this.pocketRifts.getOrDefault(pocket, Collections.emptyList());
+			if (this.isLinkedInto(pocket, rifts) || !reclaim(world, pocket, rifts)) return 1;
+
+			GridUtil.GridBox chunks = getChunks(pocket);
+			this.reclaimed.pockets++;
+			this.reclaimed.rifts += rifts.size();
+			this.reclaimed.ids += pocket.getRange();
+			this.reclaimed.chunks += getChunkCount(chunks);
+			return (int) Math.min(getChunkCount(chunks), Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Rifts may have been linked into the pocket since the trace, for example by a random link. Links from other
+		 * pockets found unreachable in this cycle don't keep it.
+		 */
+		private boolean isLinkedInto(Pocket pocket, List<Location> rifts) {
+			RiftRegistry riftRegistry = DimensionalRegistry.getRiftRegistry();
+			for (Location rift : rifts) {
+				if (!riftRegistry.isRiftAt(rift)) continue;
+				for (Location source : riftRegistry.getSources(rift)) {
+					Pocket sourcePocket = getPocket(source);
+					if (sourcePocket != pocket && (sourcePocket == null || !this.unreachable.contains(sourcePocket))) return true;
+				}
+			}
+			return false;
+		}
+
+		public List<Pocket> getReclaimablePockets() {
+			return this.found;
+		}
+
+		public Stats getReclaimable() {
+			return this.reclaimable;
+		}
+
+		public long getTime() {
+			return this.time;
+		}
+	}
+}
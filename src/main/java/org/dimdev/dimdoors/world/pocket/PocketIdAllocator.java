@@ -0,0 +1,125 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Buddy allocator over the pocket grid. Every block of size class k spans the 9^k ids
+ * [start, start + 9^k), with start aligned to 9^k, which is a square of 3^k by 3^k grid cells.
+ * Its 9 children of class k - 1 are the 3x3 cells inside of it.
+ * <p>
+ * Only freed ids are tracked here, fresh ids still come from the frontier of the {@link PocketDirectory}.
+ * Blocks are handed out lowest id first, so freed space close to the origin is reused before anything else.
+ */
+public class PocketIdAllocator {
+	public static final int MAX_SIZE_CLASS = 9; // 9^9 ids, the largest power of 9 an int holds
+
+	private final IntSortedSet[] freeLists = new IntSortedSet[MAX_SIZE_CLASS + 1];
+
+	public PocketIdAllocator() {
+		for (int i = 0; i <= MAX_SIZE_CLASS; i++) {
+			this.freeLists[i] = new IntRBTreeSet();
+		}
+	}
+
+	public static int blockSize(int sizeClass) {
+		int size = 1;
+		for (int i = 0; i < sizeClass; i++) size *= 9;
+		return size;
+	}
+
+	/**
+	 * @return the size class of a block with exactly {@code range} ids, or -1 if range is not a power of 9
+	 */
+	public static int sizeClassOf(int range) {
+		int sizeClass = 0;
+		for (int size = 1; size < range && sizeClass < MAX_SIZE_CLASS; size *= 9) sizeClass++;
+		return blockSize(sizeClass) == range ? sizeClass : -1;
+	}
+
+	/**
+	 * Takes the lowest free block of the given class, splitting a larger free block if needed.
+	 *
+	 * @return the first id of the block, or -1 if no freed space is big enough
+	 */
+	public int allocate(int sizeClass) {
+		int from = sizeClass;
+		while (from <= MAX_SIZE_CLASS && this.freeLists[from].isEmpty()) from++;
+		if (from > MAX_SIZE_CLASS) return -1;
+
+		int start = this.freeLists[from].firstInt();
+		this.freeLists[from].remove(start);
+		for (int k = from; k > sizeClass; k--) {
+			int childSize = blockSize(k - 1);
+			for (int i = 1; i < 9; i++) this.freeLists[k - 1].add(start + i * childSize);
+		}
+		return start;
+	}
+
+	/**
+	 * Returns a block, merging it with its 8 siblings into their parent for as long as all of them are free.
+	 */
+	public void free(int start, int sizeClass) {
+		while (sizeClass < MAX_SIZE_CLASS) {
+			int size = blockSize(sizeClass);
+			int parent = start - start % (size * 9);
+			IntSortedSet freeList = this.freeLists[sizeClass];
+			boolean siblingsFree = true;
+			for (int i = 0; i < 9 && siblingsFree; i++) {
+				int sibling = parent + i * size;
+				siblingsFree = sibling == start || freeList.contains(sibling);
+			}
+			if (!siblingsFree) break;
+
+			for (int i = 0; i < 9; i++) freeList.remove(parent + i * size);
+			start = parent;
+			sizeClass++;
+		}
+		this.freeLists[sizeClass].add(start);
+	}
+
+	/**
+	 * Forgets every free block inside a block that was handed out by other means than {@link #allocate(int)}.
+	 */
+	public void claim(int start, int sizeClass) {
+		long end = (long) start + blockSize(sizeClass);
+		for (int k = 0; k <= sizeClass; k++) {
+			if (end > Integer.MAX_VALUE) {
+				this.freeLists[k].tailSet(start).clear();
+			} else {
+				this.freeLists[k].subSet(start, (int) end).clear();
+			}
+		}
+	}
+
+	public boolean isFree(int start, int sizeClass) {
+		return this.freeLists[sizeClass].contains(start);
+	}
+
+	/**
+	 * @return the amount of ids in free blocks
+	 */
+	public long getFreeIds() {
+		long free = 0;
+		for (int k = 0; k <= MAX_SIZE_CLASS; k++) free += (long) this.freeLists[k].size() * blockSize(k);
+		return free;
+	}
+
+	public NbtCompound toNbt() {
+		NbtCompound nbt = new NbtCompound();
+		for (int k = 0; k <= MAX_SIZE_CLASS; k++) {
+			if (!this.freeLists[k].isEmpty()) nbt.putIntArray(Integer.toString(k), this.freeLists[k].toIntArray());
+		}
+		return nbt;
+	}
+
+	public static PocketIdAllocator fromNbt(NbtCompound nbt) {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		for (int k = 0; k <= MAX_SIZE_CLASS; k++) {
+			for (int start : nbt.getIntArray(Integer.toString(k))) allocator.freeLists[k].add(start);
+		}
+		return allocator;
+	}
+}
@@ -0,0 +1,200 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.util.NbtType;
+
+import org.dimdev.dimdoors.DimensionalDoors;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.api.util.Location;
+import org.dimdev.dimdoors.pockets.PocketGenerator;
+import org.dimdev.dimdoors.rift.registry.LinkProperties;
+import org.dimdev.dimdoors.rift.registry.RiftUpdateQueue;
+import org.dimdev.dimdoors.rift.targets.PocketExitMarker;
+import org.dimdev.dimdoors.rift.targets.VirtualTarget;
+import org.dimdev.dimdoors.world.level.registry.DimensionalRegistry;
+import org.dimdev.dimdoors.world.pocket.type.Pocket;
+
+/**
+ * Public and dungeon pockets generated ahead of time, while the server has time to spare, so crossing an unlinked
+ * door does not wait for a template to be picked and placed. There is a pool per pocket group and band of depths.
+ * The exits of pooled pockets stay unlinked until a rift claims the pocket, which then only links them and moves the
+ * pocket to the virtual location of the rift. The exits are linked through the {@link RiftUpdateQueue}, so their chunks
+ * are not loaded, or generated for lazy pockets, on the path of the claiming player. A pool is only kept filled once a
+ * pocket was asked from it.
+ */
+public class PocketPool {
+	private static final Logger LOGGER = LogManager.getLogger();
+	private static final int REFILL_INTERVAL = 20; // Ticks between generating pooled pockets
+	private static final float IDLE_TICK_TIME = 25; // Milliseconds an average tick may take for pockets to be generated
+
+	private final Map<Key, Deque<Entry>> pools = new LinkedHashMap<>();
+	private final Map<RegistryKey<World>, IntSet> pooledIds = new HashMap<>(); // World -> ids of the pooled pockets
+	private boolean dirty = false;
+
+	public static void init() {
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			if (server.getTicks() % REFILL_INTERVAL == 0) DimensionalRegistry.getPocketPool().refill(server);
+		});
+	}
+
+	/**
+	 * Takes a ready pocket of the group out of the pool, links its exits to linkTo and moves it to the virtual location.
+	 *
+	 * @return null if the pool has no pocket ready, the pocket has to be generated then
+	 */
+	public Pocket claim(RegistryKey<World> world, Identifier group, VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
+		if (getConfig().pocketPoolSize <= 0) return null;
+
+		Key key = new Key(world, group, Math.max(virtualLocation.getDepth(), 0) / getBandWidth());
+		Deque<Entry> pool = this.pools.get(key);
+		if (pool == null) {
+			this.pools.put(key, new ArrayDeque<>());
+			this.dirty = true;
+			return null;
+		}
+
+		PocketDirectory directory = DimensionalRegistry.getPocketDirectory(world);
+		Entry entry;
+		while ((entry = pool.poll()) != null) {
+			this.pooledIds.get(world).remove(entry.id());
+			this.dirty = true;
+			Pocket pocket = directory.getPocket(entry.id());
+			if (pocket == null || pocket.getId() != entry.id()) continue; // removed since it was pooled
+
+			pocket.setVirtualLocation(virtualLocation);
+			pocket.visit(System.currentTimeMillis());
+
+			for (BlockPos pos : entry.exits()) {
+				RiftUpdateQueue.getInstance().linkExit(new Location(world, pos), linkTo, linkProperties);
+			}
+			return pocket;
+		}
+		return null;
+	}
+
+	public boolean contains(Pocket pocket) {
+		IntSet ids = this.pooledIds.get(pocket.getWorld());
+		return ids != null && ids.contains(pocket.getId());
+	}
+
+	private void refill(MinecraftServer server) {
+		int size = getConfig().pocketPoolSize;
+		if (size <= 0 || server.getTickTime() > IDLE_TICK_TIME) return;
+
+		Key key = null;
+		for (Map.Entry<Key, Deque<Entry>> pool : this.pools.entrySet()) {
+			if (pool.getValue().size() < size) {
+				key = pool.getKey();
+				break;
+			}
+		}
+		if (key == null) return;
+
+		try {
+			Entry entry = generate(key);
+			this.pools.get(key).add(entry);
+			this.pooledIds.computeIfAbsent(key.world(), world -> new IntOpenHashSet()).add(entry.id());
+		} catch (RuntimeException e) {
+			LOGGER.error("Could not generate a pocket of " + key.group() + " ahead of time, the pool is dropped until a pocket is asked from it again", e);
+			this.pools.remove(key);
+		}
+		this.dirty = true;
+	}
+
+	private static Entry generate(Key key) {
+		int bandWidth = getBandWidth();
+		ServerWorld world = DimensionalDoors.getWorld(key.world());
+		// The virtual location is replaced once the pocket is claimed, only its depth matters for picking the template
+		VirtualLocation virtualLocation = new VirtualLocation(World.OVERWORLD, 0, 0, key.band() * bandWidth + bandWidth / 2);
+		// The generation records the exits it leaves unlinked, including those of blocks which are not placed yet
+		PocketExitMarker exits = new PocketExitMarker();
+		Pocket pocket = PocketGenerator.generateFromPocketGroupV2(world, key.group(), virtualLocation, exits, null);
+		return new Entry(pocket.getId(), new ArrayList<>(exits.getExits()));
+	}
+
+	private static ModConfig.Pockets getConfig() {
+		return DimensionalDoors.getConfig().getPocketsConfig();
+	}
+
+	private static int getBandWidth() {
+		return Math.max(getConfig().pocketPoolDepthBand, 1);
+	}
+
+	public NbtCompound toNbt(NbtCompound nbt) {
+		NbtList poolsNbt = new NbtList();
+		this.pools.forEach((key, pool) -> {
+			NbtCompound poolNbt = new NbtCompound();
+			poolNbt.putString("world", key.world().getValue().toString());
+			poolNbt.putString("group", key.group().toString());
+			poolNbt.putInt("band", key.band());
+			NbtList pocketsNbt = new NbtList();
+			for (Entry entry : pool) {
+				NbtCompound pocketNbt = new NbtCompound();
+				pocketNbt.putInt("id", entry.id());
+				pocketNbt.putLongArray("exits", entry.exits().stream().mapToLong(BlockPos::asLong).toArray());
+				pocketsNbt.add(pocketNbt);
+			}
+			poolNbt.put("pockets", pocketsNbt);
+			poolsNbt.add(poolNbt);
+		});
+		nbt.put("pools", poolsNbt);
+		return nbt;
+	}
+
+	public void fromNbt(NbtCompound nbt) {
+		this.pools.clear();
+		this.pooledIds.clear();
+		for (NbtElement poolElement : nbt.getList("pools", NbtType.COMPOUND)) {
+			NbtCompound poolNbt = (NbtCompound) poolElement;
+			Key key = new Key(RegistryKey.of(RegistryKeys.WORLD, new Identifier(poolNbt.getString("world"))), new Identifier(poolNbt.getString("group")), poolNbt.getInt("band"));
+			Deque<Entry> pool = new ArrayDeque<>();
+			for (NbtElement pocketElement : poolNbt.getList("pockets", NbtType.COMPOUND)) {
+				NbtCompound pocketNbt = (NbtCompound) pocketElement;
+				Entry entry = new Entry(pocketNbt.getInt("id"), Arrays.stream(pocketNbt.getLongArray("exits")).mapToObj(BlockPos::fromLong).collect(Collectors.toList()));
+				pool.add(entry);
+				this.pooledIds.computeIfAbsent(key.world(), world -> new IntOpenHashSet()).add(entry.id());
+			}
+			this.pools.put(key, pool);
+		}
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
+
+	private record Key(RegistryKey<World> world, Identifier group, int band) {
+	}
+
+	private record Entry(int id, List<BlockPos> exits) {
+	}
+}
@@ -48,6 +48,7 @@ public class PrivateRegistry {
 	private static final String DATA_NAME = "dimdoors_private_pockets";
 
 	protected BiMap<UUID, PocketInfo> privatePocketMap = HashBiMap.create(); // Player UUID -> Pocket Info TODO: fix AnnotatedNBT and use UUID rather than String
+	private boolean dirty = false;
 
 	public PrivateRegistry() {
 	}
@@ -85,9 +86,18 @@ public class PrivateRegistry {
 
 	public void setPrivatePocketID(UUID playerUUID, Pocket pocket) {
 		this.privatePocketMap.put(playerUUID, new PocketInfo(pocket.getWorld(), pocket.getId()));
+		this.dirty = true;
 	}
 
 	public UUID getPrivatePocketOwner(Pocket pocket) {
 		return this.privatePocketMap.inverse().get(new PocketInfo(pocket.getWorld(), pocket.getId()));
 	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
 }
@@ -1,46 +1,74 @@
 package org.dimdev.dimdoors.world.pocket.type;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
 import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.Chunk;
 
 import net.fabricmc.fabric.api.util.NbtType;
 
-import org.dimdev.dimdoors.api.util.BlockBoxUtil;
 import org.dimdev.dimdoors.pockets.generator.LazyPocketGenerator;
 import org.dimdev.dimdoors.pockets.generator.PocketGenerator;
+import org.dimdev.dimdoors.pockets.modifier.ChunkModification;
 import org.dimdev.dimdoors.world.level.component.ChunkLazilyGeneratedComponent;
 
 public class LazyGenerationPocket extends Pocket {
 	public static String KEY = "lazy_gen_pocket";
 
 	private LazyPocketGenerator generator;
-	private int toBeGennedChunkCount = 0;
+	private BitSet pendingChunks = new BitSet(); // Chunks left to generate, see getChunkIndex
+	private boolean legacyChunks = false; // Pockets saved before pendingChunks only know their generated chunks from the chunk component
+	private final Long2ObjectMap<List<ChunkModification>> modifications = new Long2ObjectLinkedOpenHashMap<>(); // Chunk -> blocks queued by modifiers, in order
 
 	public void chunkLoaded(Chunk chunk) {
-		if (isDoneGenerating()) return;
-
-		ChunkLazilyGeneratedComponent lazyGenned = ChunkLazilyGeneratedComponent.get(chunk);
-		if (lazyGenned.hasBeenLazyGenned()) return;
+		List<ChunkModification> queued = modifications.isEmpty() ? null : modifications.remove(chunk.getPos().toLong());
+		if (queued != null) {
+			queued.forEach(modification -> modification.apply(chunk));
+			markDirty();
+		}
 
-		BlockBox chunkBox = BlockBoxUtil.getBox(chunk);
-		if (!chunkBox.intersects(getBox())) return;
+		int index = getChunkIndex(chunk.getPos());
+		if (index < 0 || !pendingChunks.get(index)) return;
 
-		generator.generateChunk(this, chunk);
-		lazyGenned.setGenned();
-		toBeGennedChunkCount--;
+		if (!legacyChunks || !ChunkLazilyGeneratedComponent.get(chunk).hasBeenLazyGenned()) generator.generateChunk(this, chunk);
+		pendingChunks.clear(index);
+		markDirty();
 
-		if (isDoneGenerating()) {
+		if (pendingChunks.isEmpty()) {
 			this.generator = null; // saving up on some ram
 		}
 	}
 
 	public boolean isDoneGenerating() {
-		return toBeGennedChunkCount == 0;
+		return pendingChunks.isEmpty() && modifications.isEmpty();
+	}
+
+	public void queueModification(ChunkModification modification) {
+		modifications.computeIfAbsent(modification.getChunk(), chunk -> new ArrayList<>()).add(modification);
+		markDirty();
+	}
+
+	public boolean hasModifications(long chunk) {
+		return modifications.containsKey(chunk);
+	}
+
+	/**
+	 * @return the chunks with blocks queued by modifiers
+	 */
+	public long[] getModifiedChunks() {
+		return modifications.keySet().toLongArray();
 	}
 
 	public void attachGenerator(LazyPocketGenerator generator) {
@@ -50,7 +78,19 @@ public class LazyGenerationPocket extends Pocket {
 	public void init() {
 		BlockBox box = getBox();
 
-		toBeGennedChunkCount = (Math.floorDiv(box.getMaxX(), 16) - Math.floorDiv(box.getMinX(), 16) + 1) * (Math.floorDiv(box.getMaxZ(), 16) - Math.floorDiv(box.getMinZ(), 16) + 1);
+		pendingChunks.set(0, ((box.getMaxX() >> 4) - (box.getMinX() >> 4) + 1) * ((box.getMaxZ() >> 4) - (box.getMinZ() >> 4) + 1));
+	}
+
+	/**
+	 * @return the index of the chunk, counting the chunks of the box column by column from its first one, or -1 if the box does not contain it
+	 */
+	private int getChunkIndex(ChunkPos pos) {
+		BlockBox box = getBox();
+		int x = pos.x - (box.getMinX() >> 4);
+		int z = pos.z - (box.getMinZ() >> 4);
+		int length = (box.getMaxZ() >> 4) - (box.getMinZ() >> 4) + 1;
+		if (x < 0 || z < 0 || pos.x > box.getMaxX() >> 4 || z >= length) return -1;
+		return x * length + z;
 	}
 
 	@Override
@@ -58,7 +98,13 @@ public class LazyGenerationPocket extends Pocket {
 		super.toNbt(nbt);
 
 		if (generator != null) nbt.put("generator", generator.toNbt(new NbtCompound()));
-		if (toBeGennedChunkCount > 0) nbt.putInt("to_be_genned_chunks", toBeGennedChunkCount);
+		if (!pendingChunks.isEmpty()) nbt.putLongArray("pending_chunks", pendingChunks.toLongArray());
+		if (legacyChunks && !pendingChunks.isEmpty()) nbt.putBoolean("legacy_chunks", true);
+		if (!modifications.isEmpty()) {
+			NbtList modificationsNbt = new NbtList();
+			modifications.values().forEach(queued -> queued.forEach(modification -> modificationsNbt.add(modification.toNbt(new NbtCompound()))));
+			nbt.put("modifications", modificationsNbt);
+		}
 
 		return nbt;
 	}
@@ -77,7 +123,17 @@ public class LazyGenerationPocket extends Pocket {
 		super.fromNbt(nbt);
 
 		if (nbt.contains("generator", NbtType.COMPOUND)) generator = (LazyPocketGenerator) PocketGenerator.deserialize(nbt.getCompound("generator"));
-		if (nbt.contains("to_be_genned_chunks", NbtType.INT)) toBeGennedChunkCount = nbt.getInt("to_be_genned_chunks");
+		if (nbt.contains("pending_chunks", NbtType.LONG_ARRAY)) {
+			pendingChunks = BitSet.valueOf(nbt.getLongArray("pending_chunks"));
+			legacyChunks = nbt.getBoolean("legacy_chunks");
+		} else if (nbt.getInt("to_be_genned_chunks") > 0) {
+			init();
+			legacyChunks = true;
+		}
+		for (NbtElement element : nbt.getList("modifications", NbtType.COMPOUND)) {
+			ChunkModification modification = ChunkModification.fromNbt((NbtCompound) element);
+			modifications.computeIfAbsent(modification.getChunk(), chunk -> new ArrayList<>()).add(modification);
+		}
 
 		return this;
 	}
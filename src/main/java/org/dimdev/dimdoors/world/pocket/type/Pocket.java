@@ -34,6 +34,7 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 	private int range = -1;
 	private BlockBox box; // TODO: make protected
 	public VirtualLocation virtualLocation;
+	private long lastVisited; // System.currentTimeMillis(), 0 if the pocket predates tracking visits
 
 	public Pocket(int id, RegistryKey<World> world, int x, int z) {
 		super(id, world);
@@ -52,6 +53,8 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 	public <C extends PocketAddon> boolean addAddon(C addon) {
 		if (addon.applicable(this)) {
 			addon.addAddon(addons);
+			markDirty();
+			if (this.world != null) DimensionalRegistry.getPocketDirectory(this.world).invalidateChunkCache();
 			return true;
 		}
 		return false;
@@ -78,10 +81,12 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 
 	public void offsetOrigin(Vec3i vec) {
 		this.box.move(vec);
+		markDirty();
 	}
 
 	public void offsetOrigin(int x, int y, int z) {
 		this.box.move(x, y, z);
+		markDirty();
 	}
 
 	public void setSize(Vec3i size) {
@@ -90,6 +95,7 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 
 	public void setSize(int x, int y, int z) {
 		this.box = BlockBox.create(new Vec3i(this.box.getMinX(), this.box.getMinY(), this.box.getMinZ()), new Vec3i(this.box.getMinX() + x - 1, this.box.getMinY() + y - 1, this.box.getMinZ() + z - 1));
+		markDirty();
 	}
 
 	public void setRange(int range) {
@@ -106,12 +112,39 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 		return this.box.getDimensions();
 	}
 
+	public VirtualLocation getVirtualLocation() {
+		return this.virtualLocation;
+	}
+
+	/**
+	 * Moves the pocket to another virtual location, along with the rifts inside of it.
+	 */
+	public void setVirtualLocation(VirtualLocation virtualLocation) {
+		this.virtualLocation = virtualLocation;
+		markDirty();
+		if (this.world != null) DimensionalRegistry.getRiftRegistry().invalidateVirtualLocations(this);
+	}
+
+	public long getLastVisited() {
+		return this.lastVisited;
+	}
+
+	/**
+	 * Records that a player is in this pocket. Only saved with hourly precision to not rewrite the shard all the time.
+	 */
+	public void visit(long time) {
+		if (time - this.lastVisited < 60 * 60 * 1000L) return;
+		this.lastVisited = time;
+		markDirty();
+	}
+
 	public NbtCompound toNbt(NbtCompound nbt) {
 		super.toNbt(nbt);
 
 		nbt.putInt("range", range);
 		nbt.putIntArray("box", IntStream.of(this.box.getMinX(), this.box.getMinY(), this.box.getMinZ(), this.box.getMaxX(), this.box.getMaxY(), this.box.getMaxZ()).toArray());
 		nbt.put("virtualLocation", VirtualLocation.toNbt(this.virtualLocation));
+		nbt.putLong("last_visited", this.lastVisited);
 
 		NbtList addonsTag = new NbtList();
 		addonsTag.addAll(addons.values().stream().map(addon -> addon.toNbt(new NbtCompound())).collect(Collectors.toList()));
@@ -132,6 +165,7 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 		int[] box = nbt.getIntArray("box");
 		this.box = BlockBox.create(new Vec3i(box[0], box[1], box[2]), new Vec3i(box[3], box[4], box[5]));
 		this.virtualLocation = VirtualLocation.fromNbt(nbt.getCompound("virtualLocation"));
+		this.lastVisited = nbt.getLong("last_visited");
 
 		if (nbt.contains("addons", NbtType.LIST)) {
 			for (NbtElement addonTag : nbt.getList("addons", NbtType.COMPOUND)) {
@@ -175,6 +209,14 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 
 	public void expand(int amount) {
 		this.box.expand(amount);
+		markDirty();
+	}
+
+	/**
+	 * Flags the shard this pocket is saved in, call this after changing any persisted state.
+	 */
+	public void markDirty() {
+		if (this.world != null) DimensionalRegistry.getPocketDirectory(this.world).markDirty(this.id);
 	}
 
 	public static PocketBuilder<?, Pocket> builder() {
@@ -253,6 +295,7 @@ public class Pocket extends AbstractPocket<Pocket> implements AddonProvider {
 			instance.setRange(range);
 			instance.setBox(BlockBox.create(new Vec3i(origin.getX(), origin.getY(), origin.getZ()), new Vec3i(origin.getX() + size.getX(), origin.getY() + size.getY(), origin.getZ() + size.getZ())));
 			instance.virtualLocation = virtualLocation;
+			((Pocket) instance).lastVisited = System.currentTimeMillis();
 
 			addons.values().forEach(addon -> addon.apply(instance));
 
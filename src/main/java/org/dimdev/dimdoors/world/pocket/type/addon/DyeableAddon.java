@@ -76,6 +76,7 @@ public class DyeableAddon implements PocketAddon {
 			this.count = 1;
 			EntityUtils.chat(entity, Text.translatable("dimdoors.pocket.remainingNeededDyes", this.count, maxDye, color));
 		}
+		pocket.markDirty();
 		return true;
 	}
 
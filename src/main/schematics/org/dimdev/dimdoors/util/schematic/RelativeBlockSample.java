@@ -134,6 +134,50 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
 				placementType.getBlockEntityPlacer().accept(world.toServerWorld(), blockEntity);
 			}
 		}
+		this.placeEntities(origin, world);
+	}
+
+	/**
+	 * Places the blocks with a block entity and their block entities, the first part of a placement split by
+	 * {@link #placeSection} so the rifts of the schematic exist right away.
+	 */
+	public void placeBlockEntities(BlockPos origin, ServerWorld world, BlockPlacementType placementType) {
+		for (Map.Entry<BlockPos, NbtCompound> entry : this.blockEntityContainer.entrySet()) {
+			BlockPos pos = entry.getKey();
+			BlockPos actualPos = origin.add(pos);
+			world.setBlockState(actualPos, this.getBlockState(pos), 0, 0);
+			if (placementType.shouldMarkForUpdate()) world.getChunkManager().markForUpdate(actualPos);
+
+			NbtCompound nbt = entry.getValue();
+			if(nbt.contains("Id")) {
+				nbt.put("id", nbt.get("Id")); // boogers
+				nbt.remove("Id");
+			}
+
+			BlockEntity blockEntity = BlockEntity.createFromNbt(actualPos, this.getBlockState(pos), nbt);
+			if (blockEntity != null) {
+				placementType.getBlockEntityPlacer().accept(world, blockEntity);
+			}
+		}
+	}
+
+	/**
+	 * Places the blocks without a block entity inside of the box, which is in world coordinates. Only air is
+	 * replaced, so blocks placed by pocket modifiers before the section was reached are kept.
+	 */
+	public void placeSection(BlockPos origin, ServerWorld world, BlockBox box, BlockPlacementType placementType) {
+		BlockBox schemBox = BlockBox.create(origin, origin.add(schematic.getWidth() - 1, schematic.getHeight() - 1, schematic.getLength() - 1));
+		if (!schemBox.intersects(box)) return;
+		BlockPos.stream(BlockBoxUtil.intersect(schemBox, box)).forEach(actualPos -> {
+			BlockPos pos = actualPos.subtract(origin);
+			BlockState state = this.blockContainer.get(pos);
+			if (state == null || state.isAir() || this.blockEntityContainer.containsKey(pos) || !world.getBlockState(actualPos).isAir()) return;
+			world.setBlockState(actualPos, state, 0, 0);
+			if (placementType.shouldMarkForUpdate()) world.getChunkManager().markForUpdate(actualPos);
+		});
+	}
+
+	public void placeEntities(BlockPos origin, StructureWorldAccess world) {
 		for (Map.Entry<NbtCompound, Vec3d> entry : this.entityContainer.entrySet()) {
 			NbtCompound nbt = entry.getKey();
 			NbtList doubles = nbt.getList("Pos", NbtType.DOUBLE);
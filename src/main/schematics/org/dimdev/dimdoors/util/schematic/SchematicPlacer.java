@@ -15,6 +15,7 @@ import net.minecraft.nbt.NbtDouble;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtOps;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.StructureWorldAccess;
 import net.minecraft.world.chunk.Chunk;
@@ -32,13 +33,35 @@ public final class SchematicPlacer {
 
 	public static void place(Schematic schematic, StructureWorldAccess world, BlockPos origin, BlockPlacementType placementType) {
 		LOGGER.debug("Placing schematic: {}", schematic.getMetadata().name());
+		checkRequiredMods(schematic);
+		RelativeBlockSample blockSample = Schematic.getBlockSample(schematic);
+		blockSample.place(origin, world, placementType, false);
+	}
+
+	/**
+	 * Starts placing the schematic a part at a time, the blocks are placed with {@link #placeSection} and the
+	 * entities with {@link #placeEntities} afterwards.
+	 */
+	public static void placeBlockEntities(Schematic schematic, ServerWorld world, BlockPos origin, BlockPlacementType placementType) {
+		LOGGER.debug("Placing schematic: {}", schematic.getMetadata().name());
+		checkRequiredMods(schematic);
+		Schematic.getBlockSample(schematic).placeBlockEntities(origin, world, placementType);
+	}
+
+	public static void placeSection(Schematic schematic, ServerWorld world, BlockPos origin, BlockBox box, BlockPlacementType placementType) {
+		Schematic.getBlockSample(schematic).placeSection(origin, world, box, placementType);
+	}
+
+	public static void placeEntities(Schematic schematic, ServerWorld world, BlockPos origin) {
+		Schematic.getBlockSample(schematic).placeEntities(origin, world);
+	}
+
+	private static void checkRequiredMods(Schematic schematic) {
 		for (String id : schematic.getMetadata().requiredMods()) {
 			if (!FabricLoader.getInstance().isModLoaded(id)) {
 				LOGGER.warn("Schematic \"" + schematic.getMetadata().name() + "\" depends on mod \"" + id + "\", which is missing!");
 			}
 		}
-		RelativeBlockSample blockSample = Schematic.getBlockSample(schematic);
-		blockSample.place(origin, world, placementType, false);
 	}
 
 	public static Map<BlockPos, RiftBlockEntity> getAbsoluteRifts(Schematic schematic, BlockPos origin) {
@@ -48,11 +71,7 @@ public final class SchematicPlacer {
 
 	public static void place(Schematic schematic, ServerWorld world, Chunk chunk, BlockPos origin, BlockPlacementType placementType) {
 		LOGGER.debug("Placing schematic: {}", schematic.getMetadata().name());
-		for (String id : schematic.getMetadata().requiredMods()) {
-			if (!FabricLoader.getInstance().isModLoaded(id)) {
-				LOGGER.warn("Schematic \"" + schematic.getMetadata().name() + "\" depends on mod \"" + id + "\", which is missing!");
-			}
-		}
+		checkRequiredMods(schematic);
 		RelativeBlockSample blockSample = Schematic.getBlockSample(schematic);
 		blockSample.place(origin, world, chunk, placementType, false);
 	}
@@ -3,6 +3,7 @@ package org.dimdev.dimdoors.api.util.math;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class GridUtilTest {
 
@@ -24,4 +25,86 @@ public class GridUtilTest {
 			assertEquals(i, GridUtil.gridPosToID(GridUtil.idToGridPos(i)));
 		}
 	}
+
+	@Test
+	public void equivalentToRecursiveLayout() {
+		for (int i = 0; i < 1_000_000; i++) {
+			GridUtil.GridPos expected = recursiveIdToGridPos(i);
+			long packed = GridUtil.idToPackedGridPos(i);
+			assertEquals(expected.x, GridUtil.unpackX(packed));
+			assertEquals(expected.z, GridUtil.unpackZ(packed));
+			assertEquals(recursiveGridPosToId(expected.x, expected.z), GridUtil.gridPosToID(expected.x, expected.z));
+			assertEquals(i, GridUtil.packedGridPosToID(packed));
+		}
+	}
+
+	@Test
+	public void packing() {
+		int[] values = {0, 1, -1, 12345, -12345, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		for (int x : values) {
+			for (int z : values) {
+				long packed = GridUtil.pack(x, z);
+				assertEquals(x, GridUtil.unpackX(packed));
+				assertEquals(z, GridUtil.unpackZ(packed));
+			}
+		}
+	}
+
+	@Test
+	public void idRangeToGridBox() {
+		for (int range : new int[]{1, 9, 81, 729}) {
+			for (int first = 0; first < 20 * range; first += range) {
+				GridUtil.GridBox box = GridUtil.idRangeToGridBox(first, range);
+				assertEquals(bruteForceBox(first, range), box);
+				int side = (int) Math.round(Math.sqrt(range));
+				assertEquals(side - 1, box.maxX() - box.minX());
+				assertEquals(side - 1, box.maxZ() - box.minZ());
+			}
+		}
+
+		GridUtil.GridBox box = GridUtil.idRangeToGridBox(5, 7);
+		assertEquals(bruteForceBox(5, 7), box);
+		for (int id = 5; id < 12; id++) {
+			GridUtil.GridPos pos = GridUtil.idToGridPos(id);
+			assertTrue(box.contains(pos.x, pos.z));
+		}
+	}
+
+	private static GridUtil.GridBox bruteForceBox(int first, int range) {
+		int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+		for (int id = first; id < first + range; id++) {
+			GridUtil.GridPos pos = recursiveIdToGridPos(id);
+			minX = Math.min(minX, pos.x);
+			minZ = Math.min(minZ, pos.z);
+			maxX = Math.max(maxX, pos.x);
+			maxZ = Math.max(maxZ, pos.z);
+		}
+		return new GridUtil.GridBox(minX, minZ, maxX, maxZ);
+	}
+
+	// The original recursive implementation, kept to verify the layout never changes
+	private static GridUtil.GridPos recursiveIdToGridPos(int id) {
+		GridUtil.GridPos out = id > 8 ? recursiveIdToGridPos(id / 9) : new GridUtil.GridPos(0, 0);
+		int x = out.x * 3;
+		int z = out.z * 3;
+
+		long minor = id % 9;
+		x += (minor + 1) % 3 - 1;
+		z += (minor / 3 + 1) % 3 - 1;
+
+		out.x = x;
+		out.z = z;
+		return out;
+	}
+
+	private static int recursiveGridPosToId(int x, int z) {
+		int id = Math.floorMod(x, 3) + (Math.floorMod(z, 3) * 3);
+
+		x = Math.floorDiv(x + 1, 3);
+		z = Math.floorDiv(z + 1, 3);
+		if (x != 0 || z != 0) {
+			id += 9 * recursiveGridPosToId(x, z);
+		}
+		return id;
+	}
 }
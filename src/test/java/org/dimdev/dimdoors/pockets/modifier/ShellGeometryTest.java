@@ -0,0 +1,99 @@
+package org.dimdev.dimdoors.pockets.modifier;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShellGeometryTest {
+	private static final BlockBox INNER = new BlockBox(16, 16, 16, 47, 47, 47);
+	private static final BlockBox OUTER = new BlockBox(0, 0, 0, 63, 63, 63);
+
+	@Test
+	public void fillsBetweenTheBoxes() {
+		assertTrue(ShellGeometry.shouldFill(new BlockPos(0, 0, 0), INNER, OUTER, true, true));
+		assertTrue(ShellGeometry.shouldFill(new BlockPos(15, 30, 30), INNER, OUTER, true, true));
+		assertTrue(ShellGeometry.shouldFill(new BlockPos(30, 48, 30), INNER, OUTER, true, true));
+		assertFalse(ShellGeometry.shouldFill(new BlockPos(16, 16, 16), INNER, OUTER, true, true));
+		assertFalse(ShellGeometry.shouldFill(new BlockPos(30, 30, 30), INNER, OUTER, true, true));
+		assertFalse(ShellGeometry.shouldFill(new BlockPos(64, 30, 30), INNER, OUTER, true, true));
+		assertFalse(ShellGeometry.shouldFill(new BlockPos(-1, 0, 0), INNER, OUTER, true, true));
+	}
+
+	@Test
+	public void onlyFillsAirWithoutReplacing() {
+		assertTrue(ShellGeometry.shouldFill(new BlockPos(0, 0, 0), INNER, OUTER, true, false));
+		assertFalse(ShellGeometry.shouldFill(new BlockPos(0, 0, 0), INNER, OUTER, false, false));
+		assertTrue(ShellGeometry.shouldFill(new BlockPos(0, 0, 0), INNER, OUTER, false, true));
+	}
+
+	@Test
+	public void coveredSectionsTakeAPalette() {
+		BlockBox corner = section(0, 0, 0);
+		assertEquals(ShellGeometry.SectionFill.PALETTE, ShellGeometry.getSectionFill(corner, INNER, OUTER, false, true));
+		assertEquals(ShellGeometry.SectionFill.PALETTE, ShellGeometry.getSectionFill(corner, INNER, OUTER, true, false));
+		// Blocks already there are kept when not replacing, which the palette would overwrite
+		assertEquals(ShellGeometry.SectionFill.BLOCKS, ShellGeometry.getSectionFill(corner, INNER, OUTER, false, false));
+	}
+
+	@Test
+	public void partlyCoveredSectionsAreWrittenBlockByBlock() {
+		BlockBox section = section(0, 1, 1);
+		// Only the blocks at x = 15 are between the boxes
+		assertEquals(ShellGeometry.SectionFill.BLOCKS, ShellGeometry.getSectionFill(section, INNER, new BlockBox(15, 15, 15, 48, 48, 48), true, true));
+		// Inside of the outer box, but reaching into the inner one
+		assertEquals(ShellGeometry.SectionFill.BLOCKS, ShellGeometry.getSectionFill(section, new BlockBox(8, 8, 8, 40, 40, 40), OUTER, true, true));
+	}
+
+	@Test
+	public void sectionsOutsideOfTheShellAreSkipped() {
+		assertEquals(ShellGeometry.SectionFill.NONE, ShellGeometry.getSectionFill(section(1, 1, 1), INNER, OUTER, true, true));
+		assertEquals(ShellGeometry.SectionFill.NONE, ShellGeometry.getSectionFill(section(4, 1, 1), INNER, OUTER, true, true));
+		assertEquals(ShellGeometry.SectionFill.NONE, ShellGeometry.getSectionFill(section(-1, 0, 0), INNER, OUTER, true, true));
+	}
+
+	@Test
+	public void sectionFillMatchesTheBlocks() {
+		// Boxes with their faces on and off the section borders, checked against every block of the sections around them
+		int[] offsets = {-17, -16, -9, -1, 0, 1, 7, 15, 16, 17};
+		for (int inner : offsets) {
+			for (int outer : offsets) {
+				int outerMinX = 16 + inner - outer;
+				int outerMaxX = 79 - inner + outer;
+				if (32 + inner > 63 - inner || outerMinX > outerMaxX) continue;
+				BlockBox innerBox = new BlockBox(32 + inner, 32, 32, 63 - inner, 63, 63);
+				BlockBox outerBox = new BlockBox(outerMinX, 16 - outer, 16 - outer, outerMaxX, 79 + outer, 79 + outer);
+				for (int x = -1; x <= 6; x++) {
+					for (int y = 0; y <= 5; y++) {
+						for (boolean replace : new boolean[]{true, false}) {
+							checkSection(section(x, y, 2), innerBox, outerBox, replace);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void checkSection(BlockBox section, BlockBox inner, BlockBox outer, boolean replace) {
+		// The section is empty, so every block in the shell is filled even when not replacing
+		ShellGeometry.SectionFill fill = ShellGeometry.getSectionFill(section, inner, outer, true, replace);
+		int filled = 0;
+		for (BlockPos pos : BlockPos.iterate(section.getMinX(), section.getMinY(), section.getMinZ(), section.getMaxX(), section.getMaxY(), section.getMaxZ())) {
+			if (ShellGeometry.shouldFill(pos, inner, outer, true, replace)) filled++;
+		}
+		String message = section + " between " + inner + " and " + outer;
+		switch (fill) {
+			case NONE -> assertEquals(0, filled, message);
+			case PALETTE -> assertEquals(16 * 16 * 16, filled, message);
+			case BLOCKS -> assertTrue(filled > 0 && filled < 16 * 16 * 16, message);
+		}
+	}
+
+	private static BlockBox section(int x, int y, int z) {
+		return new BlockBox(x << 4, y << 4, z << 4, (x << 4) + 15, (y << 4) + 15, (z << 4) + 15);
+	}
+}
@@ -0,0 +1,103 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RandomTargetIndexTest {
+	private static final RandomTargetIndex.Query QUERY = new RandomTargetIndex.Query(10, -20, 2, Set.of(0), 100, 1, 10, 5);
+
+	private record Candidate(int x, int z, int depth, double weight, Set<Integer> groups) {
+		private double linkWeight(RandomTargetIndex.Query query) {
+			double depthDifference = this.depth - query.depth();
+			double depthFactor = depthDifference > 0 ? query.positiveDepthFactor() : query.negativeDepthFactor();
+			double distance = Math.sqrt(Math.pow(query.coordFactor() * Math.hypot(this.x - query.x(), this.z - query.z()), 2) + Math.pow(depthFactor * depthDifference, 2));
+			return query.weight(this.weight, distance);
+		}
+	}
+
+	private static Candidate[] createCandidates(Random random, int count, int spread) {
+		Candidate[] candidates = new Candidate[count];
+		for (int i = 0; i < count; i++) {
+			Set<Integer> groups = i % 3 == 0 ? Set.of(1) : i % 3 == 1 ? Set.of(0) : Set.of(0, 1);
+			candidates[i] = new Candidate(random.nextInt(2 * spread) - spread, random.nextInt(2 * spread) - spread, random.nextInt(6), 0.1 + random.nextDouble(), groups);
+		}
+		return candidates;
+	}
+
+	@Test
+	public void matchesExactWeights() {
+		Random random = new Random(42);
+		Candidate[] candidates = createCandidates(random, 60, 1000);
+		RandomTargetIndex<Integer> index = new RandomTargetIndex<>();
+		for (int i = 0; i < candidates.length; i++) {
+			Candidate candidate = candidates[i];
+			index.put(i, candidate.groups(), candidate.x(), candidate.z(), candidate.depth(), candidate.weight());
+		}
+		for (int i = 0; i < candidates.length; i += 7) index.remove(i);
+
+		double newRiftWeight = 0.01;
+		double[] expected = new double[candidates.length + 1];
+		double total = expected[candidates.length] = newRiftWeight;
+		for (int i = 0; i < candidates.length; i++) {
+			if (!index.contains(i) || !candidates[i].groups().contains(0)) continue;
+			expected[i] = candidates[i].linkWeight(QUERY);
+			total += expected[i];
+		}
+
+		int samples = 200_000;
+		int[] picked = new int[candidates.length + 1];
+		for (int i = 0; i < samples; i++) {
+			Integer sample = index.sample(QUERY, newRiftWeight, random);
+			picked[sample != null ? sample : candidates.length]++;
+		}
+
+		for (int i = 0; i < picked.length; i++) {
+			double probability = expected[i] / total;
+			if (probability == 0) {
+				assertEquals(0, picked[i], "candidate " + i + " is not accepted");
+				continue;
+			}
+			double deviation = Math.sqrt(probability * (1 - probability) / samples);
+			assertEquals(probability, picked[i] / (double) samples, 5 * deviation + 1e-6, "candidate " + i);
+		}
+	}
+
+	@Test
+	public void noCandidates() {
+		RandomTargetIndex<Integer> index = new RandomTargetIndex<>();
+		index.put(0, Set.of(1), 0, 0, 0, 1);
+		assertNull(index.sample(QUERY, 0, new Random()));
+		assertNull(index.sample(QUERY, 1, new Random()));
+
+		index.put(1, Set.of(0), 100, 0, 2, 1);
+		assertEquals(1, index.sample(QUERY, 0, new Random()));
+
+		index.remove(1);
+		index.remove(0);
+		assertEquals(0, index.size());
+		assertFalse(index.contains(0));
+		assertNull(index.sample(QUERY, 0, new Random()));
+	}
+
+	@Test
+	public void sampleFromManyTargets() {
+		Random random = new Random(42);
+		RandomTargetIndex<Integer> index = new RandomTargetIndex<>();
+		for (int i = 0; i < 100_000; i++) {
+			index.put(i, Set.of(i % 2), QUERY.x() + random.nextInt(4000) - 2000, QUERY.z() + random.nextInt(4000) - 2000, random.nextInt(40), 0.5 + random.nextDouble());
+		}
+
+		for (int i = 0; i < 1000; i++) {
+			Integer sampled = index.sample(QUERY, 0, random);
+			assertNotNull(sampled);
+			assertEquals(0, sampled % 2, "rift " + sampled + " is not in an accepted group");
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RiftGraphCodecTest {
+	private static final RegistryKey<World> OVERWORLD = RegistryKey.of(RegistryKeys.WORLD, new Identifier("overworld"));
+	private static final RegistryKey<World> DUNGEON = RegistryKey.of(RegistryKeys.WORLD, new Identifier("dimdoors", "dungeon_pockets"));
+
+	private record TestRift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+	}
+
+	private static List<TestRift> createRifts(int count) {
+		Random random = new Random(42);
+		List<TestRift> rifts = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			LinkProperties properties = i % 3 == 0 ? null : LinkProperties.builder()
+					.floatingWeight(random.nextFloat())
+					.entranceWeight(random.nextFloat())
+					.groups(i % 2 == 0 ? Set.of(0, 1) : Set.of())
+					.linksRemaining(random.nextInt(5))
+					.oneWay(random.nextBoolean())
+					.build();
+			BlockPos pos = new BlockPos(random.nextInt(60_000_000) - 30_000_000, random.nextInt(384) - 64, random.nextInt(60_000_000) - 30_000_000);
+			rifts.add(new TestRift(new UUID(random.nextLong(), random.nextLong()), i % 2 == 0 ? OVERWORLD : DUNGEON, pos.asLong(), random.nextBoolean(), properties));
+		}
+		return rifts;
+	}
+
+	private static byte[] encode(List<TestRift> rifts, UUID external) {
+		RiftGraphCodec.Writer writer = new RiftGraphCodec.Writer();
+		for (TestRift rift : rifts) writer.rift(rift.id(), rift.world(), rift.pos(), rift.detached(), rift.properties());
+		for (int i = 0; i < rifts.size() - 1; i++) writer.link(i, i + 1);
+		writer.externalLink(rifts.size() - 1, external);
+		return writer.toByteArray();
+	}
+
+	// Same layout as Rift.toNbt and RiftRegistry.toNbt
+	private static NbtCompound encodeNbt(List<TestRift> rifts) {
+		NbtList riftsNbt = new NbtList();
+		for (TestRift rift : rifts) {
+			NbtCompound nbt = new NbtCompound();
+			nbt.putUuid("id", rift.id());
+			NbtCompound location = new NbtCompound();
+			BlockPos pos = BlockPos.fromLong(rift.pos());
+			location.putString("world", rift.world().getValue().toString());
+			location.putIntArray("pos", new int[]{pos.getX(), pos.getY(), pos.getZ()});
+			nbt.put("location", location);
+			nbt.putBoolean("isDetached", rift.detached());
+			if (rift.properties() != null) nbt.put("properties", LinkProperties.toNbt(rift.properties()));
+			nbt.putString("type", "dimdoors:rift");
+			riftsNbt.add(nbt);
+		}
+
+		NbtList linksNbt = new NbtList();
+		for (int i = 0; i < rifts.size() - 1; i++) {
+			NbtCompound link = new NbtCompound();
+			link.putUuid("from", rifts.get(i).id());
+			link.putUuid("to", rifts.get(i + 1).id());
+			linksNbt.add(link);
+		}
+
+		NbtCompound nbt = new NbtCompound();
+		nbt.put("rifts", riftsNbt);
+		nbt.put("links", linksNbt);
+		return nbt;
+	}
+
+	@Test
+	public void roundTrip() {
+		List<TestRift> rifts = createRifts(1000);
+		UUID external = UUID.randomUUID();
+		byte[] bytes = encode(rifts, external);
+
+		List<TestRift> decoded = new ArrayList<>();
+		List<int[]> links = new ArrayList<>();
+		List<UUID> externalLinks = new ArrayList<>();
+		RiftGraphCodec.read(bytes, new RiftGraphCodec.Visitor() {
+			@Override
+			public void rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+				decoded.add(new TestRift(id, world, pos, detached, properties));
+			}
+
+			@Override
+			public void entrance(UUID id, RegistryKey<World> world, int pocketId) {
+			}
+
+			@Override
+			public void link(int from, int to) {
+				links.add(new int[]{from, to});
+			}
+
+			@Override
+			public void externalLink(int from, UUID to) {
+				assertEquals(rifts.size() - 1, from);
+				externalLinks.add(to);
+			}
+		});
+
+		assertEquals(rifts, decoded);
+		assertEquals(rifts.size() - 1, links.size());
+		for (int i = 0; i < links.size(); i++) {
+			assertEquals(i, links.get(i)[0]);
+			assertEquals(i + 1, links.get(i)[1]);
+		}
+		assertEquals(List.of(external), externalLinks);
+	}
+
+	@Test
+	public void entrances() {
+		RiftGraphCodec.Writer writer = new RiftGraphCodec.Writer();
+		UUID id = UUID.randomUUID();
+		writer.entrance(id, DUNGEON, 1234);
+		RiftGraphCodec.read(writer.toByteArray(), new RiftGraphCodec.Visitor() {
+			@Override
+			public void rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+				throw new AssertionError();
+			}
+
+			@Override
+			public void entrance(UUID entranceId, RegistryKey<World> world, int pocketId) {
+				assertEquals(id, entranceId);
+				assertEquals(DUNGEON, world);
+				assertEquals(1234, pocketId);
+			}
+
+			@Override
+			public void link(int from, int to) {
+				throw new AssertionError();
+			}
+
+			@Override
+			public void externalLink(int from, UUID to) {
+				throw new AssertionError();
+			}
+		});
+	}
+
+	@Test
+	public void smallerThanNbt() throws IOException {
+		List<TestRift> rifts = createRifts(10_000);
+
+		byte[] bytes = encode(rifts, UUID.randomUUID());
+		int[] count = new int[1];
+		RiftGraphCodec.read(bytes, new RiftGraphCodec.Visitor() {
+			@Override
+			public void rift(UUID id, RegistryKey<World> world, long pos, boolean detached, LinkProperties properties) {
+				count[0]++;
+			}
+
+			@Override
+			public void entrance(UUID id, RegistryKey<World> world, int pocketId) {
+			}
+
+			@Override
+			public void link(int from, int to) {
+			}
+
+			@Override
+			public void externalLink(int from, UUID to) {
+			}
+		});
+		assertEquals(rifts.size(), count[0]);
+
+		ByteArrayOutputStream nbtBytes = new ByteArrayOutputStream();
+		NbtIo.write(encodeNbt(rifts), new DataOutputStream(nbtBytes));
+		assertTrue(bytes.length * 5 < nbtBytes.size());
+	}
+}
@@ -0,0 +1,143 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RiftGraphTest {
+	private static final class Vertex {
+		private final int index;
+
+		private Vertex(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String toString() {
+			return "Vertex(" + this.index + ")";
+		}
+	}
+
+	private static List<Vertex> createVertices(int count) {
+		List<Vertex> vertices = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) vertices.add(new Vertex(i));
+		return vertices;
+	}
+
+	@Test
+	public void links() {
+		List<Vertex> vertices = createVertices(3);
+		Vertex a = vertices.get(0), b = vertices.get(1), c = vertices.get(2);
+		RiftGraph<Vertex> graph = new RiftGraph<>();
+		vertices.forEach(graph::addVertex);
+		assertFalse(graph.addVertex(a));
+
+		assertTrue(graph.addEdge(a, b));
+		assertFalse(graph.addEdge(a, b));
+		assertTrue(graph.addEdge(a, c));
+		assertTrue(graph.addEdge(c, a));
+		assertTrue(graph.addEdge(b, b));
+		assertEquals(4, graph.edgeCount());
+		assertEquals(Set.of(b, c), new HashSet<>(graph.getTargets(a)));
+		assertEquals(Set.of(a, b), new HashSet<>(graph.getSources(b)));
+		assertSame(b, graph.followPointer(a));
+
+		assertTrue(graph.removeEdge(a, b));
+		assertFalse(graph.removeEdge(a, b));
+		assertEquals(List.of(c), graph.getTargets(a));
+		assertEquals(List.of(b), graph.getSources(b));
+
+		assertThrows(IllegalArgumentException.class, () -> graph.addEdge(a, new Vertex(3)));
+		assertNull(graph.followPointer(null));
+	}
+
+	@Test
+	public void removeVertex() {
+		List<Vertex> vertices = createVertices(3);
+		Vertex a = vertices.get(0), b = vertices.get(1), c = vertices.get(2);
+		RiftGraph<Vertex> graph = new RiftGraph<>();
+		vertices.forEach(graph::addVertex);
+		graph.addEdge(a, b);
+		graph.addEdge(b, a);
+		graph.addEdge(b, b);
+		graph.addEdge(b, c);
+		graph.addEdge(c, a);
+
+		assertTrue(graph.removeVertex(b));
+		assertFalse(graph.containsVertex(b));
+		assertEquals(1, graph.edgeCount());
+		assertEquals(List.of(), graph.getTargets(a));
+		assertEquals(List.of(c), graph.getSources(a));
+		assertEquals(List.of(), graph.getSources(c));
+
+		// The id of b is handed out again
+		int id = graph.getId(c);
+		graph.removeVertex(c);
+		Vertex d = new Vertex(3);
+		graph.addVertex(d);
+		assertEquals(id, graph.getId(d));
+		assertEquals(0, graph.inDegree(d));
+		assertEquals(Set.of(a, d), graph.vertices().collect(Collectors.toSet()));
+	}
+
+	@Test
+	public void replaceVertex() {
+		List<Vertex> vertices = createVertices(3);
+		Vertex a = vertices.get(0), b = vertices.get(1), c = vertices.get(2);
+		RiftGraph<Vertex> graph = new RiftGraph<>();
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addEdge(a, b);
+		graph.addEdge(b, a);
+
+		graph.replaceVertex(b, c);
+		assertFalse(graph.containsVertex(b));
+		assertEquals(List.of(c), graph.getTargets(a));
+		assertEquals(List.of(c), graph.getSources(a));
+		assertEquals(List.of(a), graph.getTargets(c));
+	}
+
+	@Test
+	public void equivalentToJgrapht() {
+		Random random = new Random(42);
+		List<Vertex> vertices = createVertices(200);
+		RiftGraph<Vertex> graph = new RiftGraph<>();
+		DefaultDirectedGraph<Vertex, DefaultEdge> reference = new DefaultDirectedGraph<>(DefaultEdge.class);
+
+		for (int i = 0; i < 100_000; i++) {
+			Vertex from = vertices.get(random.nextInt(vertices.size()));
+			Vertex to = vertices.get(random.nextInt(vertices.size()));
+			switch (random.nextInt(5)) {
+				case 0 -> assertEquals(reference.addVertex(from), graph.addVertex(from));
+				case 1 -> assertEquals(reference.removeVertex(from), graph.removeVertex(from));
+				case 2, 3 -> {
+					if (reference.containsVertex(from) && reference.containsVertex(to)) {
+						assertEquals(reference.addEdge(from, to) != null, graph.addEdge(from, to));
+					}
+				}
+				default -> assertEquals(reference.removeEdge(from, to) != null, graph.removeEdge(from, to));
+			}
+		}
+
+		assertEquals(reference.vertexSet(), graph.vertices().collect(Collectors.toSet()));
+		assertEquals(reference.edgeSet().size(), graph.edgeCount());
+		for (Vertex vertex : reference.vertexSet()) {
+			assertEquals(reference.outgoingEdgesOf(vertex).stream().map(reference::getEdgeTarget).collect(Collectors.toSet()), new HashSet<>(graph.getTargets(vertex)));
+			assertEquals(reference.incomingEdgesOf(vertex).stream().map(reference::getEdgeSource).collect(Collectors.toSet()), new HashSet<>(graph.getSources(vertex)));
+		}
+	}
+}
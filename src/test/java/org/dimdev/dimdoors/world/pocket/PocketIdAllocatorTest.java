@@ -0,0 +1,84 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PocketIdAllocatorTest {
+
+	@Test
+	public void sizeClasses() {
+		assertEquals(0, PocketIdAllocator.sizeClassOf(1));
+		assertEquals(1, PocketIdAllocator.sizeClassOf(9));
+		assertEquals(3, PocketIdAllocator.sizeClassOf(729));
+		assertEquals(-1, PocketIdAllocator.sizeClassOf(27));
+		assertEquals(729, PocketIdAllocator.blockSize(3));
+	}
+
+	@Test
+	public void reusesLowestFreedId() {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		assertEquals(-1, allocator.allocate(0));
+
+		allocator.free(13, 0);
+		allocator.free(4, 0);
+		assertEquals(4, allocator.allocate(0));
+		assertEquals(13, allocator.allocate(0));
+		assertEquals(-1, allocator.allocate(0));
+	}
+
+	@Test
+	public void coalescesSiblings() {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		for (int id = 81; id < 162; id++) allocator.free(id, 0);
+
+		assertTrue(allocator.isFree(81, 2));
+		assertFalse(allocator.isFree(81, 0));
+		assertEquals(81, allocator.getFreeIds());
+
+		assertEquals(81, allocator.allocate(2));
+		assertEquals(0, allocator.getFreeIds());
+	}
+
+	@Test
+	public void splitsLargerBlocks() {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		allocator.free(81, 2);
+
+		assertEquals(81, allocator.allocate(0));
+		assertEquals(80, allocator.getFreeIds());
+		assertEquals(90, allocator.allocate(1));
+		assertEquals(82, allocator.allocate(0));
+
+		// giving everything back merges it into the original block again
+		allocator.free(81, 0);
+		allocator.free(82, 0);
+		allocator.free(90, 1);
+		assertTrue(allocator.isFree(81, 2));
+	}
+
+	@Test
+	public void claimDropsContainedBlocks() {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		allocator.free(3, 0);
+		allocator.free(9, 1);
+		allocator.free(20, 0);
+
+		allocator.claim(0, 2);
+		assertEquals(0, allocator.getFreeIds());
+	}
+
+	@Test
+	public void nbtRoundTrip() {
+		PocketIdAllocator allocator = new PocketIdAllocator();
+		allocator.free(5, 0);
+		allocator.free(729, 3);
+
+		PocketIdAllocator read = PocketIdAllocator.fromNbt(allocator.toNbt());
+		assertTrue(read.isFree(5, 0));
+		assertTrue(read.isFree(729, 3));
+		assertEquals(allocator.getFreeIds(), read.getFreeIds());
+	}
+}